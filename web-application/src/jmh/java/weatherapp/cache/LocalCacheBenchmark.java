@@ -0,0 +1,126 @@
+package weatherapp.cache;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of the LocalCache hot paths (lookups of cached days and insertions replacing them),
+ * by a single thread and by as many threads as there are processors, with and without a maximum weight.
+ *
+ * The cache holds the days of the recorded DarkSky forecast under keys in the format used by the weather service,
+ * and is filled once per trial, so that every operation finds (or replaces) an existing entry.
+ *
+ * @author Filipe Pires
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LocalCacheBenchmark {
+
+    // Attributes
+
+    /**
+     * Number of entries in cache.
+     */
+    @Param({"1000", "100000"})
+    public int size;
+
+    /**
+     * True to bound the cache by the estimated footprint of its entries (never reached), False for an unbounded cache.
+     */
+    @Param({"false", "true"})
+    public boolean bounded;
+
+    /**
+     * Cache being measured.
+     */
+    private LocalCache<String, DailyForecast> cache;
+
+    /**
+     * Keys of the entries in cache.
+     */
+    private String[] keys;
+
+    /**
+     * Days of the recorded forecast, used as values.
+     */
+    private DailyForecast[] days;
+
+    // Methods
+
+    /**
+     * Fills the cache with the days of the recorded forecast.
+     *
+     * @throws Exception if the recorded forecast could not be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JsonArray data;
+        try (Reader reader = new InputStreamReader(LocalCacheBenchmark.class.getResourceAsStream("/darksky/forecast.json"), StandardCharsets.UTF_8)) {
+            data = new JsonParser().parse(reader).getAsJsonObject().getAsJsonObject("daily").getAsJsonArray("data");
+        }
+        this.days = new DailyForecast[data.size()];
+        for (int i = 0; i < this.days.length; i++) {
+            this.days[i] = DailyForecast.fromJson((JsonObject) data.get(i));
+        }
+        this.cache = this.bounded ? new LocalCache<>(3600, 1, Long.MAX_VALUE, new ForecastWeigher()) : new LocalCache<>(3600, 1);
+        this.keys = new String[this.size];
+        for (int i = 0; i < this.size; i++) {
+            this.keys[i] = String.format(Locale.ROOT, "%.2f,%.2f,2019-04-%02d", 37 + i / 1000 * 0.01, -9.5 + i % 1000 * 0.01, 20 + i % 8);
+            this.cache.put(this.keys[i], this.days[i % this.days.length]);
+        }
+    }
+
+    /**
+     * Looks up a random cached day, by a single thread.
+     *
+     * @return the cached day
+     */
+    @Benchmark
+    @Threads(1)
+    public DailyForecast get() {
+        return this.cache.get(this.keys[ThreadLocalRandom.current().nextInt(this.size)]);
+    }
+
+    /**
+     * Looks up a random cached day, by as many threads as there are processors.
+     *
+     * @return the cached day
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public DailyForecast getContended() {
+        return this.cache.get(this.keys[ThreadLocalRandom.current().nextInt(this.size)]);
+    }
+
+    /**
+     * Replaces a random cached day, by a single thread.
+     */
+    @Benchmark
+    @Threads(1)
+    public void put() {
+        int i = ThreadLocalRandom.current().nextInt(this.size);
+        this.cache.put(this.keys[i], this.days[i % this.days.length]);
+    }
+
+    /**
+     * Replaces a random cached day, by as many threads as there are processors.
+     */
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void putContended() {
+        int i = ThreadLocalRandom.current().nextInt(this.size);
+        this.cache.put(this.keys[i], this.days[i % this.days.length]);
+    }
+}
@@ -0,0 +1,93 @@
+package weatherapp.services;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of the parsing of the responses of the external API, with the recorded DarkSky responses
+ * (a forecast, with its minutely, hourly and daily blocks, and a time-machine request for a single day).
+ *
+ * The streaming reader used by the ExternalService is compared with building the whole JSON tree
+ * and extracting the daily forecasts from it.
+ *
+ * @author Filipe Pires
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExternalServiceBenchmark {
+
+    // Attributes
+
+    /**
+     * Name of the recorded response (in src/test/resources/darksky).
+     */
+    @Param({"forecast", "time-machine"})
+    public String response;
+
+    /**
+     * Body of the recorded response.
+     */
+    private byte[] body;
+
+    // Methods
+
+    /**
+     * Reads the recorded response.
+     *
+     * @throws IOException if the recorded response could not be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (InputStream in = ExternalServiceBenchmark.class.getResourceAsStream("/darksky/" + this.response + ".json")) {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n > 0; n = in.read(buffer)) {
+                out.write(buffer, 0, n);
+            }
+        }
+        this.body = out.toByteArray();
+    }
+
+    /**
+     * Extracts the daily forecasts with the streaming reader of the ExternalService.
+     *
+     * @return array of the daily forecasts
+     * @throws IOException if the response could not be read
+     */
+    @Benchmark
+    public JsonArray readDailyData() throws IOException {
+        return ExternalService.readDailyData(this.reader());
+    }
+
+    /**
+     * Extracts the daily forecasts from the whole JSON tree of the response (baseline).
+     *
+     * @return array of the daily forecasts
+     */
+    @Benchmark
+    public JsonArray parseTree() {
+        return new JsonParser().parse(this.reader()).getAsJsonObject().getAsJsonObject("daily").getAsJsonArray("data");
+    }
+
+    /**
+     * Internal auxiliary method used to read the recorded response as the body of an HTTP response.
+     *
+     * @return reader of the body
+     */
+    private Reader reader() {
+        return new InputStreamReader(new ByteArrayInputStream(this.body), StandardCharsets.UTF_8);
+    }
+}
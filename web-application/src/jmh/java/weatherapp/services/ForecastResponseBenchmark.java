@@ -0,0 +1,89 @@
+package weatherapp.services;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonParser;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark of the serialization of the responses, for the shortest and the longest forecasts served from cache
+ * (today's and the upcoming week's) of the recorded DarkSky forecast.
+ *
+ * The body assembled from the days written straight to bytes is compared with serializing the JSON representation of the response.
+ *
+ * @author Filipe Pires
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ForecastResponseBenchmark {
+
+    // Attributes
+
+    /**
+     * Number of days in the response.
+     */
+    @Param({"1", "7"})
+    public int days;
+
+    /**
+     * Response being serialized.
+     */
+    private ForecastResponse response;
+
+    // Methods
+
+    /**
+     * Builds the response from the days of the recorded forecast.
+     *
+     * @throws Exception if the recorded forecast could not be read
+     */
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        JsonArray data;
+        try (Reader reader = new InputStreamReader(ForecastResponseBenchmark.class.getResourceAsStream("/darksky/forecast.json"), StandardCharsets.UTF_8)) {
+            data = ExternalService.readDailyData(reader);
+        }
+        JsonArray requested = new JsonArray();
+        for (int i = 0; i < this.days; i++) {
+            requested.add(data.get(i));
+        }
+        this.response = ForecastResponse.fromJson(requested);
+    }
+
+    /**
+     * Assembles the body from the days written straight to bytes, as the controller does.
+     *
+     * @return UTF-8 bytes of the body
+     */
+    @Benchmark
+    public byte[] toJsonBytes() {
+        return this.response.toJsonBytes();
+    }
+
+    /**
+     * Serializes the JSON representation of the response (baseline).
+     *
+     * @return UTF-8 bytes of the body
+     */
+    @Benchmark
+    public byte[] toJsonString() {
+        return this.response.toJson().toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Builds the entity tag of the response.
+     *
+     * @return quoted entity tag
+     */
+    @Benchmark
+    public String getETag() {
+        return this.response.getETag();
+    }
+}
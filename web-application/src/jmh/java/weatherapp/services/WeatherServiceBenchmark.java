@@ -0,0 +1,123 @@
+package weatherapp.services;
+
+import weatherapp.cache.DailyForecast;
+import weatherapp.cache.ForecastWeigher;
+import weatherapp.cache.LocalCache;
+import com.google.gson.JsonArray;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.http.HttpHeaders;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * Benchmark of the hit path of the WeatherService (requests whose days are all cached), at different cache sizes,
+ * for today's forecast and for the upcoming week, as returned by get and as served by the controller (encoded).
+ *
+ * The external API is replaced by the recorded DarkSky forecast, which fills the cache once per trial,
+ * so that the benchmark runs offline and every request is a hit.
+ *
+ * @author Filipe Pires
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherServiceBenchmark {
+
+    // Attributes
+
+    /**
+     * Number of cached locations (with 8 days each).
+     */
+    @Param({"100", "10000"})
+    public int locations;
+
+    /**
+     * Service being measured.
+     */
+    private WeatherService weatherService;
+
+    /**
+     * Coordinates of the cached locations.
+     */
+    private String[] coords;
+
+    /**
+     * External API replaced by the recorded forecast.
+     */
+    private static class RecordedExternalService extends ExternalService {
+        @Override
+        public JsonArray getWeatherForecast(String path, HttpHeaders headers) {
+            try (Reader reader = new InputStreamReader(WeatherServiceBenchmark.class.getResourceAsStream("/darksky/forecast.json"), StandardCharsets.UTF_8)) {
+                return readDailyData(reader);
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    // Methods
+
+    /**
+     * Fills the cache with the upcoming week of every location.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        this.weatherService = new WeatherService();
+        ReflectionTestUtils.setField(this.weatherService, "localCache", new LocalCache<String, DailyForecast>(3600, 1, Long.MAX_VALUE, new ForecastWeigher()));
+        ReflectionTestUtils.setField(this.weatherService, "darkSkyService", new RecordedExternalService());
+        this.coords = new String[this.locations];
+        for (int i = 0; i < this.locations; i++) {
+            this.coords[i] = String.format(Locale.ROOT, "%.4f,%.4f", 37 + i / 100 * 0.05, -9.5 + i % 100 * 0.05);
+            this.weatherService.warm(this.coords[i], 8);
+        }
+    }
+
+    /**
+     * Requests today's forecast of a random location.
+     *
+     * @return array of the cached days
+     */
+    @Benchmark
+    public JsonArray getNow() {
+        return this.weatherService.get(this.randomLocation(), "now", new Long[0]);
+    }
+
+    /**
+     * Requests the upcoming week of a random location.
+     *
+     * @return array of the cached days
+     */
+    @Benchmark
+    public JsonArray getRecent() {
+        return this.weatherService.get(this.randomLocation(), "recent", new Long[]{7L});
+    }
+
+    /**
+     * Requests the upcoming week of a random location, encoded as served by the controller.
+     *
+     * @return UTF-8 bytes of the response
+     */
+    @Benchmark
+    public byte[] getRecentEncoded() {
+        return this.weatherService.getEncoded(this.randomLocation(), "recent", new Long[]{7L}).toJsonBytes();
+    }
+
+    /**
+     * Internal auxiliary method used to pick one of the cached locations.
+     *
+     * @return coordinates of the location
+     */
+    private String randomLocation() {
+        return this.coords[ThreadLocalRandom.current().nextInt(this.locations)];
+    }
+}
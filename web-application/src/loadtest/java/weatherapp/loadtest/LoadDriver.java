@@ -0,0 +1,365 @@
+package weatherapp.loadtest;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.CloseableHttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.util.EntityUtils;
+import org.springframework.boot.context.TypeExcludeFilter;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.ConfigurableApplicationContext;
+import org.springframework.core.type.classreading.MetadataReader;
+import org.springframework.core.type.classreading.MetadataReaderFactory;
+import weatherapp.WeatherApplication;
+
+/**
+ * Load driver of the forecast endpoints (/weather/now, /weather/recent and /weather/period),
+ * reporting the throughput and the latency percentiles of every type of request and of the whole mix.
+ *
+ * A number of workers send requests for a pool of locations, chosen with a fixed seed, in the given mix of types.
+ * With a target rate, every worker sends its requests on a fixed schedule and their latency is measured
+ * from the time they were due (so that a stalled server is not hidden by the workers waiting for it,
+ * i.e. without coordinated omission); without it, every worker sends its next request as soon as it gets a response.
+ *
+ * With 'embedded', the DarkSky stand-in and the application are started in this process first,
+ * so that a whole run needs no network (the driver then shares the processors with the application).
+ *
+ * Options (all optional, with or without a leading "--"): target=http://localhost:8080 duration=30 warmup=5 threads=64 rate=0
+ * mix=now:60,recent:30,period:10 locations=1000 seed=42 histogram=file.hgrm
+ * embedded stub-latency=50 stub-jitter=20 stub-error-rate=0
+ *
+ * @author Filipe Pires
+ */
+public class LoadDriver {
+
+    // Attributes
+
+    /**
+     * Highest latency (in microseconds) recorded, longer ones are recorded as this one.
+     */
+    private static final long MAX_LATENCY = TimeUnit.MINUTES.toMicros(1);
+
+    /**
+     * Base URL of the application.
+     */
+    private final String target;
+
+    /**
+     * Number of workers sending requests.
+     */
+    private final int threads;
+
+    /**
+     * Total number of requests per second (non-positive to send them as fast as the responses arrive).
+     */
+    private final double rate;
+
+    /**
+     * Weight of every type of request in the mix.
+     */
+    private final Map<String, Integer> mix;
+
+    /**
+     * Coordinates of the locations requested.
+     */
+    private final List<String> locations = new ArrayList<>();
+
+    /**
+     * Latencies (in microseconds) of the requests after the warmup, by type.
+     */
+    private final Map<String, Histogram> latencies = new LinkedHashMap<>();
+
+    /**
+     * Number of failed requests (with an error status, an error body or no response) after the warmup, by type.
+     */
+    private final Map<String, LongAdder> errors = new HashMap<>();
+
+    /**
+     * Filter keeping the test configurations (on the classpath of the driver) out of the embedded application,
+     * as the Spring test context does.
+     */
+    private static class TestConfigurationExcludeFilter extends TypeExcludeFilter {
+        @Override
+        public boolean match(MetadataReader metadataReader, MetadataReaderFactory metadataReaderFactory) {
+            return metadataReader.getAnnotationMetadata().hasAnnotation(TestConfiguration.class.getName());
+        }
+    }
+
+    // Constructors
+
+    /**
+     * LoadDriver main constructor.
+     *
+     * @param target base URL of the application (e.g. "http://localhost:8080")
+     * @param threads number of workers sending requests
+     * @param rate total number of requests per second, non-positive to send them as fast as the responses arrive
+     * @param mix weight of every type of request ('now', 'recent' and 'period')
+     * @param locations number of locations requested
+     * @param seed seed of the locations
+     */
+    public LoadDriver(String target, int threads, double rate, Map<String, Integer> mix, int locations, long seed) {
+        this.target = target;
+        this.threads = threads;
+        this.rate = rate;
+        this.mix = mix;
+        Random random = new Random(seed);
+        for (int i = 0; i < locations; i++) { // mainland Portugal
+            this.locations.add(String.format(Locale.ROOT, "%.4f,%.4f", 37 + random.nextDouble() * 5, -9.5 + random.nextDouble() * 3.3));
+        }
+        for (String type: mix.keySet()) {
+            this.latencies.put(type, new ConcurrentHistogram(MAX_LATENCY, 3));
+            this.errors.put(type, new LongAdder());
+        }
+    }
+
+    // Methods
+
+    /**
+     * Runs the driver from the command line and prints its report.
+     *
+     * @param args options of the run (see the description of the class)
+     * @throws Exception if the run could not be completed
+     */
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new HashMap<>();
+        for (String arg: args) {
+            String[] option = arg.replaceFirst("^--", "").split("=", 2);
+            options.put(option[0], option.length > 1 ? option[1] : "true");
+        }
+        Map<String, Integer> mix = new LinkedHashMap<>();
+        for (String weight: options.getOrDefault("mix", "now:60,recent:30,period:10").split(",")) {
+            mix.put(weight.split(":")[0].trim(), Integer.valueOf(weight.split(":")[1].trim()));
+        }
+        String target = options.getOrDefault("target", "http://localhost:8080");
+        StubDarkSky stub = null;
+        ConfigurableApplicationContext application = null;
+        if (options.containsKey("embedded")) {
+            stub = new StubDarkSky(0, Long.parseLong(options.getOrDefault("stub-latency", "50")),
+                    Long.parseLong(options.getOrDefault("stub-jitter", "20")), Double.parseDouble(options.getOrDefault("stub-error-rate", "0")));
+            System.setProperty("weatherapp.upstream.base-url", stub.getBaseUrl());
+            System.setProperty("weatherapp.cache.snapshot.file", ""); // every run starts cold
+            System.setProperty("spring.devtools.restart.enabled", "false");
+            application = new SpringApplicationBuilder(WeatherApplication.class)
+                    .initializers(context -> context.getBeanFactory().registerSingleton("testConfigurationExcludeFilter", new TestConfigurationExcludeFilter()))
+                    .run("--server.port=0");
+            target = "http://localhost:" + application.getEnvironment().getProperty("local.server.port");
+        }
+        LoadDriver driver = new LoadDriver(target, Integer.parseInt(options.getOrDefault("threads", "64")),
+                Double.parseDouble(options.getOrDefault("rate", "0")), mix,
+                Integer.parseInt(options.getOrDefault("locations", "1000")), Long.parseLong(options.getOrDefault("seed", "42")));
+        try {
+            long duration = driver.run(Long.parseLong(options.getOrDefault("warmup", "5")), Long.parseLong(options.getOrDefault("duration", "30")));
+            driver.report(System.out, duration);
+            if (options.containsKey("histogram")) {
+                try (PrintStream out = new PrintStream(new FileOutputStream(options.get("histogram")), false, "UTF-8")) {
+                    driver.total().outputPercentileDistribution(out, 1000.0); // in milisseconds
+                }
+            }
+        } finally {
+            if (application != null) {
+                application.close();
+            }
+            if (stub != null) {
+                System.out.println("DarkSky stand-in: " + stub.requestCount() + " requests, " + stub.errorCount() + " failed on purpose");
+                stub.close();
+            }
+        }
+    }
+
+    /**
+     * Sends requests for the given time, recording only the ones sent after the warmup.
+     *
+     * @param warmup time (in seconds) during which the requests are not recorded
+     * @param duration time (in seconds) during which the requests are recorded
+     * @return time (in nanoseconds) during which the requests were recorded
+     * @throws InterruptedException if interrupted while waiting for the workers
+     */
+    public long run(long warmup, long duration) throws InterruptedException {
+        PoolingHttpClientConnectionManager connections = new PoolingHttpClientConnectionManager();
+        connections.setMaxTotal(this.threads);
+        connections.setDefaultMaxPerRoute(this.threads);
+        RequestConfig config = RequestConfig.custom().setConnectTimeout(5000).setSocketTimeout(60000).build();
+        long start = System.nanoTime();
+        long recordFrom = start + TimeUnit.SECONDS.toNanos(warmup);
+        long end = recordFrom + TimeUnit.SECONDS.toNanos(duration);
+        try (CloseableHttpClient client = HttpClients.custom().setConnectionManager(connections).setDefaultRequestConfig(config).build()) {
+            List<Thread> workers = new ArrayList<>();
+            for (int i = 0; i < this.threads; i++) {
+                long offset = this.rate > 0 ? (long) (i * 1e9 / this.rate) : 0; // spreading the workers' schedules
+                Thread worker = new Thread(() -> this.work(client, start + offset, recordFrom, end), "load-driver-" + i);
+                worker.start();
+                workers.add(worker);
+            }
+            for (Thread worker: workers) {
+                worker.join();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException("Unable to close the HTTP client", ex);
+        }
+        return end - recordFrom;
+    }
+
+    /**
+     * Internal method run by every worker: sends requests until the end of the run.
+     *
+     * @param client HTTP client shared by the workers
+     * @param first time (in nanoseconds) at which the first request is due
+     * @param recordFrom time (in nanoseconds) from which requests are recorded
+     * @param end time (in nanoseconds) at which the run ends
+     */
+    private void work(CloseableHttpClient client, long first, long recordFrom, long end) {
+        long interval = this.rate > 0 ? (long) (this.threads * 1e9 / this.rate) : 0;
+        long due = first;
+        while (true) {
+            long now = System.nanoTime();
+            if (interval > 0) {
+                while (now < due) {
+                    LockSupport.parkNanos(due - now);
+                    now = System.nanoTime();
+                }
+            } else {
+                due = now;
+            }
+            if (due >= end) {
+                return;
+            }
+            String type = this.pickType();
+            boolean failed = !this.send(client, this.path(type));
+            if (due >= recordFrom) {
+                this.latencies.get(type).recordValue(Math.min(MAX_LATENCY, TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - due)));
+                if (failed) {
+                    this.errors.get(type).increment();
+                }
+            }
+            due += interval;
+        }
+    }
+
+    /**
+     * Internal auxiliary method used to send a request and read its response.
+     *
+     * @param client HTTP client
+     * @param path path of the request
+     * @return True if the application returned the forecasts, False if it failed or returned an error
+     */
+    private boolean send(CloseableHttpClient client, String path) {
+        try (CloseableHttpResponse response = client.execute(new HttpGet(this.target + path))) {
+            String body = EntityUtils.toString(response.getEntity(), StandardCharsets.UTF_8);
+            return response.getStatusLine().getStatusCode() == 200 && !body.startsWith("[{\"error\"") && !body.startsWith("[{\"code\"");
+        } catch (IOException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Internal auxiliary method used to choose the type of the next request, by the weights of the mix.
+     *
+     * @return type of the request
+     */
+    private String pickType() {
+        int total = 0;
+        for (int weight: this.mix.values()) {
+            total += weight;
+        }
+        int pick = ThreadLocalRandom.current().nextInt(total);
+        for (Map.Entry<String, Integer> weight: this.mix.entrySet()) {
+            pick -= weight.getValue();
+            if (pick < 0) {
+                return weight.getKey();
+            }
+        }
+        throw new IllegalStateException("Empty mix");
+    }
+
+    /**
+     * Internal auxiliary method used to build the path of a request for a random location:
+     * 'recent' requests are for 1 to 7 days and 'period' requests for 1 to 7 days starting in the last 30.
+     *
+     * @param type type of the request
+     * @return path of the request
+     */
+    private String path(String type) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        String location = this.locations.get(random.nextInt(this.locations.size()));
+        switch (type) {
+            case "now":
+                return "/weather/now/" + location;
+            case "recent":
+                return "/weather/recent/" + location + "/" + (1 + random.nextInt(7));
+            case "period":
+                LocalDate start = LocalDate.now().minusDays(random.nextInt(30));
+                return "/weather/period/" + location + "/" + start + "," + start.plusDays(random.nextInt(7));
+            default:
+                throw new IllegalArgumentException("Unknown type of request " + type);
+        }
+    }
+
+    /**
+     * Merges the latencies of every type of request.
+     *
+     * @return histogram of the latencies (in microseconds) of all the recorded requests
+     */
+    public Histogram total() {
+        Histogram total = new Histogram(MAX_LATENCY, 3);
+        for (Histogram histogram: this.latencies.values()) {
+            total.add(histogram);
+        }
+        return total;
+    }
+
+    /**
+     * Prints the throughput and the latency percentiles (in milisseconds) of every type of request and of the whole mix.
+     *
+     * @param out stream where the report is printed
+     * @param duration time (in nanoseconds) during which the requests were recorded
+     */
+    public void report(PrintStream out, long duration) {
+        double seconds = duration / 1e9;
+        out.printf(Locale.ROOT, "%-8s %10s %8s %10s %9s %9s %9s %9s %9s%n", "type", "requests", "errors", "req/s", "p50", "p90", "p99", "p99.9", "max");
+        long totalErrors = 0;
+        for (Map.Entry<String, Histogram> type: this.latencies.entrySet()) {
+            long typeErrors = this.errors.get(type.getKey()).sum();
+            totalErrors += typeErrors;
+            this.printRow(out, type.getKey(), type.getValue(), typeErrors, seconds);
+        }
+        this.printRow(out, "total", this.total(), totalErrors, seconds);
+    }
+
+    /**
+     * Internal auxiliary method used to print a row of the report.
+     *
+     * @param out stream where the report is printed
+     * @param name name of the row
+     * @param histogram latencies (in microseconds) of the requests
+     * @param errors number of failed requests
+     * @param seconds time (in seconds) during which the requests were recorded
+     */
+    private void printRow(PrintStream out, String name, Histogram histogram, long errors, double seconds) {
+        out.printf(Locale.ROOT, "%-8s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, histogram.getTotalCount(), errors,
+                histogram.getTotalCount() / seconds,
+                histogram.getValueAtPercentile(50) / 1000.0, histogram.getValueAtPercentile(90) / 1000.0,
+                histogram.getValueAtPercentile(99) / 1000.0, histogram.getValueAtPercentile(99.9) / 1000.0,
+                histogram.getMaxValue() / 1000.0);
+    }
+}
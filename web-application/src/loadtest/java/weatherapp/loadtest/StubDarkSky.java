@@ -0,0 +1,233 @@
+package weatherapp.loadtest;
+
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Local stand-in for the external API DarkSky, serving the recorded responses of src/test/resources/darksky
+ * with a configurable latency and a configurable rate of failures, so that the application can be loaded
+ * without network nor quotas.
+ *
+ * Paths follow the ones of DarkSky: "/forecast/{key}/{latitude},{longitude}" gets the recorded forecast
+ * and "/forecast/{key}/{latitude},{longitude},{time}" the recorded time-machine day, without the blocks
+ * listed in the "exclude" parameter; the latency is waited without holding a thread,
+ * so that thousands of requests can be in progress at the same time.
+ *
+ * Usage: StubDarkSky [port] [latency in ms] [jitter in ms] [error rate, from 0 to 1]
+ *
+ * @author Filipe Pires
+ */
+public class StubDarkSky implements Closeable {
+
+    // Attributes
+
+    /**
+     * HTTP server receiving the requests.
+     */
+    private final HttpServer server;
+
+    /**
+     * Scheduler sending the responses once their latency has passed.
+     */
+    private final ScheduledExecutorService scheduler;
+
+    /**
+     * Minimum latency (in milisseconds) of every response.
+     */
+    private final long latency;
+
+    /**
+     * Maximum latency (in milisseconds) added at random to the minimum one.
+     */
+    private final long jitter;
+
+    /**
+     * Fraction of the requests failed with 503 (Service Unavailable).
+     */
+    private final double errorRate;
+
+    /**
+     * Recorded responses, by name ("forecast" and "time-machine").
+     */
+    private final Map<String, JsonObject> recorded = new ConcurrentHashMap<>();
+
+    /**
+     * Bodies of the responses, by name and excluded blocks.
+     */
+    private final Map<String, byte[]> bodies = new ConcurrentHashMap<>();
+
+    /**
+     * Number of requests received.
+     */
+    private final LongAdder requests = new LongAdder();
+
+    /**
+     * Number of requests failed on purpose.
+     */
+    private final LongAdder errors = new LongAdder();
+
+    // Constructors
+
+    /**
+     * StubDarkSky main constructor: starts serving on the given port.
+     *
+     * @param port port on which the requests are received (0 for any free port)
+     * @param latency minimum latency (in milisseconds) of every response
+     * @param jitter maximum latency (in milisseconds) added at random to the minimum one
+     * @param errorRate fraction of the requests failed with 503 (Service Unavailable)
+     * @throws IOException if the server could not be started or the recorded responses read
+     */
+    public StubDarkSky(int port, long latency, long jitter, double errorRate) throws IOException {
+        this.latency = latency;
+        this.jitter = jitter;
+        this.errorRate = errorRate;
+        for (String name: new String[]{"forecast", "time-machine"}) {
+            try (Reader reader = new InputStreamReader(StubDarkSky.class.getResourceAsStream("/darksky/" + name + ".json"), StandardCharsets.UTF_8)) {
+                this.recorded.put(name, new JsonParser().parse(reader).getAsJsonObject());
+            }
+        }
+        this.scheduler = Executors.newScheduledThreadPool(Runtime.getRuntime().availableProcessors(), r -> {
+            Thread t = new Thread(r, "stub-darksky");
+            t.setDaemon(true);
+            return t;
+        });
+        this.server = HttpServer.create(new InetSocketAddress("localhost", port), 1024);
+        this.server.createContext("/forecast/", this::handle);
+        this.server.setExecutor(this.scheduler);
+        this.server.start();
+    }
+
+    // Methods
+
+    /**
+     * Starts the stand-in from the command line, until the process is stopped.
+     *
+     * @param args port, latency (in milisseconds), jitter (in milisseconds) and error rate, all optional
+     * @throws IOException if the server could not be started
+     */
+    public static void main(String[] args) throws IOException {
+        int port = args.length > 0 ? Integer.parseInt(args[0]) : 8089;
+        long latency = args.length > 1 ? Long.parseLong(args[1]) : 50;
+        long jitter = args.length > 2 ? Long.parseLong(args[2]) : 20;
+        double errorRate = args.length > 3 ? Double.parseDouble(args[3]) : 0;
+        StubDarkSky stub = new StubDarkSky(port, latency, jitter, errorRate);
+        System.out.println("DarkSky stand-in on " + stub.getBaseUrl() + " (latency " + latency + "+" + jitter + " ms, error rate " + errorRate + ")");
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            stub.close();
+            System.out.println("Requests: " + stub.requestCount() + ", failed on purpose: " + stub.errorCount());
+        }));
+    }
+
+    /**
+     * Handles a request: the response is chosen immediately and sent once its latency has passed.
+     *
+     * @param exchange request and response
+     */
+    private void handle(HttpExchange exchange) {
+        this.requests.increment();
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long delay = this.latency + (this.jitter > 0 ? random.nextLong(this.jitter + 1) : 0);
+        if (random.nextDouble() < this.errorRate) {
+            this.errors.increment();
+            this.scheduler.schedule(() -> this.send(exchange, 503, new byte[0]), delay, TimeUnit.MILLISECONDS);
+            return;
+        }
+        String path = exchange.getRequestURI().getPath(); // /forecast/{key}/{latitude},{longitude}[,{time}]
+        String location = path.substring(path.lastIndexOf('/') + 1);
+        String name = location.split(",").length > 2 ? "time-machine" : "forecast";
+        String query = exchange.getRequestURI().getQuery();
+        String exclude = query != null && query.startsWith("exclude=") ? query.substring("exclude=".length()) : "";
+        byte[] body = this.bodies.computeIfAbsent(name + "?" + exclude, k -> this.body(name, exclude));
+        this.scheduler.schedule(() -> this.send(exchange, 200, body), delay, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Internal auxiliary method used to build the body of a recorded response without the excluded blocks.
+     *
+     * @param name name of the recorded response
+     * @param exclude blocks excluded, separated by ','
+     * @return UTF-8 bytes of the body
+     */
+    private byte[] body(String name, String exclude) {
+        JsonObject response = this.recorded.get(name).deepCopy();
+        for (String block: exclude.split(",")) {
+            response.remove(block);
+        }
+        return response.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Internal auxiliary method used to send a response.
+     *
+     * @param exchange request and response
+     * @param status HTTP status of the response
+     * @param body body of the response
+     */
+    private void send(HttpExchange exchange, int status, byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } catch (IOException ex) {
+            Logger.getLogger(StubDarkSky.class.getName()).log(Level.FINE, "Response not sent", ex);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    /**
+     * Returns the base URL of the forecasts, to be given to the application as weatherapp.upstream.base-url.
+     *
+     * @return String holding the base URL (e.g. "http://localhost:8089/forecast")
+     */
+    public String getBaseUrl() {
+        return "http://localhost:" + this.server.getAddress().getPort() + "/forecast";
+    }
+
+    /**
+     * Returns the number of requests received.
+     *
+     * @return long value holding the number of requests
+     */
+    public long requestCount() {
+        return this.requests.sum();
+    }
+
+    /**
+     * Returns the number of requests failed on purpose.
+     *
+     * @return long value holding the number of failures
+     */
+    public long errorCount() {
+        return this.errors.sum();
+    }
+
+    /**
+     * Stops serving.
+     */
+    @Override
+    public void close() {
+        this.server.stop(0);
+        this.scheduler.shutdownNow();
+    }
+}
@@ -1,11 +1,42 @@
 package weatherapp;
 
+import io.netty.channel.ChannelOption;
+import io.netty.handler.timeout.ReadTimeoutHandler;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.DefaultConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Primary;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.reactive.ReactorClientHttpConnector;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.netty.resources.ConnectionProvider;
+import weatherapp.cache.CacheSnapshot;
+import weatherapp.cache.DailyForecast;
+import weatherapp.cache.ForecastCodec;
+import weatherapp.cache.ForecastWeigher;
 import weatherapp.cache.LocalCache;
+import weatherapp.cache.LocalCacheMetrics;
+import weatherapp.cache.OffHeapStore;
+import weatherapp.cache.OffHeapStoreMetrics;
+import weatherapp.controllers.Bulkhead;
+import weatherapp.services.CacheWarmer;
+import weatherapp.services.CircuitBreaker;
 import weatherapp.services.ExternalService;
+import weatherapp.services.GeoQuantizer;
+import weatherapp.services.HeavyHitters;
+import weatherapp.services.RefreshPolicy;
+import weatherapp.services.UpstreamPlanner;
+import weatherapp.services.UpstreamPool;
 import weatherapp.services.WeatherService;
 
 /**
@@ -23,14 +54,215 @@ public class WeatherApplication {
         SpringApplication.run(WeatherApplication.class, args);
     }
 
+    /**
+     * HTTP client used for the requests to the external API DarkSky,
+     * keeping a pool of persistent connections so that requests do not pay the connection (and TLS) handshake.
+     * 
+     * @param maxConnections maximum number of connections in the pool
+     * @param maxConnectionsPerRoute maximum number of connections in the pool to the same host
+     * @param connectTimeout maximum time (in milliseconds) to establish a connection
+     * @param readTimeout maximum time (in milliseconds) of inactivity while waiting for a response
+     * @param poolTimeout maximum time (in milliseconds) to wait for a connection from the pool
+     * @param keepAlive maximum time (in seconds) to keep a connection alive, unless the server asks for less
+     * @param idleTimeout time (in seconds) after which idle connections are closed
+     * @return the pooled HTTP client
+     */
+    @Bean(destroyMethod = "close")
+    public CloseableHttpClient getHttpClient(@Value("${weatherapp.upstream.max-connections:50}") int maxConnections,
+                                             @Value("${weatherapp.upstream.max-connections-per-route:20}") int maxConnectionsPerRoute,
+                                             @Value("${weatherapp.upstream.connect-timeout:2000}") int connectTimeout,
+                                             @Value("${weatherapp.upstream.read-timeout:5000}") int readTimeout,
+                                             @Value("${weatherapp.upstream.pool-timeout:1000}") int poolTimeout,
+                                             @Value("${weatherapp.upstream.keep-alive:60}") long keepAlive,
+                                             @Value("${weatherapp.upstream.idle-timeout:30}") long idleTimeout) {
+        PoolingHttpClientConnectionManager connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxConnections);
+        connectionManager.setDefaultMaxPerRoute(maxConnectionsPerRoute);
+        connectionManager.setValidateAfterInactivity(2000);
+        RequestConfig requestConfig = RequestConfig.custom()
+                .setConnectTimeout(connectTimeout)
+                .setSocketTimeout(readTimeout)
+                .setConnectionRequestTimeout(poolTimeout)
+                .build();
+        return HttpClients.custom()
+                .setConnectionManager(connectionManager)
+                .setDefaultRequestConfig(requestConfig)
+                .setKeepAliveStrategy((response, context) -> {
+                    long requested = DefaultConnectionKeepAliveStrategy.INSTANCE.getKeepAliveDuration(response, context);
+                    return requested > 0 ? Math.min(requested, keepAlive * 1000) : keepAlive * 1000;
+                })
+                .evictExpiredConnections()
+                .evictIdleConnections(idleTimeout, TimeUnit.SECONDS)
+                .build();
+    }
+
+    @Bean
+    public RestTemplate getRestTemplate(CloseableHttpClient httpClient) {
+       return new RestTemplate(new HttpComponentsClientHttpRequestFactory(httpClient));
+    }
+    
+    /**
+     * Non-blocking HTTP client used for the reactive requests to the external API DarkSky,
+     * with its own pool of persistent connections (served by a few event loop threads instead of a thread per request).
+     * 
+     * @param maxConnections maximum number of connections in the pool
+     * @param connectTimeout maximum time (in milliseconds) to establish a connection
+     * @param readTimeout maximum time (in milliseconds) of inactivity while waiting for a response
+     * @param poolTimeout maximum time (in milliseconds) to wait for a connection from the pool
+     * @return the non-blocking HTTP client
+     */
+    @Bean
+    public WebClient getWebClient(@Value("${weatherapp.upstream.max-connections:50}") int maxConnections,
+                                  @Value("${weatherapp.upstream.connect-timeout:2000}") int connectTimeout,
+                                  @Value("${weatherapp.upstream.read-timeout:5000}") int readTimeout,
+                                  @Value("${weatherapp.upstream.pool-timeout:1000}") int poolTimeout) {
+        reactor.netty.http.client.HttpClient httpClient = reactor.netty.http.client.HttpClient
+                .create(ConnectionProvider.fixed("darksky", maxConnections, poolTimeout))
+                .tcpConfiguration(tcpClient -> tcpClient
+                        .option(ChannelOption.CONNECT_TIMEOUT_MILLIS, connectTimeout)
+                        .doOnConnected(connection -> connection.addHandlerLast(new ReadTimeoutHandler(readTimeout, TimeUnit.MILLISECONDS))));
+        return WebClient.builder().clientConnector(new ReactorClientHttpConnector(httpClient)).build();
+    }
+    
+    /**
+     * Memory cache of the forecasts, bounded by the estimated heap footprint of its entries;
+     * the entries evicted or expired are demoted to the second tier, when it is enabled.
+     * 
+     * @param timeToLive lifetime (in seconds) of every cache entry
+     * @param timerInterval minimum space of time (in seconds) between expiration tasks
+     * @param maximumWeight maximum estimated footprint (in bytes) of the cache, non-positive for unbounded
+     * @param offHeapStore second tier of the cache
+     * @return the cache shared by the weather services
+     */
+    @Bean
+    @Primary
+    public LocalCache getLocalCache(@Value("${weatherapp.cache.time-to-live:10}") long timeToLive,
+                                    @Value("${weatherapp.cache.timer-interval:1}") long timerInterval,
+                                    @Value("${weatherapp.cache.maximum-weight:0}") long maximumWeight,
+                                    OffHeapStore<DailyForecast> offHeapStore) {
+        LocalCache<String, DailyForecast> cache = new LocalCache<>(timeToLive, timerInterval, maximumWeight, new ForecastWeigher());
+        if(offHeapStore.isEnabled()) {
+            cache.setEvictionListener(offHeapStore::put);
+        }
+        return cache;
+    }
+    
+    /**
+     * Last forecast retrieved of every day, kept after it expires from the cache tiers
+     * to be served while the external API is failing.
+     * 
+     * @param timeToLive lifetime (in seconds) of a forecast since it was last retrieved or served
+     * @param maximumWeight maximum estimated footprint (in bytes) of the forecasts (most of them shared with the cache), non-positive for unbounded
+     * @return the last known forecasts, by cache key
+     */
+    @Bean(name = "lastKnownForecasts")
+    public LocalCache<String, DailyForecast> getLastKnownForecasts(@Value("${weatherapp.upstream.circuit-breaker.fallback-time-to-live:86400}") long timeToLive,
+                                                                   @Value("${weatherapp.upstream.circuit-breaker.fallback-maximum-weight:16777216}") long maximumWeight) {
+        return new LocalCache<>(timeToLive, 60, maximumWeight, new ForecastWeigher());
+    }
+    
+    /**
+     * Second tier of the cache, keeping serialized forecasts outside of the heap
+     * (in direct memory, or in a memory-mapped file if one is given).
+     * 
+     * @param capacity maximum number of bytes used by the second tier, non-positive to disable it
+     * @param segmentSize size (in bytes) of the segments in which the second tier is recycled
+     * @param timeToLive lifetime (in seconds) of the forecasts kept in the second tier
+     * @param file path of the memory-mapped file, empty to use direct memory
+     * @return the second tier of the cache
+     * @throws IOException if the file could not be mapped
+     */
+    @Bean(destroyMethod = "close")
+    public OffHeapStore<DailyForecast> getOffHeapStore(@Value("${weatherapp.cache.off-heap.capacity:0}") long capacity,
+                                                       @Value("${weatherapp.cache.off-heap.segment-size:4194304}") int segmentSize,
+                                                       @Value("${weatherapp.cache.off-heap.time-to-live:3600}") long timeToLive,
+                                                       @Value("${weatherapp.cache.off-heap.file:}") String file) throws IOException {
+        if(file.isEmpty()) {
+            return new OffHeapStore<>(new ForecastCodec(), capacity, segmentSize, timeToLive);
+        }
+        return new OffHeapStore<>(new ForecastCodec(), capacity, segmentSize, timeToLive, file);
+    }
+    
+    /**
+     * Snapshot of both tiers of the cache, read when the application starts
+     * and written periodically and when it shuts down (before the tiers are closed).
+     * 
+     * @param localCache first tier of the cache
+     * @param offHeapStore second tier of the cache
+     * @param file path of the snapshot file, empty to disable it
+     * @param interval space of time (in seconds) between snapshots, non-positive to write it only on shutdown
+     * @return the snapshot of the cache
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public CacheSnapshot<DailyForecast> getCacheSnapshot(LocalCache<String, DailyForecast> localCache,
+                                                         OffHeapStore<DailyForecast> offHeapStore,
+                                                         @Value("${weatherapp.cache.snapshot.file:}") String file,
+                                                         @Value("${weatherapp.cache.snapshot.interval:300}") long interval) {
+        return new CacheSnapshot<>(localCache, offHeapStore, new ForecastCodec(), file, interval);
+    }
+    
+    /**
+     * Meters of the memory cache (size, hits, misses, insertions, evictions and estimated footprint), tagged cache=forecasts.
+     * 
+     * @param localCache memory cache of the forecasts
+     * @return binder of the meters, bound to the registry by Spring Boot
+     */
     @Bean
-    public RestTemplate getRestTemplate() {
-       return new RestTemplate();
+    public LocalCacheMetrics getLocalCacheMetrics(LocalCache<String, DailyForecast> localCache) {
+        return new LocalCacheMetrics(localCache, "forecasts", Collections.emptyList());
     }
     
+    /**
+     * Meters of the second tier of the cache (size, promotions, misses, insertions, evictions and capacity), tagged cache=forecasts-off-heap.
+     * 
+     * @param offHeapStore second tier of the cache
+     * @return binder of the meters, bound to the registry by Spring Boot
+     */
     @Bean
-    public LocalCache getLocalCache() {
-        return new LocalCache();
+    public OffHeapStoreMetrics getOffHeapStoreMetrics(OffHeapStore<DailyForecast> offHeapStore) {
+        return new OffHeapStoreMetrics(offHeapStore, "forecasts-off-heap", Collections.emptyList());
+    }
+    
+    /**
+     * Threads sending the requests to the external API DarkSky caused by the requests for the current forecast,
+     * so that they never queue behind the ones of the other types.
+     * 
+     * @param maxConcurrency maximum number of requests to DarkSky in progress at the same time, non-positive for unbounded
+     * @param maxQueued maximum number of requests to DarkSky waiting for a thread, beyond which they wait for a place
+     * @return the upstream pool of the requests
+     */
+    @Bean(name = "nowUpstreamPool", destroyMethod = "shutdown")
+    public UpstreamPool getNowUpstreamPool(@Value("${weatherapp.upstream.now.max-concurrency:4}") int maxConcurrency,
+                                           @Value("${weatherapp.upstream.now.max-queued:76}") int maxQueued) {
+        return new UpstreamPool("now", maxConcurrency, maxQueued);
+    }
+    
+    /**
+     * Threads sending the requests to the external API DarkSky caused by the requests for the forecasts of the recent days,
+     * so that they never queue behind the ones of the other types.
+     * 
+     * @param maxConcurrency maximum number of requests to DarkSky in progress at the same time, non-positive for unbounded
+     * @param maxQueued maximum number of requests to DarkSky waiting for a thread, beyond which they wait for a place
+     * @return the upstream pool of the requests
+     */
+    @Bean(name = "recentUpstreamPool", destroyMethod = "shutdown")
+    public UpstreamPool getRecentUpstreamPool(@Value("${weatherapp.upstream.recent.max-concurrency:4}") int maxConcurrency,
+                                              @Value("${weatherapp.upstream.recent.max-queued:36}") int maxQueued) {
+        return new UpstreamPool("recent", maxConcurrency, maxQueued);
+    }
+    
+    /**
+     * Threads sending the requests to the external API DarkSky caused by the requests for the predictions of a period,
+     * so that they never queue behind the ones of the other types.
+     * 
+     * @param maxConcurrency maximum number of requests to DarkSky in progress at the same time, non-positive for unbounded
+     * @param maxQueued maximum number of requests to DarkSky waiting for a thread, beyond which they wait for a place
+     * @return the upstream pool of the requests
+     */
+    @Bean(name = "periodUpstreamPool", destroyMethod = "shutdown")
+    public UpstreamPool getPeriodUpstreamPool(@Value("${weatherapp.upstream.period.max-concurrency:8}") int maxConcurrency,
+                                              @Value("${weatherapp.upstream.period.max-queued:240}") int maxQueued) {
+        return new UpstreamPool("period", maxConcurrency, maxQueued);
     }
     
     @Bean
@@ -43,4 +275,149 @@ public class WeatherApplication {
         return new ExternalService();
     }
     
+    @Bean
+    public UpstreamPlanner getUpstreamPlanner() {
+        return new UpstreamPlanner();
+    }
+    
+    /**
+     * Grid to which the requested coordinates are snapped before reaching the cache.
+     * 
+     * @param gridSize size (in degrees) of the cells of the grid, non-positive to disable snapping
+     * @return the quantizer used by the weather services
+     */
+    @Bean
+    public GeoQuantizer getGeoQuantizer(@Value("${weatherapp.cache.coordinate-grid:0}") double gridSize) {
+        return new GeoQuantizer(gridSize);
+    }
+    
+    /**
+     * Soft time-to-live of the cached forecasts, after which they are refreshed in the background
+     * while still being returned.
+     * 
+     * @param refreshAfter time (in seconds) after which a forecast is stale, non-positive to never refresh forecasts
+     * @param refreshAhead time (in seconds) before becoming stale during which a forecast read is refreshed
+     * @param minReads minimum number of reads since it was retrieved for a forecast to be refreshed ahead of time
+     * @return the refresh policy used by the weather services
+     */
+    @Bean
+    public RefreshPolicy getRefreshPolicy(@Value("${weatherapp.cache.refresh-after:0}") long refreshAfter,
+                                          @Value("${weatherapp.cache.refresh-ahead:0}") long refreshAhead,
+                                          @Value("${weatherapp.cache.refresh-ahead-min-reads:1}") int minReads) {
+        return new RefreshPolicy(refreshAfter, refreshAhead, minReads);
+    }
+    
+    /**
+     * Circuit breaker of the requests to the external API DarkSky.
+     * 
+     * @param windowSize number of latest requests whose outcomes are kept, non-positive to never open the circuit
+     * @param failureRate rate of failures in the window (from 0 to 1) at which the circuit opens
+     * @param slowCall time (in milliseconds) after which a request counts as failed, non-positive to ignore the latency
+     * @param openDuration time (in seconds) during which the circuit stays open before probing the external API
+     * @param probes number of probes sent (and succeeded) before closing the circuit
+     * @return the circuit breaker used by the weather services
+     */
+    @Bean
+    public CircuitBreaker getCircuitBreaker(@Value("${weatherapp.upstream.circuit-breaker.window:0}") int windowSize,
+                                            @Value("${weatherapp.upstream.circuit-breaker.failure-rate:0.5}") double failureRate,
+                                            @Value("${weatherapp.upstream.circuit-breaker.slow-call:0}") long slowCall,
+                                            @Value("${weatherapp.upstream.circuit-breaker.open-duration:30}") long openDuration,
+                                            @Value("${weatherapp.upstream.circuit-breaker.probes:2}") int probes) {
+        return new CircuitBreaker(windowSize, failureRate, slowCall, openDuration, probes);
+    }
+    
+    /**
+     * Bound of the requests for today's prediction, served within their own permits.
+     * 
+     * @param maxConcurrent maximum number of requests served at the same time, non-positive for unbounded
+     * @param maxWaiting maximum number of requests waiting for a permit
+     * @param maxWait maximum time (in milliseconds) a request waits for a permit, non-positive to reject it at once
+     * @return the bulkhead of the requests
+     */
+    @Bean(name = "nowBulkhead")
+    public Bulkhead getNowBulkhead(@Value("${weatherapp.bulkhead.now.max-concurrent:0}") int maxConcurrent,
+                                   @Value("${weatherapp.bulkhead.now.max-waiting:0}") int maxWaiting,
+                                   @Value("${weatherapp.bulkhead.now.max-wait:0}") long maxWait) {
+        return new Bulkhead("now", maxConcurrent, maxWaiting, maxWait);
+    }
+    
+    /**
+     * Bound of the requests for the predictions of the upcoming days, served within their own permits.
+     * 
+     * @param maxConcurrent maximum number of requests served at the same time, non-positive for unbounded
+     * @param maxWaiting maximum number of requests waiting for a permit
+     * @param maxWait maximum time (in milliseconds) a request waits for a permit, non-positive to reject it at once
+     * @return the bulkhead of the requests
+     */
+    @Bean(name = "recentBulkhead")
+    public Bulkhead getRecentBulkhead(@Value("${weatherapp.bulkhead.recent.max-concurrent:0}") int maxConcurrent,
+                                      @Value("${weatherapp.bulkhead.recent.max-waiting:0}") int maxWaiting,
+                                      @Value("${weatherapp.bulkhead.recent.max-wait:0}") long maxWait) {
+        return new Bulkhead("recent", maxConcurrent, maxWaiting, maxWait);
+    }
+    
+    /**
+     * Bound of the requests for the predictions of a period, served within their own permits.
+     * 
+     * @param maxConcurrent maximum number of requests served at the same time, non-positive for unbounded
+     * @param maxWaiting maximum number of requests waiting for a permit
+     * @param maxWait maximum time (in milliseconds) a request waits for a permit, non-positive to reject it at once
+     * @return the bulkhead of the requests
+     */
+    @Bean(name = "periodBulkhead")
+    public Bulkhead getPeriodBulkhead(@Value("${weatherapp.bulkhead.period.max-concurrent:0}") int maxConcurrent,
+                                      @Value("${weatherapp.bulkhead.period.max-waiting:0}") int maxWaiting,
+                                      @Value("${weatherapp.bulkhead.period.max-wait:0}") long maxWait) {
+        return new Bulkhead("period", maxConcurrent, maxWaiting, maxWait);
+    }
+    
+    /**
+     * Bound of the requests for the cache, served within their own permits.
+     * 
+     * @param maxConcurrent maximum number of requests served at the same time, non-positive for unbounded
+     * @param maxWaiting maximum number of requests waiting for a permit
+     * @param maxWait maximum time (in milliseconds) a request waits for a permit, non-positive to reject it at once
+     * @return the bulkhead of the requests
+     */
+    @Bean(name = "cachedBulkhead")
+    public Bulkhead getCachedBulkhead(@Value("${weatherapp.bulkhead.cached.max-concurrent:0}") int maxConcurrent,
+                                      @Value("${weatherapp.bulkhead.cached.max-waiting:0}") int maxWaiting,
+                                      @Value("${weatherapp.bulkhead.cached.max-wait:0}") long maxWait) {
+        return new Bulkhead("cached", maxConcurrent, maxWaiting, maxWait);
+    }
+    
+    /**
+     * Approximate counters of the most requested locations.
+     * 
+     * @param capacity maximum number of locations counted, non-positive to disable counting
+     * @return the sketch shared by the weather services and the cache warmer
+     */
+    @Bean
+    public HeavyHitters getHeavyHitters(@Value("${weatherapp.warmer.capacity:0}") int capacity) {
+        return new HeavyHitters(capacity);
+    }
+    
+    /**
+     * Warmer of the forecasts of the most requested locations, at startup and periodically.
+     * 
+     * @param weatherService service used to request the forecasts being warmed
+     * @param popularity counters of the most requested locations
+     * @param geoQuantizer grid to which the seed locations are snapped
+     * @param topN maximum number of locations warmed in every round, non-positive to disable warming
+     * @param interval space of time (in seconds) between rounds, non-positive to warm only at startup
+     * @param timeToLive lifetime (in seconds) of an entry of the memory cache since its last access,
+     *                   half of which is the space of time between the reads keeping the warmed days in it
+     * @param seeds coordinates of the locations warmed at startup, separated by ';'
+     * @return the cache warmer
+     */
+    @Bean(initMethod = "start", destroyMethod = "close")
+    public CacheWarmer getCacheWarmer(WeatherService weatherService, HeavyHitters popularity, GeoQuantizer geoQuantizer,
+                                      @Value("${weatherapp.warmer.top:0}") int topN,
+                                      @Value("${weatherapp.warmer.interval:300}") long interval,
+                                      @Value("${weatherapp.cache.time-to-live:10}") long timeToLive,
+                                      @Value("${weatherapp.warmer.seeds:}") String seeds) {
+        long keepAlive = timeToLive > 0 ? Math.max(1, timeToLive / 2) : 0;
+        return new CacheWarmer(weatherService, popularity, geoQuantizer, topN, interval, keepAlive, seeds);
+    }
+    
 }
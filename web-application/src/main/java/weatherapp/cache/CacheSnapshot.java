@@ -0,0 +1,289 @@
+package weatherapp.cache;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Snapshot of the contents of the cache (both tiers) in a local file, so that a restarted application comes back warm.
+ *
+ * The snapshot is written periodically and when the application shuts down, and read when it starts.
+ * Every record holds the tier of the entry, its key, the time it had left to live and its serialized value;
+ * the file is written as a stream to a temporary file, which then atomically replaces the previous snapshot,
+ * and read back as a stream, so that a node holding hundreds of thousands of days is warm again in a few seconds.
+ *
+ * The time spent while the application was down counts against the time-to-live of the entries:
+ * entries of the first tier expiring in the meantime are moved to the second tier (as they would have been),
+ * entries of the second tier expiring in the meantime are dropped.
+ *
+ * A snapshot without a file is disabled: it writes and reads nothing.
+ *
+ * @author Filipe Pires
+ * @param <V> type of the cached values
+ */
+public class CacheSnapshot<V> implements Closeable {
+
+    // Attributes
+
+    /**
+     * Identifier written at the start of every snapshot ("WFCS").
+     */
+    private static final int MAGIC = 0x57464353;
+
+    /**
+     * Version of the format of the snapshot (and of the values written by the codec).
+     */
+    private static final int VERSION = 3;
+
+    /**
+     * Tier of the records holding entries of the first tier (LocalCache).
+     */
+    private static final byte MEMORY = 0;
+
+    /**
+     * Tier of the records holding entries of the second tier (OffHeapStore).
+     */
+    private static final byte OFF_HEAP = 1;
+
+    /**
+     * Marker written after the last record.
+     */
+    private static final byte END = -1;
+
+    /**
+     * First tier of the cache.
+     */
+    private final LocalCache<String, V> localCache;
+
+    /**
+     * Second tier of the cache.
+     */
+    private final OffHeapStore<V> offHeapStore;
+
+    /**
+     * Codec used to serialize the values.
+     */
+    private final Codec<V> codec;
+
+    /**
+     * Path of the snapshot file (null if the snapshot is disabled).
+     */
+    private final Path file;
+
+    /**
+     * Space of time (in seconds) between periodic snapshots (non-positive to write it only on shutdown).
+     */
+    private final long interval;
+
+    /**
+     * Scheduler writing the periodic snapshots (null until started).
+     */
+    private ScheduledExecutorService scheduler;
+
+    // Constructors
+
+    /**
+     * CacheSnapshot main constructor.
+     *
+     * @param localCache first tier of the cache
+     * @param offHeapStore second tier of the cache
+     * @param codec codec used to serialize the values
+     * @param file path of the snapshot file, empty to disable the snapshot
+     * @param interval space of time (in seconds) between periodic snapshots, non-positive to write it only on shutdown
+     */
+    public CacheSnapshot(LocalCache<String, V> localCache, OffHeapStore<V> offHeapStore, Codec<V> codec, String file, long interval) {
+        this.localCache = localCache;
+        this.offHeapStore = offHeapStore;
+        this.codec = codec;
+        this.file = file == null || file.isEmpty() ? null : Paths.get(file);
+        this.interval = interval;
+    }
+
+    // Methods
+
+    /**
+     * Reads the last snapshot into the cache and schedules the periodic snapshots.
+     */
+    public synchronized void start() {
+        if (!isEnabled() || this.scheduler != null) {
+            return;
+        }
+        this.load();
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+        if (this.interval > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::save, this.interval, this.interval, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the periodic snapshots and writes a last one.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler == null) {
+            return;
+        }
+        this.scheduler.shutdownNow();
+        this.scheduler = null;
+        this.save();
+    }
+
+    /**
+     * Writes the contents of the cache to the snapshot file, replacing the previous snapshot only once it is complete.
+     *
+     * @return number of entries written, -1 if the snapshot could not be written
+     */
+    public synchronized int save() {
+        if (!isEnabled()) {
+            return 0;
+        }
+        Path temporary = this.file.resolveSibling(this.file.getFileName() + ".tmp");
+        int[] count = {0};
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(temporary), 1 << 16))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(System.currentTimeMillis());
+                this.offHeapStore.forEachEntry((key, value, timeToLive) -> {
+                    this.write(out, OFF_HEAP, key, value, timeToLive);
+                    count[0]++;
+                });
+                this.localCache.forEachEntry((key, value, timeToLive) -> {
+                    this.write(out, MEMORY, key, value, timeToLive);
+                    count[0]++;
+                });
+                out.writeByte(END);
+            }
+            Files.move(temporary, this.file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count[0];
+        } catch (IOException | UncheckedIOException ex) {
+            Logger.getLogger(CacheSnapshot.class.getName()).log(Level.WARNING, "Unable to write the cache snapshot", ex);
+            return -1;
+        }
+    }
+
+    /**
+     * Reads the snapshot file into the cache, discounting the time passed since it was written.
+     * A missing file is ignored; a damaged or truncated file is read up to the first invalid record.
+     *
+     * @return number of entries restored
+     */
+    public synchronized int load() {
+        if (!isEnabled() || !Files.isRegularFile(this.file)) {
+            return 0;
+        }
+        int count = 0;
+        List<Restored<V>> memory = new ArrayList<>();
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(this.file), 1 << 16))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                Logger.getLogger(CacheSnapshot.class.getName()).log(Level.WARNING, "Ignoring cache snapshot {0} with an unknown format", this.file);
+                return 0;
+            }
+            long elapsed = Math.max(0, System.currentTimeMillis() - in.readLong());
+            byte tier;
+            while ((tier = in.readByte()) != END) {
+                String key = in.readUTF();
+                long timeToLive = in.readLong();
+                byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                if (timeToLive != Long.MAX_VALUE) {
+                    timeToLive -= elapsed;
+                }
+                V value = this.codec.decode(ByteBuffer.wrap(bytes));
+                if (tier == OFF_HEAP) {
+                    this.offHeapStore.put(key, value, timeToLive); // oldest first, as they were written
+                    count += timeToLive > 0 && this.offHeapStore.isEnabled() ? 1 : 0;
+                } else if (timeToLive > 0) {
+                    memory.add(new Restored<>(key, value, timeToLive));
+                } else if (this.offHeapStore.isEnabled()) {
+                    this.offHeapStore.put(key, value); // expired while the application was down
+                    count++;
+                }
+            }
+        } catch (IOException | RuntimeException ex) {
+            Logger.getLogger(CacheSnapshot.class.getName()).log(Level.WARNING, "Unable to read the whole cache snapshot", ex);
+        }
+        // inserted by increasing time left, keeping the expiration queue of the cache ordered
+        memory.sort(Comparator.comparingLong(r -> r.timeToLive));
+        for (Restored<V> r: memory) {
+            this.localCache.put(r.key, r.value, r.timeToLive);
+        }
+        return count + memory.size();
+    }
+
+    /**
+     * Determines if the snapshot has a file.
+     *
+     * @return True if the cache is written to and read from a file, False if the snapshot is disabled
+     */
+    public boolean isEnabled() {
+        return this.file != null;
+    }
+
+    /**
+     * Internal method used to write a record of the snapshot.
+     *
+     * @param out stream of the snapshot file
+     * @param tier tier of the entry
+     * @param key identifier of the entry
+     * @param value data stored in the entry
+     * @param timeToLive time (in milisseconds) left before the entry expires
+     */
+    private void write(DataOutputStream out, byte tier, String key, V value, long timeToLive) {
+        try {
+            byte[] bytes = this.codec.encode(value);
+            out.writeByte(tier);
+            out.writeUTF(key);
+            out.writeLong(timeToLive);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    /**
+     * Internal class used to hold the entries of the first tier read from the snapshot, until they are sorted.
+     *
+     * @param <V> type of the cached values
+     */
+    private static class Restored<V> {
+        /**
+         * Identifier of the entry
+         */
+        private final String key;
+        /**
+         * Data stored in the entry
+         */
+        private final V value;
+        /**
+         * Time (in milisseconds) left before the entry expires
+         */
+        private final long timeToLive;
+
+        /**
+         * Default constructor accepting the entry read from the snapshot.
+         *
+         * @param key identifier of the entry
+         * @param value data stored in the entry
+         * @param timeToLive time (in milisseconds) left before the entry expires
+         */
+        private Restored(String key, V value, long timeToLive) {
+            this.key = key;
+            this.value = value;
+            this.timeToLive = timeToLive;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package weatherapp.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec used to store the values of a cache outside of the heap, as bytes.
+ *
+ * @author Filipe Pires
+ * @param <V> type of the values
+ */
+public interface Codec<V> {
+
+    /**
+     * Serializes a value.
+     *
+     * @param value value to be serialized
+     * @return bytes holding the value
+     */
+    byte[] encode(V value);
+
+    /**
+     * Deserializes a value.
+     *
+     * @param buffer buffer holding exactly the bytes produced by encode (from its position to its limit)
+     * @return the value
+     */
+    V decode(ByteBuffer buffer);
+}
@@ -0,0 +1,540 @@
+package weatherapp.cache;
+
+import com.google.gson.*;
+import com.google.gson.stream.JsonWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * Compact representation of the forecast of a day returned by the external API DarkSky, used inside the cache:
+ * the numeric fields are kept in an array of primitives (NaN when absent),
+ * the descriptive Strings (summary, icon and precipitation type) are shared through a dictionary
+ * and any unknown field is kept as JSON.
+ *
+ * Only the compact fields are kept: the JSON representation is written straight to UTF-8 bytes when requested,
+ * without building the JSON object, and the hash identifying it is calculated from the compact fields
+ * (so that an unchanged response is recognized without writing it).
+ * The time at which the forecast was retrieved from DarkSky is kept along with it (but not in its JSON),
+ * so that its freshness is known in every tier of the cache, and so is the number of times it was read since then.
+ *
+ * @author Filipe Pires
+ */
+public final class DailyForecast {
+
+    // Attributes
+
+    /**
+     * Names of the numeric fields of a daily forecast, in the order they are returned by DarkSky.
+     */
+    private static final String[] NUMBERS = {
+        "time", "sunriseTime", "sunsetTime", "moonPhase",
+        "precipIntensity", "precipIntensityMax", "precipIntensityMaxTime", "precipProbability", "precipAccumulation",
+        "temperatureHigh", "temperatureHighTime", "temperatureLow", "temperatureLowTime",
+        "apparentTemperatureHigh", "apparentTemperatureHighTime", "apparentTemperatureLow", "apparentTemperatureLowTime",
+        "dewPoint", "humidity", "pressure", "windSpeed", "windGust", "windGustTime", "windBearing", "cloudCover",
+        "uvIndex", "uvIndexTime", "visibility", "ozone",
+        "temperatureMin", "temperatureMinTime", "temperatureMax", "temperatureMaxTime",
+        "apparentTemperatureMin", "apparentTemperatureMinTime", "apparentTemperatureMax", "apparentTemperatureMaxTime"
+    };
+
+    /**
+     * Position of each numeric field in the array of values, by name.
+     */
+    private static final Map<String, Integer> INDEXES = new HashMap<>();
+
+    static {
+        for(int i=0; i<NUMBERS.length; i++) {
+            INDEXES.put(NUMBERS[i], i);
+        }
+    }
+
+    /**
+     * Position of the field after which the precipitation type is written.
+     */
+    private static final int PRECIP_TYPE_AFTER = INDEXES.get("precipProbability");
+
+    /**
+     * Maximum number of distinct Strings kept in the dictionary (further Strings are not shared).
+     */
+    private static final int DICTIONARY_SIZE = 8192;
+
+    /**
+     * Dictionary of the descriptive Strings, shared by every forecast
+     * (DarkSky uses a small vocabulary of summaries and icons).
+     */
+    private static final ConcurrentMap<String, String> DICTIONARY = new ConcurrentHashMap<>();
+
+    /**
+     * Updater of the number of reads, shared by every forecast (instead of an atomic object in each).
+     */
+    private static final AtomicIntegerFieldUpdater<DailyForecast> READS = AtomicIntegerFieldUpdater.newUpdater(DailyForecast.class, "reads");
+
+    /**
+     * Values of the numeric fields, in the order of NUMBERS (NaN when absent).
+     */
+    private final double[] numbers;
+
+    /**
+     * Human-readable summary of the day.
+     */
+    private final String summary;
+
+    /**
+     * Name of the icon representing the day.
+     */
+    private final String icon;
+
+    /**
+     * Type of precipitation expected ("rain", "snow" or "sleet"), null if none.
+     */
+    private final String precipType;
+
+    /**
+     * Fields not known by this representation (null if there are none).
+     */
+    private final JsonObject extras;
+
+    /**
+     * Time (in milisseconds since the epoch) at which the forecast was retrieved from the external API.
+     */
+    private final long fetchedAt;
+
+    /**
+     * Number of times the forecast was read from the cache since it was retrieved.
+     */
+    private volatile int reads;
+
+    // Constructors
+
+    /**
+     * Internal constructor, used by fromJson and decode.
+     *
+     * @param numbers values of the numeric fields, in the order of NUMBERS
+     * @param summary human-readable summary of the day
+     * @param icon name of the icon representing the day
+     * @param precipType type of precipitation expected
+     * @param extras fields not known by this representation
+     * @param fetchedAt time (in milisseconds since the epoch) at which the forecast was retrieved
+     * @param reads number of times the forecast was read since it was retrieved
+     */
+    private DailyForecast(double[] numbers, String summary, String icon, String precipType, JsonObject extras, long fetchedAt, int reads) {
+        this.numbers = numbers;
+        this.summary = summary;
+        this.icon = icon;
+        this.precipType = precipType;
+        this.extras = extras;
+        this.fetchedAt = fetchedAt;
+        this.reads = reads;
+    }
+
+    // Methods
+
+    /**
+     * Builds the compact representation of a daily forecast just returned by DarkSky.
+     *
+     * @param day JSON object of the day, as returned by the external API
+     * @return compact daily forecast holding the same fields
+     */
+    public static DailyForecast fromJson(JsonObject day) {
+        return fromJson(day, System.currentTimeMillis());
+    }
+
+    /**
+     * Builds the compact representation of a daily forecast returned by DarkSky at a given time.
+     *
+     * @param day JSON object of the day, as returned by the external API
+     * @param fetchedAt time (in milisseconds since the epoch) at which the forecast was retrieved
+     * @return compact daily forecast holding the same fields
+     */
+    public static DailyForecast fromJson(JsonObject day, long fetchedAt) {
+        double[] numbers = new double[NUMBERS.length];
+        Arrays.fill(numbers, Double.NaN);
+        String summary = null, icon = null, precipType = null;
+        JsonObject extras = null;
+        for(Map.Entry<String, JsonElement> field: day.entrySet()) {
+            String name = field.getKey();
+            JsonElement value = field.getValue();
+            Integer index = INDEXES.get(name);
+            if(index != null && isNumber(value)) {
+                numbers[index] = value.getAsDouble();
+            } else if(name.equals("summary") && isString(value)) {
+                summary = share(value.getAsString());
+            } else if(name.equals("icon") && isString(value)) {
+                icon = share(value.getAsString());
+            } else if(name.equals("precipType") && isString(value)) {
+                precipType = share(value.getAsString());
+            } else {
+                if(extras == null) { extras = new JsonObject(); }
+                extras.add(name, value);
+            }
+        }
+        return new DailyForecast(numbers, summary, icon, precipType, extras, fetchedAt, 0);
+    }
+
+    /**
+     * Builds the JSON representation of the forecast, with the fields in the order used by DarkSky.
+     *
+     * @return JSON object of the day
+     */
+    public JsonObject toJson() {
+        JsonObject day = new JsonObject();
+        this.addNumber(day, 0);
+        if(this.summary != null) { day.addProperty("summary", this.summary); }
+        if(this.icon != null) { day.addProperty("icon", this.icon); }
+        for(int i=1; i<NUMBERS.length; i++) {
+            this.addNumber(day, i);
+            if(i == PRECIP_TYPE_AFTER && this.precipType != null) {
+                day.addProperty("precipType", this.precipType);
+            }
+        }
+        if(this.extras != null) {
+            for(Map.Entry<String, JsonElement> field: this.extras.entrySet()) {
+                day.add(field.getKey(), field.getValue());
+            }
+        }
+        return day;
+    }
+
+    /**
+     * Writes the JSON representation of the forecast, equal to toJson().toString(), without building the JSON object.
+     *
+     * @return UTF-8 bytes of the JSON object of the day
+     */
+    public byte[] toJsonBytes() {
+        StringWriter out = new StringWriter(512);
+        try (JsonWriter writer = new JsonWriter(out)) {
+            writer.setLenient(true);
+            writer.beginObject();
+            this.writeNumber(writer, 0);
+            if(this.summary != null) { writer.name("summary").value(this.summary); }
+            if(this.icon != null) { writer.name("icon").value(this.icon); }
+            for(int i=1; i<NUMBERS.length; i++) {
+                this.writeNumber(writer, i);
+                if(i == PRECIP_TYPE_AFTER && this.precipType != null) {
+                    writer.name("precipType").value(this.precipType);
+                }
+            }
+            if(this.extras != null) {
+                for(Map.Entry<String, JsonElement> field: this.extras.entrySet()) {
+                    writer.name(field.getKey()).jsonValue(field.getValue().toString());
+                }
+            }
+            writer.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Calculates the hash of the contents of the forecast (FNV-1a over its fields), equal for forecasts with equal contents.
+     *
+     * @return 64-bit hash of the fields of the day
+     */
+    public long contentHash() {
+        long hash = 0xcbf29ce484222325L;
+        for(double value: this.numbers) {
+            hash = (hash ^ Double.doubleToLongBits(value)) * 0x100000001b3L;
+        }
+        hash = mix(hash, this.summary);
+        hash = mix(hash, this.icon);
+        hash = mix(hash, this.precipType);
+        return mix(hash, this.extras == null ? null : this.extras.toString());
+    }
+
+    /**
+     * Getter method for the time of the day (start of the day in the time zone of the location).
+     * @return time in seconds since the epoch, or -1 if absent
+     */
+    public long getTime() {
+        return Double.isNaN(this.numbers[0]) ? -1L : (long) this.numbers[0];
+    }
+
+    /**
+     * Getter method for the time at which the forecast was retrieved from the external API.
+     * @return time in milisseconds since the epoch
+     */
+    public long getFetchedAt() {
+        return this.fetchedAt;
+    }
+
+    /**
+     * Counts a read of the forecast from the cache.
+     *
+     * @return number of times the forecast was read since it was retrieved, including this one
+     */
+    public int countRead() {
+        return READS.incrementAndGet(this);
+    }
+
+    /**
+     * Getter method for the number of times the forecast was read.
+     * @return number of times the forecast was read from the cache since it was retrieved
+     */
+    public int getReads() {
+        return this.reads;
+    }
+
+    /**
+     * Getter method for the numeric fields of the forecast.
+     *
+     * @param name name of the field, as returned by DarkSky
+     * @return value of the field, or NaN if absent or not numeric
+     */
+    public double get(String name) {
+        Integer index = INDEXES.get(name);
+        return index == null ? Double.NaN : this.numbers[index];
+    }
+
+    /**
+     * Getter method for the summary of the day.
+     * @return human-readable summary, null if absent
+     */
+    public String getSummary() {
+        return this.summary;
+    }
+
+    /**
+     * Getter method for the icon of the day.
+     * @return name of the icon, null if absent
+     */
+    public String getIcon() {
+        return this.icon;
+    }
+
+    /**
+     * Getter method for the type of precipitation.
+     * @return "rain", "snow" or "sleet", null if absent
+     */
+    public String getPrecipType() {
+        return this.precipType;
+    }
+
+    /**
+     * Estimates the heap footprint of the forecast (assuming a 64-bit JVM with compressed references),
+     * not counting the shared Strings.
+     *
+     * @return estimated number of bytes
+     */
+    public long sizeOf() {
+        long size = 48 + 16 + 8L * this.numbers.length; // object and array of values
+        if(this.extras != null) {
+            size += JsonWeigher.sizeOf(this.extras);
+        }
+        return size;
+    }
+
+    /**
+     * Serializes the forecast: the time it was retrieved, the number of reads since then,
+     * a mask of the numeric fields present, their values,
+     * then the descriptive Strings and the unknown fields (as JSON), each preceded by its length (-1 if absent).
+     *
+     * @return bytes holding the forecast
+     */
+    byte[] encode() {
+        long mask = 0;
+        int present = 0;
+        for(int i=0; i<this.numbers.length; i++) {
+            if(!Double.isNaN(this.numbers[i])) {
+                mask |= 1L << i;
+                present++;
+            }
+        }
+        byte[] summaryBytes = bytesOf(this.summary);
+        byte[] iconBytes = bytesOf(this.icon);
+        byte[] precipTypeBytes = bytesOf(this.precipType);
+        byte[] extrasBytes = this.extras == null ? null : bytesOf(this.extras.toString());
+        ByteBuffer buffer = ByteBuffer.allocate(8 + 4 + 8 + 8 * present
+                + lengthOf(summaryBytes) + lengthOf(iconBytes) + lengthOf(precipTypeBytes) + lengthOf(extrasBytes));
+        buffer.putLong(this.fetchedAt);
+        buffer.putInt(this.reads);
+        buffer.putLong(mask);
+        for(double value: this.numbers) {
+            if(!Double.isNaN(value)) {
+                buffer.putDouble(value);
+            }
+        }
+        putBytes(buffer, summaryBytes);
+        putBytes(buffer, iconBytes);
+        putBytes(buffer, precipTypeBytes);
+        putBytes(buffer, extrasBytes);
+        return buffer.array();
+    }
+
+    /**
+     * Deserializes a forecast written by encode.
+     *
+     * @param buffer buffer holding the bytes of the forecast, from its position
+     * @return the forecast
+     */
+    static DailyForecast decode(ByteBuffer buffer) {
+        long fetchedAt = buffer.getLong();
+        int reads = buffer.getInt();
+        long mask = buffer.getLong();
+        double[] numbers = new double[NUMBERS.length];
+        for(int i=0; i<numbers.length; i++) {
+            numbers[i] = (mask & (1L << i)) != 0 ? buffer.getDouble() : Double.NaN;
+        }
+        String summary = share(getString(buffer));
+        String icon = share(getString(buffer));
+        String precipType = share(getString(buffer));
+        String extras = getString(buffer);
+        return new DailyForecast(numbers, summary, icon, precipType,
+                extras == null ? null : new JsonParser().parse(extras).getAsJsonObject(), fetchedAt, reads);
+    }
+
+    /**
+     * Internal auxiliary method used to add a numeric field to the JSON representation,
+     * written as an integer when it has no fractional part (times, bearings, indexes).
+     *
+     * @param day JSON object of the day
+     * @param index position of the field
+     */
+    private void addNumber(JsonObject day, int index) {
+        double value = this.numbers[index];
+        if(Double.isNaN(value)) {
+            return;
+        }
+        if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            day.addProperty(NUMBERS[index], (long) value);
+        } else {
+            day.addProperty(NUMBERS[index], value);
+        }
+    }
+
+    /**
+     * Internal auxiliary method used to write a numeric field of the JSON representation, as addNumber adds it.
+     *
+     * @param writer JSON writer of the day
+     * @param index position of the field
+     * @throws IOException if the field could not be written
+     */
+    private void writeNumber(JsonWriter writer, int index) throws IOException {
+        double value = this.numbers[index];
+        if(Double.isNaN(value)) {
+            return;
+        }
+        if(value == Math.rint(value) && Math.abs(value) < 1e15) {
+            writer.name(NUMBERS[index]).value((long) value);
+        } else {
+            writer.name(NUMBERS[index]).value(value);
+        }
+    }
+
+    /**
+     * Internal auxiliary method used to add a String (or its absence) to a hash.
+     *
+     * @param hash hash calculated so far
+     * @param s String to be added (may be null)
+     * @return the updated hash
+     */
+    private static long mix(long hash, String s) {
+        if(s == null) {
+            return (hash ^ -1L) * 0x100000001b3L;
+        }
+        hash = (hash ^ s.length()) * 0x100000001b3L;
+        for(int i=0; i<s.length(); i++) {
+            hash = (hash ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    /**
+     * Internal auxiliary method used to share equal Strings between forecasts.
+     *
+     * @param s String to be shared (may be null)
+     * @return the instance kept in the dictionary (or the given one if the dictionary is full)
+     */
+    private static String share(String s) {
+        if(s == null) {
+            return null;
+        }
+        String shared = DICTIONARY.get(s);
+        if(shared != null) {
+            return shared;
+        }
+        if(DICTIONARY.size() >= DICTIONARY_SIZE) {
+            return s;
+        }
+        shared = DICTIONARY.putIfAbsent(s, s);
+        return shared == null ? s : shared;
+    }
+
+    /**
+     * Internal auxiliary method used to encode a String.
+     *
+     * @param s String to be encoded
+     * @return UTF-8 bytes of the String, null if absent
+     */
+    private static byte[] bytesOf(String s) {
+        return s == null ? null : s.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Internal auxiliary method used to calculate the space taken by a length-prefixed array of bytes.
+     *
+     * @param bytes array of bytes (null if absent)
+     * @return number of bytes written by putBytes
+     */
+    private static int lengthOf(byte[] bytes) {
+        return 4 + (bytes == null ? 0 : bytes.length);
+    }
+
+    /**
+     * Internal auxiliary method used to write a length-prefixed array of bytes.
+     *
+     * @param buffer buffer where the bytes are written
+     * @param bytes array of bytes (null if absent)
+     */
+    private static void putBytes(ByteBuffer buffer, byte[] bytes) {
+        if(bytes == null) {
+            buffer.putInt(-1);
+        } else {
+            buffer.putInt(bytes.length);
+            buffer.put(bytes);
+        }
+    }
+
+    /**
+     * Internal auxiliary method used to read a String written by putBytes.
+     *
+     * @param buffer buffer from where the String is read
+     * @return the String, null if absent
+     */
+    private static String getString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if(length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Internal auxiliary method used to determine if a JSON value is a number.
+     *
+     * @param value JSON value
+     * @return True if the value is a JSON number
+     */
+    private static boolean isNumber(JsonElement value) {
+        return value.isJsonPrimitive() && value.getAsJsonPrimitive().isNumber();
+    }
+
+    /**
+     * Internal auxiliary method used to determine if a JSON value is a String.
+     *
+     * @param value JSON value
+     * @return True if the value is a JSON String
+     */
+    private static boolean isString(JsonElement value) {
+        return value.isJsonPrimitive() && value.getAsJsonPrimitive().isString();
+    }
+}
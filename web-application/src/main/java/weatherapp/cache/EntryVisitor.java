@@ -0,0 +1,22 @@
+package weatherapp.cache;
+
+/**
+ * Visitor of the entries of a cache, used to read its contents along with the time each entry has left to live
+ * (e.g. to write a snapshot of the cache).
+ *
+ * @author Filipe Pires
+ * @param <K> type of the keys
+ * @param <V> type of the values
+ */
+@FunctionalInterface
+public interface EntryVisitor<K,V> {
+
+    /**
+     * Visits an entry of the cache.
+     *
+     * @param key identifier of the entry
+     * @param value data stored in the entry
+     * @param timeToLive time (in milisseconds) left before the entry expires, Long.MAX_VALUE if it never expires
+     */
+    void visit(K key, V value, long timeToLive);
+}
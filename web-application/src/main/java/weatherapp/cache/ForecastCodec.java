@@ -0,0 +1,21 @@
+package weatherapp.cache;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Codec of the compact daily forecasts, used to keep them outside of the heap.
+ *
+ * @author Filipe Pires
+ */
+public class ForecastCodec implements Codec<DailyForecast> {
+
+    @Override
+    public byte[] encode(DailyForecast value) {
+        return value.encode();
+    }
+
+    @Override
+    public DailyForecast decode(ByteBuffer buffer) {
+        return DailyForecast.decode(buffer);
+    }
+}
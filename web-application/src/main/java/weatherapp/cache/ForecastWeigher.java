@@ -0,0 +1,21 @@
+package weatherapp.cache;
+
+/**
+ * Weigher estimating the heap footprint (in bytes) of cached daily forecasts,
+ * assuming a 64-bit JVM with compressed references.
+ *
+ * @author Filipe Pires
+ */
+public class ForecastWeigher implements Weigher<String, DailyForecast> {
+
+    /**
+     * Bytes taken by the map node, the cache object and its fields for every entry.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+
+    @Override
+    public int weigh(String key, DailyForecast value) {
+        long weight = ENTRY_OVERHEAD + (key == null ? 0 : 40 + 2L * key.length()) + (value == null ? 0 : value.sizeOf());
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+}
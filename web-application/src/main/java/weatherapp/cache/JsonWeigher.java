@@ -0,0 +1,99 @@
+package weatherapp.cache;
+
+import com.google.gson.*;
+import com.google.gson.internal.LazilyParsedNumber;
+import java.util.Map;
+
+/**
+ * Weigher estimating the heap footprint (in bytes) of cached Gson trees,
+ * assuming a 64-bit JVM with compressed references.
+ * 
+ * @author Filipe Pires
+ */
+public class JsonWeigher implements Weigher<String, JsonElement> {
+    
+    /**
+     * Bytes taken by the map node, the cache object and its fields for every entry.
+     */
+    private static final int ENTRY_OVERHEAD = 64;
+    
+    /**
+     * Bytes taken by a JsonObject and its LinkedTreeMap.
+     */
+    private static final int OBJECT_OVERHEAD = 64;
+    
+    /**
+     * Bytes taken by every member of a JsonObject (LinkedTreeMap node).
+     */
+    private static final int MEMBER_OVERHEAD = 40;
+    
+    /**
+     * Bytes taken by a JsonArray and its ArrayList.
+     */
+    private static final int ARRAY_OVERHEAD = 56;
+    
+    /**
+     * Bytes taken by a JsonPrimitive wrapper.
+     */
+    private static final int PRIMITIVE_OVERHEAD = 16;
+    
+    /**
+     * Bytes taken by a boxed number.
+     */
+    private static final int BOXED_NUMBER = 16;
+    
+    @Override
+    public int weigh(String key, JsonElement value) {
+        long weight = ENTRY_OVERHEAD + sizeOf(key) + sizeOf(value);
+        return (int) Math.min(weight, Integer.MAX_VALUE);
+    }
+    
+    /**
+     * Estimates the footprint of a JSON element and all of its children.
+     * 
+     * @param element JSON element to be measured
+     * @return estimated number of bytes
+     */
+    public static long sizeOf(JsonElement element) {
+        if (element == null || element.isJsonNull()) {
+            return 0;
+        }
+        if (element.isJsonObject()) {
+            long size = OBJECT_OVERHEAD;
+            for (Map.Entry<String, JsonElement> member: element.getAsJsonObject().entrySet()) {
+                size += MEMBER_OVERHEAD + sizeOf(member.getKey()) + sizeOf(member.getValue());
+            }
+            return size;
+        }
+        if (element.isJsonArray()) {
+            JsonArray array = element.getAsJsonArray();
+            long size = ARRAY_OVERHEAD + 4L * array.size();
+            for (JsonElement child: array) {
+                size += sizeOf(child);
+            }
+            return size;
+        }
+        JsonPrimitive primitive = element.getAsJsonPrimitive();
+        if (primitive.isString()) {
+            return PRIMITIVE_OVERHEAD + sizeOf(primitive.getAsString());
+        }
+        if (primitive.isNumber()) {
+            Number number = primitive.getAsNumber();
+            if (number instanceof LazilyParsedNumber) {
+                return PRIMITIVE_OVERHEAD + BOXED_NUMBER + sizeOf(number.toString());
+            }
+            return PRIMITIVE_OVERHEAD + BOXED_NUMBER;
+        }
+        return PRIMITIVE_OVERHEAD; // booleans are shared instances
+    }
+    
+    /**
+     * Estimates the footprint of a String (object plus its char array).
+     * 
+     * @param s String to be measured
+     * @return estimated number of bytes
+     */
+    private static long sizeOf(String s) {
+        return s == null ? 0 : 40 + 2L * s.length();
+    }
+}
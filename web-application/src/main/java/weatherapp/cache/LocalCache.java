@@ -1,247 +1,648 @@
 package weatherapp.cache;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BiConsumer;
 
 /**
- * Cache class to store in memory the latest results 
+ * Cache class to store in memory the latest results
  * of the calls done to the external API - DarkSky.
- * 
+ *
+ * Entries are kept in a concurrent map, so reads never block and writes only
+ * contend with writes to the same bin; the time of the last access is kept
+ * per entry in a volatile field instead of under a cache-wide lock.
+ *
+ * When a maximum weight is defined, the least recently used entries are evicted
+ * with the CLOCK (second-chance) approximation of LRU: reads only raise a flag on
+ * the entry, and the evicting thread gives flagged entries one more round in the queue.
+ *
+ * Expired entries are removed from an expiration queue, ordered by the time the entries
+ * were last accessed when they were queued (the lifetime is the same for every entry).
+ * The queue is processed by a scheduler shared by all caches, only while it has entries:
+ * expired heads are removed and heads accessed in the meantime are queued again,
+ * so every expiration costs amortized O(1) and an idle cache costs nothing.
+ *
+ * Entries leaving the cache through eviction or expiration (not the ones removed or replaced)
+ * can be handed to a listener, e.g. to keep them in a slower tier.
+ *
+ * The entries can be visited along with the time they have left to live, and inserted again
+ * with that time, so that the contents of the cache can survive a restart of the application.
+ *
  * @author Filipe Pires
  */
 public class LocalCache<K,V> {
-    
+
     // Attributes
-    
+
     /**
-     * Long object holding the lifetime (in seconds) of a cache entry.
+     * Scheduler shared by all caches, running their expiration tasks.
+     */
+    private static final ScheduledExecutorService EXPIRATION_SCHEDULER = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "local-cache-expiration");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * Long object holding the lifetime (in milisseconds) of a cache entry (non-positive if entries never expire).
      */
     private final long timeToLive;
     
+    /**
+     * Minimum space of time (in milisseconds) between expiration tasks.
+     */
+    private final long timerInterval;
+
     /**
      * Map object holding the actual data form the cache.
      */
-    private final Map<K,CacheObject> cache;
+    private final ConcurrentMap<K,CacheObject> cache;
+    
+    /**
+     * Maximum total weight of the entries in cache (non-positive if unbounded).
+     */
+    private final long maximumWeight;
+    
+    /**
+     * Weigher used to calculate the weight of every new entry.
+     */
+    private final Weigher<? super K, ? super V> weigher;
+    
+    /**
+     * Current total weight of the entries in cache.
+     */
+    private final AtomicLong weightedSize = new AtomicLong();
     
+    /**
+     * Number of entries evicted due to the maximum weight.
+     */
+    private final AtomicLong evictionCount = new AtomicLong();
+    
+    /**
+     * Number of lookups that found a (non-expired) entry.
+     */
+    private final LongAdder hitCount = new LongAdder();
+    
+    /**
+     * Number of lookups that did not find a (non-expired) entry.
+     */
+    private final LongAdder missCount = new LongAdder();
+    
+    /**
+     * Number of entries inserted (including replacements).
+     */
+    private final LongAdder putCount = new LongAdder();
+    
+    /**
+     * Queue holding the entries in the order they are visited by the eviction clock
+     * (only used when the cache is bounded).
+     */
+    private final Queue<CacheObject> evictionQueue = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * Number of queued entries that were already replaced or removed from cache.
+     */
+    private final AtomicInteger deadQueued = new AtomicInteger();
+    
+    /**
+     * Lock ensuring that only one thread at a time runs the eviction clock.
+     */
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    
+    /**
+     * Queue holding the entries by the order in which their time-to-live ends.
+     */
+    private final Queue<CacheObject> expirationQueue = new ConcurrentLinkedQueue<>();
+    
+    /**
+     * Flag telling whether an expiration task is already scheduled for this cache.
+     */
+    private final AtomicBoolean expirationScheduled = new AtomicBoolean();
+    
+    /**
+     * Lock ensuring that only one thread at a time processes the expiration queue.
+     */
+    private final ReentrantLock expirationLock = new ReentrantLock();
+    
+    /**
+     * Listener notified of the entries evicted or expired (does nothing by default).
+     */
+    private volatile BiConsumer<? super K, ? super V> evictionListener = (key, value) -> { };
+
     /**
      * Internal class used to abstract the datatype of the values stored in cache
      * and to keep track of the cached object's time-to-live.
      */
     protected class CacheObject {
+        /**
+         * Identifier of the cached object
+         */
+        private final K key;
         /**
          * Long variable holding the time in milisseconds of the last access made to the cached object
          */
-        private long lastAccessed;
+        private volatile long lastAccessed;
         /**
          * Actual data to be cached in memory
          */
-        private V value;
- 
+        private final V value;
+        /**
+         * Weight of the cached object, as given by the weigher
+         */
+        private final int weight;
         /**
-         * Default constructor accepting the data to be cached and calculating the last time accessed.
-         * 
+         * Flag raised on every access and cleared by the eviction clock
+         */
+        private volatile boolean referenced;
+        /**
+         * Last time accessed when the object was (re)inserted in the expiration queue
+         */
+        private long queuedAccess;
+
+        /**
+         * Default constructor accepting the data to be cached and the last time accessed.
+         *
+         * @param key identifier of the cached object
          * @param value actual data to be cached in memory
+         * @param weight weight of the cached object
+         * @param lastAccessed time in milisseconds of the last access made to the cached object
          */
-        protected CacheObject(V value) {
+        protected CacheObject(K key, V value, int weight, long lastAccessed) {
+            this.key = key;
             this.value = value;
-            lastAccessed = System.currentTimeMillis();
+            this.weight = weight;
+            this.lastAccessed = lastAccessed;
+        }
+
+        /**
+         * Registers an access to the cached object.
+         * The timestamp is only written when it changes, so that concurrent readers
+         * of the same entry do not keep invalidating each other's cache line.
+         *
+         * @param now current time in milisseconds
+         */
+        private void touch(long now) {
+            if (lastAccessed != now) {
+                lastAccessed = now;
+            }
+            if (!referenced) {
+                referenced = true;
+            }
         }
     }
-    
+
     // Constructors
 
     /**
-     * LocalCache default constructor, 
+     * LocalCache default constructor,
      * with time-to-life equal to 10 seconds and timer interval equal to 1 second.
      */
     public LocalCache() {
-        long chosenTimeToLive = 10;
-        final long timerInterval = 1;
-        
-        this.timeToLive = chosenTimeToLive * 1000;
-        cache = new HashMap();
-        
-        boolean running = true;
- 
-        if (timeToLive > 0 && timerInterval > 0) {
-            Thread t = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    while (running) {
-                        try {
-                            Thread.sleep(timerInterval * 1000);
-                        } catch (InterruptedException ex) { 
-                            Thread.currentThread().interrupt();
-                            System.exit(1);
-                        }
-                        clear(); // clears only those whose ttl has ended
-                        
-                    }
-                }
-            });
-            
-            t.setDaemon(true);
-            t.start();
-        }
+        this(10, 1);
     }
-    
+
     /**
      * LocalCache main constructor.
-     * 
+     *
      * @param timeToLive defined lifetime (in seconds) for every cache entry
-     * @param timerInterval defined space of time between cache life checks
+     * @param timerInterval defined minimum space of time between cache life checks
      */
     public LocalCache(long timeToLive, final long timerInterval) {
-        this.timeToLive = timeToLive * 1000;
-        cache = new HashMap();
-        
-        boolean running = true;
- 
-        if (timeToLive > 0 && timerInterval > 0) {
-            Thread t = new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    while (running) {
-                        try {
-                            Thread.sleep(timerInterval * 1000);
-                        } catch (InterruptedException ex) { 
-                            Thread.currentThread().interrupt();
-                            System.exit(1);
-                        }
-                        clear(); // clears only those whose ttl has ended
-                    }
-                }
-            });
-            
-            t.setDaemon(true);
-            t.start();
-        }
+        this(timeToLive, timerInterval, 0, (k, v) -> 1);
     }
     
-    // Methods
+    /**
+     * LocalCache constructor for a cache bounded by its number of entries.
+     * 
+     * @param timeToLive defined lifetime (in seconds) for every cache entry
+     * @param timerInterval defined minimum space of time between cache life checks
+     * @param maximumSize maximum number of entries in cache (non-positive if unbounded)
+     */
+    public LocalCache(long timeToLive, final long timerInterval, long maximumSize) {
+        this(timeToLive, timerInterval, maximumSize, (k, v) -> 1);
+    }
     
     /**
-     * Associates the specified value with the specified key in the LocalCache.
+     * LocalCache constructor for a cache bounded by the weight of its entries.
      * 
-     * @param key Identifier of the new element
+     * @param timeToLive defined lifetime (in seconds) for every cache entry
+     * @param timerInterval defined minimum space of time between cache life checks
+     * @param maximumWeight maximum total weight of the entries in cache (non-positive if unbounded)
+     * @param weigher calculates the weight of every new entry
+     */
+    public LocalCache(long timeToLive, final long timerInterval, long maximumWeight, Weigher<? super K, ? super V> weigher) {
+        this.timeToLive = (timeToLive > 0 && timerInterval > 0) ? timeToLive * 1000 : 0;
+        this.timerInterval = timerInterval * 1000;
+        this.maximumWeight = maximumWeight;
+        this.weigher = weigher;
+        cache = new ConcurrentHashMap<>();
+    }
+
+    // Methods
+
+    /**
+     * Associates the specified value with the specified key in the LocalCache.
+     *
+     * @param key Identifier of the new element (must not be null)
      * @param value Data to be stored in cache
      */
     public void put(K key, V value){
-        synchronized (cache) {
-            cache.put(key, new CacheObject(value));
+        insert(key, value, System.currentTimeMillis());
+    }
+
+    /**
+     * Associates the specified value with the specified key in the LocalCache,
+     * for no longer than the given time (e.g. the time it had left when it was written to a snapshot).
+     * As with every entry, each access renews its time-to-live.
+     * Entries should be inserted by increasing time left, so that the expiration queue stays ordered
+     * (otherwise they are only removed once the entries queued before them are, though never returned once expired).
+     *
+     * @param key Identifier of the new element (must not be null)
+     * @param value Data to be stored in cache
+     * @param timeToLive time (in milisseconds) left before the entry expires, if it is not accessed
+     */
+    public void put(K key, V value, long timeToLive){
+        long now = System.currentTimeMillis();
+        insert(key, value, expires() && timeToLive < this.timeToLive ? now - (this.timeToLive - timeToLive) : now);
+    }
+
+    /**
+     * Visits every entry of the LocalCache along with the time it has left to live, without updating its last access.
+     * As with getAll, the visit is weakly consistent and expired entries are skipped.
+     *
+     * @param visitor visitor of the entries
+     */
+    public void forEachEntry(EntryVisitor<? super K, ? super V> visitor){
+        long now = System.currentTimeMillis();
+        for (CacheObject c: cache.values()) {
+            if (!isExpired(c, now)) {
+                visitor.visit(c.key, c.value, expires() ? timeToLive + c.lastAccessed - now : Long.MAX_VALUE);
+            }
         }
     }
-    
+
+    /**
+     * Internal method used to insert an entry in the map and in the eviction and expiration queues.
+     *
+     * @param key Identifier of the new element (must not be null)
+     * @param value Data to be stored in cache
+     * @param lastAccessed time in milisseconds considered as the last access to the entry
+     */
+    private void insert(K key, V value, long lastAccessed){
+        CacheObject c = new CacheObject(key, value, isBounded() ? weigher.weigh(key, value) : 1, lastAccessed);
+        CacheObject previous = cache.put(key, c);
+        weightedSize.addAndGet(c.weight);
+        putCount.increment();
+        if (previous != null) {
+            discarded(previous);
+        }
+        if (isBounded()) {
+            evictionQueue.add(c);
+            evictIfNeeded();
+        }
+        if (expires()) {
+            c.queuedAccess = c.lastAccessed;
+            expirationQueue.add(c);
+            scheduleExpiration();
+        }
+    }
+
     /**
      * Gets an entry from the LocalCache.
-     * 
+     *
      * @param key ID of the desired cached element
      * @return Data stored in cache associated with the specified key
      */
     public V get(K key){
-        synchronized (cache) {
-            CacheObject c = cache.get(key);
-            if (c == null) {
-                return null;
-            } else {
-                c.lastAccessed = System.currentTimeMillis();
-                return c.value;
-            }
+        CacheObject c = cache.get(key);
+        long now = System.currentTimeMillis();
+        if (c == null || isExpired(c, now)) {
+            missCount.increment();
+            return null;
         }
+        hitCount.increment();
+        c.touch(now);
+        return c.value;
     }
-    
+
     /**
      * Gets an array of all entries from the LocalCache.
-     * 
+     * The array is a weakly consistent snapshot: entries added or removed
+     * while it is being built may or may not be part of it.
+     *
      * @param updateLastAccessed tells the method whether it should update the last time the object was accessed or not
-     * @return Array of JSON objects with the data stored in cache 
+     * @return Array of JSON objects with the data stored in cache
      */
+    @SuppressWarnings("unchecked")
     public V[] getAll(Boolean updateLastAccessed){
-        Set<K> keys = cache.keySet();
-        List<V> ca = new ArrayList<>();
-        Long access = System.currentTimeMillis();
-        synchronized (cache) {
-            if(cache.isEmpty()) {
-                return (V[]) ca.toArray();
+        List<V> ca = new ArrayList<>(cache.size());
+        long access = System.currentTimeMillis();
+        for (CacheObject c: cache.values()) {
+            if (isExpired(c, access)) {
+                continue;
             }
-            CacheObject c;
-            for(K k: keys) {
-                c = cache.get(k);
-                if (c != null) {
-                    c.lastAccessed = access;
-                    ca.add(c.value);
-                } else {
-                    // this should never happen
-                }
+            if (updateLastAccessed) {
+                c.touch(access);
             }
-            return (V[]) ca.toArray();
+            ca.add(c.value);
         }
+        return (V[]) ca.toArray();
     }
-    
+
+    /**
+     * Gets all entries from the LocalCache, along with their keys.
+     * The map is a weakly consistent snapshot, like the array returned by getAll.
+     *
+     * @param updateLastAccessed tells the method whether it should update the last time the object was accessed or not
+     * @return Map holding the data stored in cache, by key
+     */
+    public Map<K,V> getAllEntries(Boolean updateLastAccessed){
+        Map<K,V> ca = new LinkedHashMap<>();
+        long access = System.currentTimeMillis();
+        for (CacheObject c: cache.values()) {
+            if (isExpired(c, access)) {
+                continue;
+            }
+            if (updateLastAccessed) {
+                c.touch(access);
+            }
+            ca.put(c.key, c.value);
+        }
+        return ca;
+    }
+
+    /**
+     * Gets a page of the entries from the LocalCache: the first entries whose keys come after a given key, in a given order.
+     * Pages are selected in one pass over the cache, holding no more than the entries of the page,
+     * so that paging through a large cache needs no snapshot of it; as with getAll, they are weakly consistent,
+     * but an entry present during the whole paging is returned exactly once.
+     *
+     * @param after key of the last entry of the previous page (null for the first page)
+     * @param limit maximum number of entries in the page
+     * @param order total order of the keys
+     * @param updateLastAccessed tells the method whether it should update the last time the object was accessed or not
+     * @return Map holding the entries of the page, by key, in the given order
+     */
+    public Map<K,V> getPage(K after, int limit, Comparator<? super K> order, Boolean updateLastAccessed){
+        PriorityQueue<CacheObject> page = new PriorityQueue<>(Math.max(1, limit), (a, b) -> order.compare(b.key, a.key)); // last key on top
+        long access = System.currentTimeMillis();
+        for (CacheObject c: cache.values()) {
+            if ((after != null && order.compare(c.key, after) <= 0) || isExpired(c, access)) {
+                continue;
+            }
+            if (page.size() < limit) {
+                page.add(c);
+            } else if (limit > 0 && order.compare(c.key, page.peek().key) < 0) {
+                page.poll();
+                page.add(c);
+            }
+        }
+        List<CacheObject> sorted = new ArrayList<>(page);
+        sorted.sort((a, b) -> order.compare(a.key, b.key));
+        Map<K,V> ca = new LinkedHashMap<>();
+        for (CacheObject c: sorted) {
+            if (updateLastAccessed) {
+                c.touch(access);
+            }
+            ca.put(c.key, c.value);
+        }
+        return ca;
+    }
+
     /**
      * Removes an entry from the LocalCache.
-     * 
+     *
      * @param key ID of the element to be removed from the cache
      */
     public void remove(K key){
-        synchronized (cache) {
-            cache.remove(key);
+        CacheObject c = cache.remove(key);
+        if (c != null) {
+            discarded(c);
         }
     }
-    
+
     /**
      * Clears the contents of the LocalCache whose time-to-live has ended.
-     * 
+     * Only the head of the expiration queue is visited: entries accessed since they were
+     * queued go back to its tail and entries replaced in the meantime are skipped.
+     * If another thread is already clearing the cache, the method returns immediately.
      */
-    @SuppressWarnings("unchecked")
     public void clear(){
-        ArrayList<K> deleteKey = null;
-        long now = System.currentTimeMillis();
-        
-        synchronized (cache) {
-            Iterator it = cache.entrySet().iterator();
-            deleteKey = new ArrayList<>((cache.size() / 2) + 1);
-            K key;
+        if (!expirationLock.tryLock()) {
+            return;
+        }
+        try {
+            long now = System.currentTimeMillis();
             CacheObject c;
- 
-            while (it.hasNext()) {
-                Map.Entry pair = (Map.Entry)it.next();
-                key = (K) pair.getKey();
-                c = (CacheObject) pair.getValue();
-                if (c != null && (now > (timeToLive + c.lastAccessed))) {
-                    deleteKey.add(key);
+            while ((c = expirationQueue.peek()) != null && now > (timeToLive + c.queuedAccess)) {
+                expirationQueue.poll();
+                if (cache.get(c.key) != c) {
+                    continue; // already replaced or removed
+                }
+                if (isExpired(c, now)) {
+                    if (cache.remove(c.key, c)) {
+                        discarded(c);
+                        evictionListener.accept(c.key, c.value);
+                    }
+                } else {
+                    c.queuedAccess = c.lastAccessed;
+                    expirationQueue.add(c);
                 }
             }
-        }
- 
-        for (K key: deleteKey) {
-            synchronized (cache) {
-                cache.remove(key);
-            }
-            Thread.yield();
+        } finally {
+            expirationLock.unlock();
         }
     }
-    
+
+    /**
+     * Defines the listener notified of the entries that leave the cache through eviction or expiration,
+     * called by the thread that evicts or expires them.
+     *
+     * @param evictionListener listener receiving the key and value of every evicted or expired entry
+     */
+    public void setEvictionListener(BiConsumer<? super K, ? super V> evictionListener){
+        this.evictionListener = evictionListener;
+    }
+
     /**
      * Returns the size of the cache.
-     * 
+     *
      * @return integer value holding the number of entries in cache
      */
     public int size(){
-        synchronized (cache) {
-            return cache.size();
-        }
+        return cache.size();
     }
-    
+
     /**
      * Determines if the LocalCache contains an entry for the specified key.
-     * 
+     *
      * @param key ID of the desired cached element
      * @return True if the specified key is present in cache, False if not
      */
     public boolean containsKey(K key){
-        synchronized (cache) {
-            CacheObject c =  cache.get(key);
-            return c != null;
+        CacheObject c = cache.get(key);
+        return c != null && !isExpired(c, System.currentTimeMillis());
+    }
+    
+    /**
+     * Returns the total weight of the entries in cache 
+     * (equal to the size if the cache is not bounded by weight).
+     * 
+     * @return long value holding the weighted size of the cache
+     */
+    public long weightedSize(){
+        return weightedSize.get();
+    }
+    
+    /**
+     * Returns the number of entries evicted to respect the maximum weight.
+     * 
+     * @return long value holding the number of evictions
+     */
+    public long evictionCount(){
+        return evictionCount.get();
+    }
+    
+    /**
+     * Returns the number of lookups (get method) that found an entry.
+     * 
+     * @return long value holding the number of cache hits
+     */
+    public long hitCount(){
+        return hitCount.sum();
+    }
+    
+    /**
+     * Returns the number of lookups (get method) that did not find an entry.
+     * 
+     * @return long value holding the number of cache misses
+     */
+    public long missCount(){
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries inserted in the LocalCache, including the ones replacing others.
+     *
+     * @return long value holding the number of insertions
+     */
+    public long putCount(){
+        return putCount.sum();
+    }
+    
+    /**
+     * Determines if the entries of the cache have a time-to-live.
+     * 
+     * @return True if entries expire once their time-to-live has ended
+     */
+    private boolean expires(){
+        return timeToLive > 0;
+    }
+    
+    /**
+     * Determines if the time-to-live of an entry has ended.
+     * 
+     * @param c entry to be checked
+     * @param now current time in milisseconds
+     * @return True if the entry is expired (even if it was not yet removed)
+     */
+    private boolean isExpired(CacheObject c, long now){
+        return expires() && now > (timeToLive + c.lastAccessed);
+    }
+    
+    /**
+     * Schedules the next expiration task in the shared scheduler, unless one is already pending.
+     * The task runs when the head of the expiration queue is due (but not more often than the timer interval)
+     * and schedules the following one while the queue still has entries.
+     */
+    private void scheduleExpiration(){
+        CacheObject head = expirationQueue.peek();
+        if (head == null || !expirationScheduled.compareAndSet(false, true)) {
+            return;
+        }
+        long delay = Math.max(head.queuedAccess + timeToLive + 1 - System.currentTimeMillis(), timerInterval);
+        EXPIRATION_SCHEDULER.schedule(() -> {
+            try {
+                clear();
+            } finally {
+                expirationScheduled.set(false);
+                if (!expirationQueue.isEmpty()) {
+                    scheduleExpiration();
+                }
+            }
+        }, delay, TimeUnit.MILLISECONDS);
+    }
+    
+    /**
+     * Determines if the cache has a maximum weight.
+     * 
+     * @return True if entries are evicted once the maximum weight is exceeded
+     */
+    private boolean isBounded(){
+        return maximumWeight > 0;
+    }
+    
+    /**
+     * Updates the bookkeeping of an entry that left the map (replaced, removed or expired).
+     * 
+     * @param c entry no longer present in the map
+     */
+    private void discarded(CacheObject c){
+        weightedSize.addAndGet(-c.weight);
+        if (isBounded() && deadQueued.incrementAndGet() > cache.size()) {
+            purgeEvictionQueue();
+        }
+    }
+    
+    /**
+     * Drops from the eviction queue the entries no longer present in the map,
+     * keeping its length proportional to the size of the cache.
+     */
+    private void purgeEvictionQueue(){
+        if (evictionLock.tryLock()) {
+            try {
+                deadQueued.set(0);
+                evictionQueue.removeIf(c -> cache.get(c.key) != c);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+    }
+    
+    /**
+     * Runs the eviction clock until the total weight respects the maximum weight.
+     * Entries accessed since the last visit of the clock are given a second chance.
+     * If another thread is already evicting, it will also handle this thread's insertion.
+     */
+    private void evictIfNeeded(){
+        while (weightedSize.get() > maximumWeight && evictionLock.tryLock()) {
+            try {
+                CacheObject c;
+                while (weightedSize.get() > maximumWeight && (c = evictionQueue.poll()) != null) {
+                    if (cache.get(c.key) != c) {
+                        deadQueued.decrementAndGet(); // already replaced or removed
+                    } else if (c.referenced) {
+                        c.referenced = false;
+                        evictionQueue.add(c);
+                    } else if (cache.remove(c.key, c)) {
+                        weightedSize.addAndGet(-c.weight);
+                        evictionCount.incrementAndGet();
+                        evictionListener.accept(c.key, c.value);
+                    }
+                }
+            } finally {
+                evictionLock.unlock();
+            }
         }
     }
 }
@@ -0,0 +1,105 @@
+package weatherapp.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * Meter binder publishing the statistics of a LocalCache with the common cache meters
+ * (cache.size, cache.gets by result, cache.puts and cache.evictions, tagged with the name of the cache),
+ * plus its estimated heap footprint (cache.weight).
+ *
+ * The meters read the counters the cache already keeps, so that binding them costs nothing on its hot path.
+ *
+ * @author Filipe Pires
+ */
+public class LocalCacheMetrics extends CacheMeterBinder {
+
+    // Attributes
+
+    /**
+     * Cache whose statistics are published.
+     */
+    private final LocalCache<?, ?> cache;
+
+    // Constructors
+
+    /**
+     * LocalCacheMetrics main constructor.
+     *
+     * @param cache cache whose statistics are published
+     * @param cacheName name of the cache, used as the value of the "cache" tag
+     * @param tags additional tags of the meters
+     */
+    public LocalCacheMetrics(LocalCache<?, ?> cache, String cacheName, Iterable<Tag> tags) {
+        super(cache, cacheName, tags);
+        this.cache = cache;
+    }
+
+    // Methods
+
+    /**
+     * Returns the number of entries in cache.
+     *
+     * @return long value holding the number of entries
+     */
+    @Override
+    protected Long size() {
+        return (long) this.cache.size();
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return long value holding the number of hits
+     */
+    @Override
+    protected long hitCount() {
+        return this.cache.hitCount();
+    }
+
+    /**
+     * Returns the number of lookups that did not find an entry.
+     *
+     * @return long value holding the number of misses
+     */
+    @Override
+    protected Long missCount() {
+        return this.cache.missCount();
+    }
+
+    /**
+     * Returns the number of entries dropped to make room for new ones.
+     *
+     * @return long value holding the number of evictions
+     */
+    @Override
+    protected Long evictionCount() {
+        return this.cache.evictionCount();
+    }
+
+    /**
+     * Returns the number of entries inserted, including the ones replacing others.
+     *
+     * @return long value holding the number of insertions
+     */
+    @Override
+    protected long putCount() {
+        return this.cache.putCount();
+    }
+
+    /**
+     * Registers the meters specific to LocalCache: the estimated heap footprint of the cache.
+     *
+     * @param registry registry of the meters
+     */
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        Gauge.builder("cache.weight", this.cache, LocalCache::weightedSize)
+                .tags(getTagsWithCacheName())
+                .description("The estimated heap footprint of the entries in cache")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
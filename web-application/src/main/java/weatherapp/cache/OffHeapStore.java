@@ -0,0 +1,609 @@
+package weatherapp.cache;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Second tier of the cache, keeping serialized values outside of the heap
+ * (in direct memory or in a memory-mapped file), so that its size does not weigh on the garbage collector.
+ *
+ * Values are appended to fixed-size segments used as a ring: once every segment is full,
+ * the oldest segment is recycled and the entries still written in it are dropped (first-in, first-out).
+ * Replaced and removed entries stay in their segment until it is recycled.
+ *
+ * The index is an open-addressing table of primitive arrays, holding a 64-bit hash of each key
+ * and the address of its record; the key itself is kept in the record and compared on every lookup.
+ *
+ * A store with no capacity is disabled: it keeps nothing and finds nothing.
+ *
+ * The entries can be visited along with the time they have left to live, and inserted again with that time,
+ * so that the contents of the store can survive a restart of the application.
+ *
+ * @author Filipe Pires
+ * @param <V> type of the values
+ */
+public class OffHeapStore<V> implements Closeable {
+
+    // Attributes
+
+    /**
+     * Bytes of the header of every record: length of the record, expiration time and length of the key.
+     */
+    private static final int HEADER = 4 + 8 + 4;
+
+    /**
+     * Initial number of slots of the index (a power of 2).
+     */
+    private static final int INITIAL_SLOTS = 1024;
+
+    /**
+     * Codec used to serialize the values.
+     */
+    private final Codec<V> codec;
+
+    /**
+     * Lifetime (in milisseconds) of every entry (non-positive if entries never expire).
+     */
+    private final long timeToLive;
+
+    /**
+     * Segments where the records are written.
+     */
+    private final ByteBuffer[] segments;
+
+    /**
+     * Size (in bytes) of every segment.
+     */
+    private final int segmentSize;
+
+    /**
+     * Number of bytes written in every segment.
+     */
+    private final int[] limits;
+
+    /**
+     * Channel of the memory-mapped file (null if the segments are in direct memory).
+     */
+    private final FileChannel channel;
+
+    /**
+     * Segment currently being written.
+     */
+    private int current;
+
+    /**
+     * Hashes of the keys, by slot of the index.
+     */
+    private long[] hashes = new long[INITIAL_SLOTS];
+
+    /**
+     * Addresses of the records (segment in the high 32 bits, offset in the low ones) plus one, by slot of the index;
+     * 0 marks an empty slot.
+     */
+    private long[] addresses = new long[INITIAL_SLOTS];
+
+    /**
+     * Number of entries in the index.
+     */
+    private int count;
+
+    /**
+     * Lock protecting the index and the segments: lookups share it, insertions and removals are exclusive.
+     */
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * Number of lookups that found a (non-expired) entry.
+     */
+    private final LongAdder hitCount = new LongAdder();
+
+    /**
+     * Number of lookups that did not find a (non-expired) entry.
+     */
+    private final LongAdder missCount = new LongAdder();
+
+    /**
+     * Number of entries dropped when their segment was recycled.
+     */
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * Number of entries written (including replacements).
+     */
+    private final LongAdder putCount = new LongAdder();
+
+    // Constructors
+
+    /**
+     * OffHeapStore constructor keeping the values in direct memory.
+     *
+     * @param codec codec used to serialize the values
+     * @param capacity maximum number of bytes used by the store (non-positive to disable it)
+     * @param segmentSize size (in bytes) of every segment, the maximum size of a record
+     * @param timeToLive lifetime (in seconds) of every entry (non-positive if entries never expire)
+     */
+    public OffHeapStore(Codec<V> codec, long capacity, int segmentSize, long timeToLive) {
+        this.codec = codec;
+        this.timeToLive = timeToLive * 1000;
+        this.segmentSize = (int) Math.max(0, Math.min(segmentSize, capacity));
+        this.segments = new ByteBuffer[this.segmentSize > 0 ? (int) (capacity / this.segmentSize) : 0];
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = ByteBuffer.allocateDirect(this.segmentSize);
+        }
+        this.limits = new int[this.segments.length];
+        this.channel = null;
+    }
+
+    /**
+     * OffHeapStore constructor keeping the values in a memory-mapped file,
+     * used as scratch space (its contents are not reloaded when the store is created).
+     *
+     * @param codec codec used to serialize the values
+     * @param capacity maximum number of bytes used by the store (non-positive to disable it)
+     * @param segmentSize size (in bytes) of every segment, the maximum size of a record
+     * @param timeToLive lifetime (in seconds) of every entry (non-positive if entries never expire)
+     * @param file path of the file to be mapped (created if it does not exist)
+     * @throws IOException if the file could not be mapped
+     */
+    public OffHeapStore(Codec<V> codec, long capacity, int segmentSize, long timeToLive, String file) throws IOException {
+        this.codec = codec;
+        this.timeToLive = timeToLive * 1000;
+        this.segmentSize = (int) Math.max(0, Math.min(segmentSize, capacity));
+        this.segments = new ByteBuffer[this.segmentSize > 0 ? (int) (capacity / this.segmentSize) : 0];
+        this.channel = FileChannel.open(Paths.get(file), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        for (int i = 0; i < this.segments.length; i++) {
+            this.segments[i] = this.channel.map(FileChannel.MapMode.READ_WRITE, (long) i * this.segmentSize, this.segmentSize);
+        }
+        this.limits = new int[this.segments.length];
+    }
+
+    // Methods
+
+    /**
+     * Associates the specified value with the specified key in the store, replacing any previous value.
+     * Values whose record does not fit in a segment are not stored.
+     *
+     * @param key identifier of the value
+     * @param value value to be stored
+     */
+    public void put(String key, V value) {
+        put(key, value, timeToLive > 0 ? timeToLive : Long.MAX_VALUE);
+    }
+
+    /**
+     * Associates the specified value with the specified key in the store, for no longer than the given time
+     * (e.g. the time it had left when it was written to a snapshot) nor than the lifetime of the store.
+     *
+     * @param key identifier of the value
+     * @param value value to be stored
+     * @param timeToLive time (in milisseconds) left before the entry expires, Long.MAX_VALUE if it never expires
+     */
+    public void put(String key, V value, long timeToLive) {
+        if (!isEnabled() || timeToLive <= 0) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = codec.encode(value);
+        int length = HEADER + keyBytes.length + valueBytes.length;
+        if (length > segmentSize) {
+            return;
+        }
+        if (this.timeToLive > 0) {
+            timeToLive = Math.min(timeToLive, this.timeToLive);
+        }
+        long now = System.currentTimeMillis();
+        long expiration = timeToLive < Long.MAX_VALUE - now ? now + timeToLive : Long.MAX_VALUE;
+        lock.writeLock().lock();
+        try {
+            if (limits[current] + length > segmentSize) {
+                current = (current + 1) % segments.length;
+                recycle(current);
+            }
+            int offset = limits[current];
+            ByteBuffer record = segments[current].duplicate();
+            record.position(offset);
+            record.putInt(length).putLong(expiration).putInt(keyBytes.length).put(keyBytes).put(valueBytes);
+            limits[current] = offset + length;
+            index(hash(keyBytes), ((long) current << 32) | offset);
+        } finally {
+            lock.writeLock().unlock();
+        }
+        putCount.increment();
+    }
+
+    /**
+     * Gets a value from the store.
+     *
+     * @param key identifier of the value
+     * @return the value associated with the key, null if absent or expired
+     */
+    public V get(String key) {
+        if (!isEnabled()) {
+            return null;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        long expired = -1; // address of the expired record found, if any
+        lock.readLock().lock();
+        try {
+            int slot = find(hash);
+            if (slot >= 0) {
+                ByteBuffer record = read(addresses[slot] - 1);
+                if (hasKey(record, keyBytes)) {
+                    if (record.getLong(record.position() + 4) < System.currentTimeMillis()) {
+                        expired = addresses[slot] - 1;
+                    } else {
+                        int start = record.position();
+                        record.limit(start + record.getInt(start));
+                        record.position(start + HEADER + keyBytes.length);
+                        hitCount.increment();
+                        return codec.decode(record.slice());
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        if (expired >= 0) {
+            removeExpired(hash, expired);
+        }
+        missCount.increment();
+        return null;
+    }
+
+    /**
+     * Removes a value from the store.
+     *
+     * @param key identifier of the value to be removed
+     */
+    public void remove(String key) {
+        if (!isEnabled()) {
+            return;
+        }
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        lock.writeLock().lock();
+        try {
+            int slot = find(hash(keyBytes));
+            if (slot >= 0 && hasKey(read(addresses[slot] - 1), keyBytes)) {
+                delete(slot);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Visits every (non-expired) entry of the store along with the time it has left to live,
+     * from the oldest to the most recently written one.
+     * The live records of each segment are copied under the read lock, one segment at a time,
+     * and decoded and visited once the lock is released, so a slow visitor (e.g. writing to a file)
+     * does not hold back insertions and removals; entries written during the visit may or may not be visited.
+     *
+     * @param visitor visitor of the entries
+     */
+    public void forEachEntry(EntryVisitor<? super String, ? super V> visitor) {
+        if (!isEnabled()) {
+            return;
+        }
+        int first;
+        lock.readLock().lock();
+        try {
+            first = current + 1;
+        } finally {
+            lock.readLock().unlock();
+        }
+        for (int i = 0; i < segments.length; i++) {
+            int segment = (first + i) % segments.length;
+            long now = System.currentTimeMillis();
+            ByteBuffer copy = copyLiveRecords(segment, now);
+            while (copy.hasRemaining()) {
+                int length = copy.getInt();
+                long expiration = copy.getLong();
+                byte[] keyBytes = new byte[copy.getInt()];
+                copy.get(keyBytes);
+                ByteBuffer value = copy.slice();
+                value.limit(length - HEADER - keyBytes.length);
+                copy.position(copy.position() + value.limit());
+                visitor.visit(new String(keyBytes, StandardCharsets.UTF_8), codec.decode(value),
+                        expiration == Long.MAX_VALUE ? Long.MAX_VALUE : expiration - now);
+            }
+        }
+    }
+
+    /**
+     * Determines if the store has any capacity.
+     *
+     * @return True if values are stored, False if the store is disabled
+     */
+    public boolean isEnabled() {
+        return segments.length > 0;
+    }
+
+    /**
+     * Returns the number of entries in the store (including expired ones not yet found or recycled).
+     *
+     * @return integer value holding the number of entries
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return count;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Returns the number of bytes available to the store.
+     *
+     * @return long value holding the capacity of the store
+     */
+    public long capacity() {
+        return (long) segments.length * segmentSize;
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return long value holding the number of hits
+     */
+    public long hitCount() {
+        return hitCount.sum();
+    }
+
+    /**
+     * Returns the number of lookups that did not find an entry.
+     *
+     * @return long value holding the number of misses
+     */
+    public long missCount() {
+        return missCount.sum();
+    }
+
+    /**
+     * Returns the number of entries dropped to make room for new ones.
+     *
+     * @return long value holding the number of evictions
+     */
+    public long evictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * Returns the number of entries written to the store, including the ones replacing others.
+     *
+     * @return long value holding the number of insertions
+     */
+    public long putCount() {
+        return putCount.sum();
+    }
+
+    /**
+     * Releases the memory-mapped file (the direct memory is released by the garbage collector).
+     *
+     * @throws IOException if the file could not be closed
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Internal method used to copy the records of a segment still indexed and not expired, under the read lock.
+     *
+     * @param segment segment to be copied
+     * @param now current time in milisseconds
+     * @return buffer holding the copied records, one after the other
+     */
+    private ByteBuffer copyLiveRecords(int segment, long now) {
+        lock.readLock().lock();
+        try {
+            ByteBuffer records = segments[segment].duplicate();
+            ByteBuffer copy = ByteBuffer.allocate(limits[segment]);
+            int offset = 0;
+            while (offset < limits[segment]) {
+                int length = records.getInt(offset);
+                long expiration = records.getLong(offset + 4);
+                byte[] keyBytes = new byte[records.getInt(offset + 12)];
+                records.limit(offset + length).position(offset + HEADER);
+                records.get(keyBytes);
+                int slot = find(hash(keyBytes));
+                if (expiration >= now && slot >= 0 && addresses[slot] - 1 == (((long) segment << 32) | offset)) {
+                    records.position(offset);
+                    copy.put(records);
+                }
+                records.clear();
+                offset += length;
+            }
+            copy.flip();
+            return copy;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Internal method used to remove an entry found expired under the read lock,
+     * only if its key still points at the same record and that record is still expired
+     * (the key may have been written again since the read lock was released).
+     *
+     * @param hash hash of the key
+     * @param address address of the expired record
+     */
+    private void removeExpired(long hash, long address) {
+        lock.writeLock().lock();
+        try {
+            int slot = find(hash);
+            if (slot >= 0 && addresses[slot] - 1 == address) {
+                ByteBuffer record = read(address);
+                if (record.getLong(record.position() + 4) < System.currentTimeMillis()) {
+                    delete(slot);
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Internal method used to drop every entry still written in a segment, before it is written again.
+     *
+     * @param segment segment to be recycled
+     */
+    private void recycle(int segment) {
+        ByteBuffer records = segments[segment].duplicate();
+        int offset = 0;
+        while (offset < limits[segment]) {
+            int length = records.getInt(offset);
+            byte[] keyBytes = new byte[records.getInt(offset + 12)];
+            records.position(offset + HEADER);
+            records.get(keyBytes);
+            int slot = find(hash(keyBytes));
+            if (slot >= 0 && addresses[slot] - 1 == (((long) segment << 32) | offset)) {
+                delete(slot);
+                evictionCount.increment();
+            }
+            offset += length;
+        }
+        limits[segment] = 0;
+    }
+
+    /**
+     * Internal method used to get a view of a record.
+     *
+     * @param address address of the record
+     * @return buffer positioned at the start of the record
+     */
+    private ByteBuffer read(long address) {
+        ByteBuffer record = segments[(int) (address >>> 32)].duplicate();
+        record.position((int) address);
+        return record;
+    }
+
+    /**
+     * Internal method used to compare the key of a record with a given key.
+     *
+     * @param record buffer positioned at the start of the record
+     * @param keyBytes bytes of the key
+     * @return True if the record belongs to the given key
+     */
+    private boolean hasKey(ByteBuffer record, byte[] keyBytes) {
+        int start = record.position();
+        if (record.getInt(start + 12) != keyBytes.length) {
+            return false;
+        }
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (record.get(start + HEADER + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Internal method used to find the slot of the index holding a hash.
+     *
+     * @param hash hash of the key
+     * @return position of the slot, -1 if the hash is not in the index
+     */
+    private int find(long hash) {
+        int mask = addresses.length - 1;
+        for (int slot = home(hash, mask); addresses[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Internal method used to insert (or replace) the address of a record in the index,
+     * growing the index when it is more than half full.
+     *
+     * @param hash hash of the key
+     * @param address address of the record
+     */
+    private void index(long hash, long address) {
+        if (2 * (count + 1) > addresses.length) {
+            long[] oldHashes = hashes;
+            long[] oldAddresses = addresses;
+            hashes = new long[oldHashes.length * 2];
+            addresses = new long[oldAddresses.length * 2];
+            count = 0;
+            for (int i = 0; i < oldAddresses.length; i++) {
+                if (oldAddresses[i] != 0) {
+                    index(oldHashes[i], oldAddresses[i] - 1);
+                }
+            }
+        }
+        int mask = addresses.length - 1;
+        int slot = home(hash, mask);
+        while (addresses[slot] != 0 && hashes[slot] != hash) {
+            slot = (slot + 1) & mask;
+        }
+        if (addresses[slot] == 0) {
+            count++;
+        }
+        hashes[slot] = hash;
+        addresses[slot] = address + 1;
+    }
+
+    /**
+     * Internal method used to empty a slot of the index,
+     * shifting back the following entries of the probe sequence so that no tombstones are needed.
+     *
+     * @param slot position of the slot
+     */
+    private void delete(int slot) {
+        int mask = addresses.length - 1;
+        int hole = slot;
+        for (int next = (hole + 1) & mask; addresses[next] != 0; next = (next + 1) & mask) {
+            int home = home(hashes[next], mask);
+            boolean reachable = hole <= next ? (hole < home && home <= next) : (hole < home || home <= next);
+            if (!reachable) { // the entry can be moved to the hole without breaking its probe sequence
+                hashes[hole] = hashes[next];
+                addresses[hole] = addresses[next];
+                hole = next;
+            }
+        }
+        addresses[hole] = 0;
+        count--;
+    }
+
+    /**
+     * Internal method used to calculate the first slot of the probe sequence of a hash.
+     *
+     * @param hash hash of the key
+     * @param mask number of slots of the index minus one
+     * @return position of the first slot
+     */
+    private static int home(long hash, int mask) {
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    /**
+     * Internal method used to calculate the 64-bit hash of a key (FNV-1a, with a final mix of the bits).
+     *
+     * @param keyBytes bytes of the key
+     * @return hash of the key
+     */
+    private static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b: keyBytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        return hash ^ (hash >>> 33);
+    }
+}
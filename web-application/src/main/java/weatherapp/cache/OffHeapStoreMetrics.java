@@ -0,0 +1,103 @@
+package weatherapp.cache;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tag;
+import io.micrometer.core.instrument.binder.cache.CacheMeterBinder;
+
+/**
+ * Meter binder publishing the statistics of an OffHeapStore with the common cache meters
+ * (cache.size, cache.gets by result, cache.puts and cache.evictions, tagged with the name of the store),
+ * plus the number of bytes available to it (cache.capacity).
+ *
+ * @author Filipe Pires
+ */
+public class OffHeapStoreMetrics extends CacheMeterBinder {
+
+    // Attributes
+
+    /**
+     * Store whose statistics are published.
+     */
+    private final OffHeapStore<?> store;
+
+    // Constructors
+
+    /**
+     * OffHeapStoreMetrics main constructor.
+     *
+     * @param store store whose statistics are published
+     * @param cacheName name of the store, used as the value of the "cache" tag
+     * @param tags additional tags of the meters
+     */
+    public OffHeapStoreMetrics(OffHeapStore<?> store, String cacheName, Iterable<Tag> tags) {
+        super(store, cacheName, tags);
+        this.store = store;
+    }
+
+    // Methods
+
+    /**
+     * Returns the number of entries in the store.
+     *
+     * @return long value holding the number of entries
+     */
+    @Override
+    protected Long size() {
+        return (long) this.store.size();
+    }
+
+    /**
+     * Returns the number of lookups that found an entry.
+     *
+     * @return long value holding the number of hits
+     */
+    @Override
+    protected long hitCount() {
+        return this.store.hitCount();
+    }
+
+    /**
+     * Returns the number of lookups that did not find an entry.
+     *
+     * @return long value holding the number of misses
+     */
+    @Override
+    protected Long missCount() {
+        return this.store.missCount();
+    }
+
+    /**
+     * Returns the number of entries dropped to make room for new ones.
+     *
+     * @return long value holding the number of evictions
+     */
+    @Override
+    protected Long evictionCount() {
+        return this.store.evictionCount();
+    }
+
+    /**
+     * Returns the number of entries inserted, including the ones replacing others.
+     *
+     * @return long value holding the number of insertions
+     */
+    @Override
+    protected long putCount() {
+        return this.store.putCount();
+    }
+
+    /**
+     * Registers the meters specific to OffHeapStore: the capacity of the store.
+     *
+     * @param registry registry of the meters
+     */
+    @Override
+    protected void bindImplementationSpecificMetrics(MeterRegistry registry) {
+        Gauge.builder("cache.capacity", this.store, OffHeapStore::capacity)
+                .tags(getTagsWithCacheName())
+                .description("The number of bytes available to the store")
+                .baseUnit("bytes")
+                .register(registry);
+    }
+}
@@ -0,0 +1,19 @@
+package weatherapp.cache;
+
+/**
+ * Calculates the weight of a LocalCache entry, 
+ * used to bound the cache by the memory its entries take instead of by their number.
+ * 
+ * @author Filipe Pires
+ */
+public interface Weigher<K,V> {
+    
+    /**
+     * Returns the weight of an entry; it is computed once, when the entry is stored.
+     * 
+     * @param key identifier of the entry
+     * @param value data associated with the key
+     * @return non-negative weight of the entry
+     */
+    int weigh(K key, V value);
+}
@@ -0,0 +1,147 @@
+package weatherapp.controllers;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bulkhead: bounds the number of requests of one type being served at the same time,
+ * so that a burst of expensive requests cannot take every worker thread from the cheap ones.
+ *
+ * A request beyond the limit waits for a permit for a bounded time, only while the number of requests waiting
+ * is below its own limit; otherwise (or once the wait is over) it is rejected at once, instead of queuing
+ * behind the requests already holding the threads.
+ *
+ * @author Filipe Pires
+ */
+public class Bulkhead {
+
+    // Attributes
+
+    /**
+     * Name of the type of requests isolated (e.g. 'period').
+     */
+    private final String name;
+
+    /**
+     * Permits of the requests being served (null if the bulkhead is disabled).
+     */
+    private final Semaphore permits;
+
+    /**
+     * Maximum number of requests waiting for a permit.
+     */
+    private final int maxWaiting;
+
+    /**
+     * Maximum time (in milisseconds) a request waits for a permit.
+     */
+    private final long maxWait;
+
+    /**
+     * Number of requests waiting for a permit.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Number of requests rejected.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    // Constructors
+
+    /**
+     * Bulkhead main constructor.
+     *
+     * @param name name of the type of requests isolated
+     * @param maxConcurrent maximum number of requests served at the same time, non-positive to disable the bulkhead
+     * @param maxWaiting maximum number of requests waiting for a permit, non-positive to never wait
+     * @param maxWait maximum time (in milisseconds) a request waits for a permit, non-positive to never wait
+     */
+    public Bulkhead(String name, int maxConcurrent, int maxWaiting, long maxWait) {
+        this.name = name;
+        this.permits = maxConcurrent > 0 ? new Semaphore(maxConcurrent) : null;
+        this.maxWaiting = maxWait > 0 ? Math.max(0, maxWaiting) : 0;
+        this.maxWait = maxWait;
+    }
+
+    // Methods
+
+    /**
+     * Takes a permit to serve a request, waiting for one within the limits of the bulkhead.
+     * Every permit taken must be given back with release.
+     *
+     * @return True if the request may be served, False if it is rejected
+     */
+    public boolean tryAcquire() {
+        if(this.permits == null || this.permits.tryAcquire()) {
+            return true;
+        }
+        if(this.waiting.incrementAndGet() <= this.maxWaiting) {
+            try {
+                if(this.permits.tryAcquire(this.maxWait, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            } finally {
+                this.waiting.decrementAndGet();
+            }
+        } else {
+            this.waiting.decrementAndGet();
+        }
+        this.rejected.increment();
+        return false;
+    }
+
+    /**
+     * Gives back the permit taken to serve a request.
+     */
+    public void release() {
+        if(this.permits != null) {
+            this.permits.release();
+        }
+    }
+
+    /**
+     * Determines if the requests are bounded.
+     *
+     * @return True if the bulkhead limits the requests served at the same time
+     */
+    public boolean isEnabled() {
+        return this.permits != null;
+    }
+
+    /**
+     * Getter method for the name of the type of requests isolated.
+     * @return name of the type of requests
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Getter method for the number of free permits.
+     * @return number of requests that may still be served at once (0 if the bulkhead is disabled)
+     */
+    public int getAvailable() {
+        return this.permits != null ? this.permits.availablePermits() : 0;
+    }
+
+    /**
+     * Getter method for the number of requests waiting.
+     * @return number of requests waiting for a permit
+     */
+    public int getWaiting() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Getter method for the number of rejected requests.
+     * @return number of requests rejected since the start
+     */
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+}
@@ -0,0 +1,27 @@
+package weatherapp.controllers;
+
+/**
+ * Exception thrown when a request is rejected by the bulkhead of its type.
+ *
+ * @author Filipe Pires
+ */
+public class BulkheadFullException extends RuntimeException {
+
+    // Attributes
+
+    /**
+     * Version of the serialized form of the exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    // Constructors
+
+    /**
+     * BulkheadFullException main constructor.
+     *
+     * @param name name of the type of the rejected request
+     */
+    public BulkheadFullException(String name) {
+        super("Too many " + name + " requests");
+    }
+}
@@ -1,18 +1,55 @@
 package weatherapp.controllers;
 
+import weatherapp.cache.DailyForecast;
+import weatherapp.cache.LocalCache;
+import weatherapp.services.ForecastResponse;
+import weatherapp.services.UpstreamUnavailableException;
 import weatherapp.services.WeatherService;
 
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import com.google.gson.JsonPrimitive;
+import com.google.gson.stream.JsonWriter;
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.text.ParseException;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.zip.GZIPOutputStream;
+import javax.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import reactor.core.publisher.Mono;
 
 /**
  * Paths related to the API weather requests.
  * 
+ * Forecast responses are written from the compact days kept in cache and carry a strong entity tag:
+ * requests whose If-None-Match holds the current tag get an empty 304 (Not Modified) response,
+ * and clients accepting gzip get the compressed body, kept by entity tag so that it is compressed only once.
+ * The cache is written to its response as it is read, entirely or by pages.
+ * Batch requests get the responses of all their locations in a single body, retrieved concurrently by the weather service.
+ * Each type of request (now, recent, period and the cache) is served within its own Bulkhead, batches within the one of their type,
+ * so that slow requests of one type cannot take the threads serving the others; requests beyond it get a 503 (Service Unavailable).
+ * The reactive paths are not bounded, as they do not hold a thread while waiting for the external API.
+ * 
  * @author Filipe Pires
  */
 @RestController
@@ -29,13 +66,84 @@ public class WeatherController {
     @Autowired
     private WeatherService weatherService;
     
+    /**
+     * Bound of the requests for today's prediction (unbounded if not configured).
+     */
+    @Autowired(required = false)
+    @Qualifier("nowBulkhead")
+    private Bulkhead nowBulkhead = new Bulkhead("now", 0, 0, 0);
+    
+    /**
+     * Bound of the requests for the predictions of the upcoming days (unbounded if not configured).
+     */
+    @Autowired(required = false)
+    @Qualifier("recentBulkhead")
+    private Bulkhead recentBulkhead = new Bulkhead("recent", 0, 0, 0);
+    
+    /**
+     * Bound of the requests for the predictions of a period (unbounded if not configured).
+     */
+    @Autowired(required = false)
+    @Qualifier("periodBulkhead")
+    private Bulkhead periodBulkhead = new Bulkhead("period", 0, 0, 0);
+    
+    /**
+     * Bound of the requests for the cache (unbounded if not configured).
+     */
+    @Autowired(required = false)
+    @Qualifier("cachedBulkhead")
+    private Bulkhead cachedBulkhead = new Bulkhead("cached", 0, 0, 0);
+    
+    /**
+     * Minimum size (in bytes) of the bodies sent compressed.
+     */
+    private static final int GZIP_THRESHOLD = 1024;
+    
+    /**
+     * Maximum number of locations in a batch request.
+     */
+    private static final int MAX_BATCH = 100;
+    
+    /**
+     * Maximum number of days in a period request (each past day missing from cache is a request to the external API).
+     */
+    private static final int MAX_PERIOD = 31;
+    
+    /**
+     * Number of entries in a page of the cache, when not given.
+     */
+    private static final int DEFAULT_PAGE = 100;
+    
+    /**
+     * Maximum number of entries in a page of the cache.
+     */
+    private static final int MAX_PAGE = 1000;
+    
+    /**
+     * Header holding the cursor of the following page of the cache.
+     */
+    private static final String NEXT_CURSOR = "X-Next-Cursor";
+    
+    /**
+     * Media type of the forecast responses.
+     */
+    private static final MediaType JSON_UTF8 = new MediaType(MediaType.APPLICATION_JSON, StandardCharsets.UTF_8);
+    
+    /**
+     * Compressed bodies of the latest responses, by entity tag (bounded to 8 MB, each kept for a minute since last sent).
+     */
+    private final LocalCache<String, byte[]> compressed = new LocalCache<>(60, 1, 8 << 20, (tag, body) -> 64 + body.length);
+    
     // Methods
     
     /*
     Paths:  "http://localhost:8080/weather/now/40.6405,-8.6538"
             "http://localhost:8080/weather/recent/40.6405,-8.6538/3"
             "http://localhost:8080/weather/period/40.6405,-8.6538/2019-04-28,2019-04-30"
-            "http://localhost:8080/weather/cached"
+            "http://localhost:8080/weather/batch" (POST {"locations":["40.6405,-8.6538","38.7223,-9.1393"],"type":"recent","days":3})
+            "http://localhost:8080/weather/cached" (or by pages: "http://localhost:8080/weather/cached?limit=100", then "&cursor=" the X-Next-Cursor header)
+            "http://localhost:8080/weather/stats"
+            "http://localhost:8080/weather/reactive/now/40.6405,-8.6538" (and the same for recent and period)
     DarkSky:"https://api.darksky.net/forecast/fcaa01e2ece206bf84f403198e2d85a5/40.6405,-8.6538"
             "https://api.darksky.net/forecast/fcaa01e2ece206bf84f403198e2d85a5/40.6405,-8.6538,1556652090"
     */
@@ -45,13 +153,22 @@ public class WeatherController {
      * 
      * @param latitude coordinate of latitude of the target location
      * @param longitude coordinate of longitude of the target location
+     * @param ifNoneMatch entity tags of the responses already held by the client
+     * @param acceptEncoding encodings accepted by the client
      * @return response from the weather service in JSON format 
      * with the cached predictions (if successful) or the error message (if not)
      */
     @GetMapping("/now/{latitude},{longitude}")
-    public String getWeatherNow(@PathVariable("latitude") Double latitude, @PathVariable("longitude") Double longitude) {
+    public ResponseEntity<byte[]> getWeatherNow(@PathVariable("latitude") Double latitude, @PathVariable("longitude") Double longitude,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         // using the weather service
-        return weatherService.get(latitude + "," + longitude, "now", new Long[0]).toString();
+        this.acquire(this.nowBulkhead);
+        try {
+            return this.respond(weatherService.getEncoded(latitude + "," + longitude, "now", new Long[0]), ifNoneMatch, acceptEncoding);
+        } finally {
+            this.nowBulkhead.release();
+        }
     }
     
     /**
@@ -60,16 +177,25 @@ public class WeatherController {
      * @param latitude coordinate of latitude of the target location
      * @param longitude coordinate of longitude of the target location
      * @param days Period of time (in days) of the desired weather prediction starting from today (passed in the http path) with a maximum of 7 days
+     * @param ifNoneMatch entity tags of the responses already held by the client
+     * @param acceptEncoding encodings accepted by the client
      * @return response from the weather service in JSON format 
      * with the cached predictions (if successful) or the error message (if not)
      */
     @GetMapping("/recent/{latitude},{longitude}/{days}")
-    public String getWeatherRecent(@PathVariable("latitude") double latitude, @PathVariable("longitude") double longitude, @PathVariable("days") int days) {
+    public ResponseEntity<byte[]> getWeatherRecent(@PathVariable("latitude") double latitude, @PathVariable("longitude") double longitude, @PathVariable("days") int days,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         // validating path variables
         if(days < 1){ days = 1; }
         if(days > 7){ days = 7; }
         // using the weather service
-        return weatherService.get(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(days)}).toString();
+        this.acquire(this.recentBulkhead);
+        try {
+            return this.respond(weatherService.getEncoded(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(days)}), ifNoneMatch, acceptEncoding);
+        } finally {
+            this.recentBulkhead.release();
+        }
     }
     
     /**
@@ -79,40 +205,482 @@ public class WeatherController {
      * @param latitude coordinate of latitude of the target location
      * @param longitude coordinate of longitude of the target location
      * @param start Starting date of the desired weather prediction
-     * @param end Ending date of the desired weather prediction with a maximum of 7 days ahead of today
+     * @param end Ending date of the desired weather prediction with a maximum of 7 days ahead of today, and of 31 days after the starting date
+     * @param ifNoneMatch entity tags of the responses already held by the client
+     * @param acceptEncoding encodings accepted by the client
      * @return response from the weather service in JSON format 
      * with the cached predictions (if successful) or the error message (if not)
      */
     @GetMapping("/period/{latitude},{longitude}/{start},{end}")
-    public String getWeatherPeriod(@PathVariable("latitude") double latitude, @PathVariable("longitude") double longitude, @PathVariable("start") String start, @PathVariable("end") String end) {
+    public ResponseEntity<byte[]> getWeatherPeriod(@PathVariable("latitude") double latitude, @PathVariable("longitude") double longitude, @PathVariable("start") String start, @PathVariable("end") String end,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
         // validating path variables
+        Long[] period = this.getPeriod(start, end);
+        if(period.length == 1) {
+            return ResponseEntity.ok().contentType(JSON_UTF8).body(this.getPeriodError(period[0]).getBytes(StandardCharsets.UTF_8));
+        }
+        // using the weather service
+        this.acquire(this.periodBulkhead);
+        try {
+            return this.respond(weatherService.getEncoded(latitude + "," + longitude, "period", period), ifNoneMatch, acceptEncoding);
+        } finally {
+            this.periodBulkhead.release();
+        }
+    }
+    
+    /**
+     * Retrieves the weather predictions of many locations in a single request;
+     * the request body is a JSON object holding the coordinates of the locations ("locations")
+     * and the type of the prediction ("type": 'now', the default, 'recent' with "days", or 'period' with "start" and "end",
+     * as in the other paths), e.g. {"locations":["40.6405,-8.6538","38.7223,-9.1393"],"type":"recent","days":3}.
+     * 
+     * @param body JSON object describing the request
+     * @param acceptEncoding encodings accepted by the client
+     * @return JSON object holding the response of the weather service for every location (by its coordinates),
+     * each with the cached predictions (if successful) or the error message (if not), or else the error message of the request
+     * (with a 400 status if it has too many locations, checked before reading any of them)
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<byte[]> getWeatherBatch(@RequestBody String body,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding) {
+        // validating request body
+        List<String> locations = new ArrayList<>();
+        String type;
+        Long[] options;
+        try {
+            JsonObject request = new JsonParser().parse(body).getAsJsonObject();
+            JsonArray requested = request.getAsJsonArray("locations");
+            if(requested.size() > MAX_BATCH) {
+                return ResponseEntity.badRequest().contentType(JSON_UTF8).body(this.getBatchError("Between 1 and " + MAX_BATCH + " locations expected").getBytes(StandardCharsets.UTF_8));
+            }
+            for(JsonElement location: requested) {
+                String[] coords = location.getAsString().split(",");
+                locations.add(Double.valueOf(coords[0].trim()) + "," + Double.valueOf(coords[1].trim()));
+            }
+            type = request.has("type") ? request.get("type").getAsString() : "now";
+            switch(type) {
+                case "now":
+                    options = new Long[0];
+                    break;
+                case "recent":
+                    int days = request.has("days") ? request.get("days").getAsInt() : 1;
+                    options = new Long[]{Long.valueOf(Math.max(1, Math.min(7, days)))};
+                    break;
+                case "period":
+                    options = this.getPeriod(request.get("start").getAsString(), request.get("end").getAsString());
+                    if(options.length == 1) {
+                        return ResponseEntity.ok().contentType(JSON_UTF8).body(this.getPeriodError(options[0]).getBytes(StandardCharsets.UTF_8));
+                    }
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown type " + type);
+            }
+        } catch (RuntimeException ex) { // malformed JSON, missing or invalid fields
+            Logger.getLogger(WeatherController.class.getName()).log(Level.INFO, "Invalid batch request", ex);
+            return ResponseEntity.ok().contentType(JSON_UTF8).body(this.getBatchError("Invalid request").getBytes(StandardCharsets.UTF_8));
+        }
+        if(locations.isEmpty()) {
+            return ResponseEntity.ok().contentType(JSON_UTF8).body(this.getBatchError("Between 1 and " + MAX_BATCH + " locations expected").getBytes(StandardCharsets.UTF_8));
+        }
+        // using the weather service
+        Bulkhead bulkhead = type.equals("period") ? this.periodBulkhead : type.equals("recent") ? this.recentBulkhead : this.nowBulkhead;
+        byte[] responseBody;
+        this.acquire(bulkhead);
+        try {
+            responseBody = this.writeBatch(this.weatherService.getBatch(locations, type, options));
+        } finally {
+            bulkhead.release();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(JSON_UTF8).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if(acceptEncoding != null && acceptEncoding.contains("gzip") && responseBody.length >= GZIP_THRESHOLD) {
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(this.gzip(responseBody));
+        }
+        return builder.body(responseBody);
+    }
+    
+    /**
+     * Retrieves today's weather prediction, without holding the request thread while waiting for the external API.
+     * 
+     * @param latitude coordinate of latitude of the target location
+     * @param longitude coordinate of longitude of the target location
+     * @return asynchronous response from the weather service in JSON format 
+     * with the cached predictions (if successful) or the error message (if not)
+     */
+    @GetMapping("/reactive/now/{latitude},{longitude}")
+    public Mono<String> getWeatherNowReactive(@PathVariable("latitude") Double latitude, @PathVariable("longitude") Double longitude) {
+        return this.getReactive(latitude + "," + longitude, "now", new Long[0]);
+    }
+    
+    /**
+     * Retrieves weather prediction for a specific number of days starting from today,
+     * without holding the request thread while waiting for the external API.
+     * 
+     * @param latitude coordinate of latitude of the target location
+     * @param longitude coordinate of longitude of the target location
+     * @param days Period of time (in days) of the desired weather prediction starting from today (passed in the http path) with a maximum of 7 days
+     * @return asynchronous response from the weather service in JSON format 
+     * with the cached predictions (if successful) or the error message (if not)
+     */
+    @GetMapping("/reactive/recent/{latitude},{longitude}/{days}")
+    public Mono<String> getWeatherRecentReactive(@PathVariable("latitude") double latitude, @PathVariable("longitude") double longitude, @PathVariable("days") int days) {
+        // validating path variables
+        if(days < 1){ days = 1; }
+        if(days > 7){ days = 7; }
+        return this.getReactive(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(days)});
+    }
+    
+    /**
+     * Retrieves weather prediction for a specific time period,
+     * without holding the request thread while waiting for the external API;
+     * The dates passed as path variables must follow the format "yyyy-MM-dd".
+     * 
+     * @param latitude coordinate of latitude of the target location
+     * @param longitude coordinate of longitude of the target location
+     * @param start Starting date of the desired weather prediction
+     * @param end Ending date of the desired weather prediction with a maximum of 7 days ahead of today, and of 31 days after the starting date
+     * @return asynchronous response from the weather service in JSON format 
+     * with the cached predictions (if successful) or the error message (if not)
+     */
+    @GetMapping("/reactive/period/{latitude},{longitude}/{start},{end}")
+    public Mono<String> getWeatherPeriodReactive(@PathVariable("latitude") double latitude, @PathVariable("longitude") double longitude, @PathVariable("start") String start, @PathVariable("end") String end) {
+        // validating path variables
+        Long[] period = this.getPeriod(start, end);
+        if(period.length == 1) {
+            return Mono.just(this.getPeriodError(period[0]));
+        }
+        return this.getReactive(latitude + "," + longitude, "period", period);
+    }
+    
+    /**
+     * Retrieves the cache of previous weather predictions, written to the response as it is read
+     * (so that no copy of the cache is built); with a limit or a cursor, only a page of it is retrieved,
+     * and the cursor of the following page (if any) is returned in the "X-Next-Cursor" header.
+     * 
+     * @param cursor cursor returned with the previous page (absent for the first page)
+     * @param limit maximum number of entries in the page (absent or non-positive for the entire cache, unless a cursor is given)
+     * @param response HTTP response to which the cached predictions are written,
+     * in JSON format (array of objects holding every prediction by its key) or the error message
+     * @throws IOException if the response could not be written
+     */
+    @GetMapping("/cached")
+    public void getCache(@RequestParam(value = "cursor", required = false) String cursor,
+            @RequestParam(value = "limit", defaultValue = "0") int limit, HttpServletResponse response) throws IOException {
+        this.acquire(this.cachedBulkhead);
+        try {
+            this.writeCache(cursor, limit, response);
+        } finally {
+            this.cachedBulkhead.release();
+        }
+    }
+    
+    /**
+     * Internal method used to write the cache (or a page of it) to the response, as described in getCache.
+     * 
+     * @param cursor cursor returned with the previous page (null for the first page)
+     * @param limit maximum number of entries in the page (non-positive for the entire cache, unless a cursor is given)
+     * @param response HTTP response to which the cached predictions are written
+     * @throws IOException if the response could not be written
+     */
+    private void writeCache(String cursor, int limit, HttpServletResponse response) throws IOException {
+        response.setContentType(JSON_UTF8.toString());
+        if(cursor == null && limit <= 0) {
+            try (JsonWriter writer = this.jsonWriter(response)) {
+                writer.beginArray();
+                this.weatherService.forEachCached((key, day) -> this.writeCached(writer, key, day));
+                writer.endArray();
+            } catch (UncheckedIOException ex) {
+                throw ex.getCause();
+            }
+            return;
+        }
+        // validating request parameters
+        String after = null;
+        if(cursor != null) {
+            try {
+                after = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            } catch (IllegalArgumentException ex) {
+                response.getOutputStream().write("[{\"error\":\"-5\", \"message\":\"Invalid cursor\"}]".getBytes(StandardCharsets.UTF_8));
+                return;
+            }
+        }
+        limit = limit <= 0 ? DEFAULT_PAGE : Math.min(limit, MAX_PAGE);
+        // using the weather service
+        Map<String, DailyForecast> page = this.weatherService.getPage(after, limit);
+        if(page.size() == limit) {
+            String last = null;
+            for(String key: page.keySet()) {
+                last = key;
+            }
+            response.setHeader(NEXT_CURSOR, Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8)));
+        }
+        try (JsonWriter writer = this.jsonWriter(response)) {
+            writer.beginArray();
+            for(Map.Entry<String, DailyForecast> entry: page.entrySet()) {
+                this.writeCached(writer, entry.getKey(), entry.getValue());
+            }
+            writer.endArray();
+        } catch (UncheckedIOException ex) {
+            throw ex.getCause();
+        }
+    }
+    
+    /**
+     * Retrieves statistics about the weather service, along with the state of the bulkheads of every type of request.
+     * 
+     * @return response from the weather service in JSON format with the statistics
+     */
+    @GetMapping("/stats")
+    public String getStats() {
+        JsonObject stats = this.weatherService.getStats();
+        JsonObject bulkheads = new JsonObject();
+        for(Bulkhead bulkhead: new Bulkhead[]{this.nowBulkhead, this.recentBulkhead, this.periodBulkhead, this.cachedBulkhead}) {
+            JsonObject state = new JsonObject();
+            state.addProperty("enabled", bulkhead.isEnabled());
+            state.addProperty("available", bulkhead.getAvailable());
+            state.addProperty("waiting", bulkhead.getWaiting());
+            state.addProperty("rejected", bulkhead.getRejected());
+            bulkheads.add(bulkhead.getName(), state);
+        }
+        stats.add("bulkheads", bulkheads);
+        return stats.toString();
+    }
+    
+    /**
+     * Responds to the requests that could not be served because the external API is unavailable
+     * (and the requested days are neither cached nor known), telling the client when to retry.
+     * 
+     * @param ex exception thrown by the weather service
+     * @return 503 (Service Unavailable) response with the error message in JSON format
+     */
+    @ExceptionHandler(UpstreamUnavailableException.class)
+    public ResponseEntity<byte[]> handleUpstreamUnavailable(UpstreamUnavailableException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(JSON_UTF8)
+                .header(HttpHeaders.RETRY_AFTER, String.valueOf(ex.getRetryAfterSeconds()))
+                .body("[{\"error\":\"-6\", \"message\":\"Forecast temporarily unavailable\"}]".getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Responds to the requests rejected by the bulkhead of their type, asking the client to retry shortly.
+     * 
+     * @param ex exception thrown when the request was rejected
+     * @return 503 (Service Unavailable) response with the error message in JSON format
+     */
+    @ExceptionHandler(BulkheadFullException.class)
+    public ResponseEntity<byte[]> handleBulkheadFull(BulkheadFullException ex) {
+        return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).contentType(JSON_UTF8)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(("[{\"error\":\"-7\", \"message\":\"" + ex.getMessage() + "\"}]").getBytes(StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Internal auxiliary method used to take a permit of a bulkhead, rejecting the request if none is available in time.
+     * 
+     * @param bulkhead bulkhead of the type of the request
+     * @throws BulkheadFullException if the request is rejected
+     */
+    private void acquire(Bulkhead bulkhead) {
+        if(!bulkhead.tryAcquire()) {
+            throw new BulkheadFullException(bulkhead.getName());
+        }
+    }
+    
+    /**
+     * Internal auxiliary method used to adapt the asynchronous response of the weather service to the reactive endpoints.
+     * 
+     * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
+     * @param type type of the desired forecast ('now', 'recent' or 'period')
+     * @param options parameters used in some types of requests
+     * @return asynchronous response from the weather service in JSON format
+     */
+    private Mono<String> getReactive(String coords, String type, Long[] options) {
+        return Mono.defer(() -> Mono.fromFuture(this.weatherService.getAsync(coords, type, options)))
+                .map(Object::toString);
+    }
+    
+    /**
+     * Internal auxiliary method used to write a forecast response:
+     * an empty 304 response if the client already holds it, the compressed body if the client accepts it,
+     * or else the body as assembled by the weather service.
+     * Responses holding errors are always written in full, without entity tag.
+     * 
+     * @param response response of the weather service
+     * @param ifNoneMatch entity tags of the responses already held by the client (null if none)
+     * @param acceptEncoding encodings accepted by the client (null if not given)
+     * @return HTTP response
+     */
+    private ResponseEntity<byte[]> respond(ForecastResponse response, String ifNoneMatch, String acceptEncoding) {
+        byte[] body = response.toJsonBytes();
+        if(response.isError()) {
+            return ResponseEntity.ok().contentType(JSON_UTF8).body(body);
+        }
+        boolean gzip = acceptEncoding != null && acceptEncoding.contains("gzip") && body.length >= GZIP_THRESHOLD;
+        String etag = response.getETag();
+        if(gzip) { // a different representation, with a different tag
+            etag = etag.substring(0, etag.length() - 1) + "-gzip\"";
+        }
+        if(this.matches(ifNoneMatch, etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        ResponseEntity.BodyBuilder builder = ResponseEntity.ok().contentType(JSON_UTF8).eTag(etag).header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+        if(gzip) {
+            byte[] compressedBody = this.compressed.get(etag);
+            if(compressedBody == null) {
+                compressedBody = this.gzip(body);
+                this.compressed.put(etag, compressedBody);
+            }
+            return builder.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(compressedBody);
+        }
+        return builder.body(body);
+    }
+    
+    /**
+     * Internal auxiliary method used to write the responses of a batch request into a single JSON object,
+     * copying the body of every response as assembled by the weather service.
+     * 
+     * @param responses responses of the weather service by location
+     * @return UTF-8 bytes of the JSON object
+     */
+    private byte[] writeBatch(Map<String, ForecastResponse> responses) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(responses.size() * 1024);
+        out.write('{');
+        for(Map.Entry<String, ForecastResponse> response: responses.entrySet()) {
+            if(out.size() > 1) {
+                out.write(',');
+            }
+            byte[] key = new JsonPrimitive(response.getKey()).toString().getBytes(StandardCharsets.UTF_8);
+            out.write(key, 0, key.length);
+            out.write(':');
+            byte[] value = response.getValue().toJsonBytes();
+            out.write(value, 0, value.length);
+        }
+        out.write('}');
+        return out.toByteArray();
+    }
+    
+    /**
+     * Internal auxiliary method used to create the writer of a streamed JSON response.
+     * 
+     * @param response HTTP response to be written
+     * @return JSON writer over the body of the response, encoded in UTF-8
+     * @throws IOException if the body of the response could not be opened
+     */
+    private JsonWriter jsonWriter(HttpServletResponse response) throws IOException {
+        return new JsonWriter(new BufferedWriter(new OutputStreamWriter(response.getOutputStream(), StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Internal auxiliary method used to write a cached prediction to a streamed response, as {"key":{day}}.
+     * 
+     * @param writer JSON writer of the response
+     * @param key key of the cached prediction
+     * @param day cached prediction
+     */
+    private void writeCached(JsonWriter writer, String key, DailyForecast day) {
+        try {
+            writer.beginObject();
+            writer.name(key);
+            writer.jsonValue(new String(day.toJsonBytes(), StandardCharsets.UTF_8));
+            writer.endObject();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+    
+    /**
+     * Internal auxiliary method used to determine if the client already holds a response,
+     * using the weak comparison of entity tags (as required for If-None-Match).
+     * 
+     * @param ifNoneMatch entity tags of the responses held by the client, separated by ',' (null if none)
+     * @param etag entity tag of the response
+     * @return True if any of the client's tags (or "*") matches the tag of the response
+     */
+    private boolean matches(String ifNoneMatch, String etag) {
+        if(ifNoneMatch == null) {
+            return false;
+        }
+        for(String tag: ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if(tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if(tag.equals("*") || tag.equals(etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    /**
+     * Internal auxiliary method used to compress a response body.
+     * 
+     * @param body body to be compressed
+     * @return gzip-compressed body
+     */
+    private byte[] gzip(byte[] body) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(body);
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return out.toByteArray();
+    }
+    
+    /**
+     * Internal auxiliary method used to validate the dates of a period request;
+     * the ending date is limited to 6 days ahead of today, and the period to MAX_PERIOD days.
+     * 
+     * @param start Starting date of the desired weather prediction, in the format "yyyy-MM-dd"
+     * @param end Ending date of the desired weather prediction, in the format "yyyy-MM-dd"
+     * @return array holding the starting and ending times in seconds, or only the error code if the dates are not valid
+     */
+    private Long[] getPeriod(String start, String end) {
         String formatString = "yyyy-MM-dd";
         Long currentTime = System.currentTimeMillis() / 1000;
         Long maxTime = currentTime + 6*86400;
         Long startingTime = this.getDateFromString(start, formatString);
         Long endingTime = this.getDateFromString(end, formatString);
         if(startingTime == -1L || endingTime == -1L) { 
-            return "[{\"error\":\"-1\", \"message\":\"Unable to parse date\"}]"; 
+            return new Long[]{-1L};
         }
         if(startingTime > maxTime || startingTime > endingTime) {
-            return "[{\"error\":\"-2\", \"message\":\"Invalid dates\"}]"; 
+            return new Long[]{-2L};
         }
         if(endingTime > maxTime) {
             endingTime = maxTime;
         }
-        // using the weather service
-        return weatherService.get(latitude + "," + longitude, "period", new Long[]{startingTime, endingTime}).toString();
+        if(endingTime - startingTime >= MAX_PERIOD*86400L) {
+            return new Long[]{-3L};
+        }
+        return new Long[]{startingTime, endingTime};
     }
     
     /**
-     * Retrieves the entire cache of previous weather predictions.
+     * Internal auxiliary method used to build the error message of a period request with invalid dates.
      * 
-     * @return response from the weather service in JSON format 
-     * with the cached predictions (if successful) or the error message (if not)
+     * @param errorCode error code returned by getPeriod (-1 if the dates could not be parsed, -2 if they are not valid,
+     * -3 if the period is too long)
+     * @return error message in JSON format
      */
-    @GetMapping("/cached")
-    public String getCache() {
-        return this.weatherService.getAll(true).toString();
+    private String getPeriodError(Long errorCode) {
+        if(errorCode == -1L) { 
+            return "[{\"error\":\"-1\", \"message\":\"Unable to parse date\"}]"; 
+        }
+        if(errorCode == -3L) {
+            return "[{\"error\":\"-2\", \"message\":\"Invalid dates: periods are limited to " + MAX_PERIOD + " days\"}]";
+        }
+        return "[{\"error\":\"-2\", \"message\":\"Invalid dates\"}]";
+    }
+    
+    /**
+     * Internal auxiliary method used to build the error message of an invalid batch request.
+     * 
+     * @param message description of the error
+     * @return error message in JSON format
+     */
+    private String getBatchError(String message) {
+        return "[{\"error\":\"-3\", \"message\":\"" + message + "\"}]";
     }
     
     /**
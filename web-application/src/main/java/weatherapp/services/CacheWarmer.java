@@ -0,0 +1,234 @@
+package weatherapp.services;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Cache Warmer: keeps the forecasts of the most requested locations in cache,
+ * so that they are served without waiting for the external API.
+ *
+ * The locations are the heavy hitters of the requests for current and upcoming days ('now' and 'recent'),
+ * bootstrapped with a list of seed locations. They are warmed when the application starts and then periodically,
+ * by requesting their upcoming week (which fills, promotes or refreshes it, as any request would);
+ * after every round the counts are decayed, so that the locations follow the current traffic.
+ * Between rounds, the days of the locations warmed are read again before their lifetime in the memory cache ends
+ * (which is renewed by every access), so that they are served from it rather than from the second tier.
+ *
+ * Warming runs in its own thread, so that neither the startup nor the requests wait for it;
+ * the same thread merges the requests counted into the popularity sketch every second.
+ *
+ * @author Filipe Pires
+ */
+public class CacheWarmer implements Closeable {
+
+    // Attributes
+
+    /**
+     * Number of upcoming days warmed for every location (the maximum of the 'recent' requests).
+     */
+    private static final long DAYS = 7;
+
+    /**
+     * Space of time (in seconds) between merges of the requests counted into the popularity sketch.
+     */
+    private static final long MERGE_INTERVAL = 1;
+
+    /**
+     * Service used to request the forecasts being warmed.
+     */
+    private final WeatherService weatherService;
+
+    /**
+     * Counters of the most requested locations.
+     */
+    private final HeavyHitters popularity;
+
+    /**
+     * Grid to which the seed locations are snapped, as the requested ones.
+     */
+    private final GeoQuantizer geoQuantizer;
+
+    /**
+     * Maximum number of locations warmed in every round (non-positive to disable the warmer).
+     */
+    private final int topN;
+
+    /**
+     * Space of time (in seconds) between rounds (non-positive to warm only at startup).
+     */
+    private final long interval;
+
+    /**
+     * Space of time (in seconds) between reads keeping the days warmed in the memory cache (non-positive if they never expire).
+     */
+    private final long keepAlive;
+
+    /**
+     * Locations counted once before any request, so that they are warmed at startup.
+     */
+    private final List<String> seeds;
+
+    /**
+     * Locations warmed in the last round, kept in the memory cache until the next one.
+     */
+    private volatile List<String> resident = Collections.emptyList();
+
+    /**
+     * Number of locations warmed.
+     */
+    private final LongAdder warmed = new LongAdder();
+
+    /**
+     * Scheduler running the rounds (null until started).
+     */
+    private ScheduledExecutorService scheduler;
+
+    // Constructors
+
+    /**
+     * CacheWarmer constructor for a memory cache whose entries never expire.
+     *
+     * @param weatherService service used to request the forecasts being warmed
+     * @param popularity counters of the most requested locations
+     * @param geoQuantizer grid to which the seed locations are snapped
+     * @param topN maximum number of locations warmed in every round, non-positive to disable the warmer
+     * @param interval space of time (in seconds) between rounds, non-positive to warm only at startup
+     * @param seeds coordinates of the locations warmed at startup, separated by ';' (e.g. "40.6405,-8.6538;38.7223,-9.1393")
+     */
+    public CacheWarmer(WeatherService weatherService, HeavyHitters popularity, GeoQuantizer geoQuantizer, int topN, long interval, String seeds) {
+        this(weatherService, popularity, geoQuantizer, topN, interval, 0, seeds);
+    }
+
+    /**
+     * CacheWarmer main constructor.
+     *
+     * @param weatherService service used to request the forecasts being warmed
+     * @param popularity counters of the most requested locations
+     * @param geoQuantizer grid to which the seed locations are snapped
+     * @param topN maximum number of locations warmed in every round, non-positive to disable the warmer
+     * @param interval space of time (in seconds) between rounds, non-positive to warm only at startup
+     * @param keepAlive space of time (in seconds) between reads keeping the days warmed in the memory cache,
+     *                  below their lifetime in it (non-positive if they never expire)
+     * @param seeds coordinates of the locations warmed at startup, separated by ';' (e.g. "40.6405,-8.6538;38.7223,-9.1393")
+     */
+    public CacheWarmer(WeatherService weatherService, HeavyHitters popularity, GeoQuantizer geoQuantizer, int topN, long interval, long keepAlive, String seeds) {
+        this.weatherService = weatherService;
+        this.popularity = popularity;
+        this.geoQuantizer = geoQuantizer;
+        this.topN = topN;
+        this.interval = interval;
+        this.keepAlive = keepAlive;
+        this.seeds = new ArrayList<>();
+        for (String seed: seeds.split(";")) {
+            if (!seed.trim().isEmpty()) {
+                this.seeds.add(seed.trim());
+            }
+        }
+    }
+
+    // Methods
+
+    /**
+     * Counts the seed locations and schedules the rounds, the first one immediately.
+     */
+    public synchronized void start() {
+        if (!this.isEnabled() || this.scheduler != null) {
+            return;
+        }
+        for (String seed: this.seeds) {
+            this.popularity.offer(this.geoQuantizer.quantize(seed));
+        }
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "cache-warmer");
+            t.setDaemon(true);
+            return t;
+        });
+        this.scheduler.scheduleWithFixedDelay(this.popularity::merge, MERGE_INTERVAL, MERGE_INTERVAL, TimeUnit.SECONDS);
+        if (this.interval > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::warm, 0, this.interval, TimeUnit.SECONDS);
+        } else {
+            this.scheduler.execute(this::warm);
+        }
+        if (this.keepAlive > 0) {
+            this.scheduler.scheduleWithFixedDelay(this::keepResident, this.keepAlive, this.keepAlive, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * Stops the rounds.
+     */
+    @Override
+    public synchronized void close() {
+        if (this.scheduler != null) {
+            this.scheduler.shutdownNow();
+            this.scheduler = null;
+        }
+    }
+
+    /**
+     * Warms the upcoming days of the most requested locations, then decays their counts.
+     * A location that could not be warmed is skipped until the next round.
+     *
+     * @return number of locations warmed
+     */
+    public int warm() {
+        List<String> warmedLocations = new ArrayList<>();
+        for (String location: this.popularity.top(this.topN)) {
+            try {
+                this.weatherService.warm(location, DAYS);
+                warmedLocations.add(location);
+            } catch (RuntimeException ex) {
+                Logger.getLogger(CacheWarmer.class.getName()).log(Level.WARNING, "Unable to warm the forecasts of " + location, ex);
+            }
+        }
+        this.resident = warmedLocations;
+        this.popularity.decay();
+        this.warmed.add(warmedLocations.size());
+        return warmedLocations.size();
+    }
+
+    /**
+     * Reads again the upcoming days of the locations warmed in the last round, without counting them,
+     * which renews their lifetime in the memory cache (and fills or refreshes them, if needed, as a round would).
+     *
+     * @return number of locations read
+     */
+    public int keepResident() {
+        int count = 0;
+        for (String location: this.resident) {
+            try {
+                this.weatherService.warm(location, DAYS);
+                count++;
+            } catch (RuntimeException ex) {
+                Logger.getLogger(CacheWarmer.class.getName()).log(Level.FINE, "Unable to keep the forecasts of " + location, ex);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Determines if any location is warmed.
+     *
+     * @return True if the warmer has a number of locations to warm, False if it is disabled
+     */
+    public boolean isEnabled() {
+        return this.topN > 0 && this.popularity.isEnabled();
+    }
+
+    /**
+     * Returns the number of locations warmed since the application started.
+     *
+     * @return long value holding the number of locations warmed
+     */
+    public long warmedCount() {
+        return this.warmed.sum();
+    }
+}
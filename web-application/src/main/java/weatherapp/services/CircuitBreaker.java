@@ -0,0 +1,272 @@
+package weatherapp.services;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Circuit Breaker: stops sending requests to the external API while it is failing,
+ * so that callers fail fast (or are served the last known forecasts) instead of waiting for it.
+ *
+ * The outcomes of the latest requests are kept in a window of fixed size, where requests slower than a threshold
+ * count as failures: once the window is full and the rate of failures reaches the threshold, the circuit opens
+ * and every request is rejected. After the open duration, a few probes are let through (half-open):
+ * the circuit closes if all of them succeed, and opens again as soon as one of them fails.
+ * Every change of state starts a new generation of the circuit: the outcome of a request is only recorded
+ * if the circuit is still in the generation in which the request was let through
+ * (so a request sent while closed and finishing once half-open never counts as a probe).
+ *
+ * @author Filipe Pires
+ */
+public class CircuitBreaker {
+
+    // Attributes
+
+    /**
+     * States of the circuit.
+     */
+    public enum State {
+        /** requests are sent and their outcomes recorded */
+        CLOSED,
+        /** requests are rejected */
+        OPEN,
+        /** a few requests are sent to probe the external API */
+        HALF_OPEN
+    }
+
+    /**
+     * Time (in milisseconds) expected for the probes to complete, when there is no slow call threshold.
+     */
+    private static final long PROBE_DURATION = 1000;
+
+    /**
+     * Outcomes of the latest requests, as a ring (True if failed).
+     */
+    private final boolean[] window;
+
+    /**
+     * Rate of failures in the window (from 0 to 1) at which the circuit opens.
+     */
+    private final double failureRateThreshold;
+
+    /**
+     * Time (in milisseconds) after which a request counts as failed (non-positive if requests are never too slow).
+     */
+    private final long slowCallThreshold;
+
+    /**
+     * Time (in milisseconds) during which the circuit stays open before probing the external API.
+     */
+    private final long openDuration;
+
+    /**
+     * Number of probes sent (and succeeded) before closing the circuit.
+     */
+    private final int probes;
+
+    /**
+     * Current state of the circuit.
+     */
+    private State state = State.CLOSED;
+
+    /**
+     * Generation of the circuit, incremented on every change of state.
+     */
+    private long generation;
+
+    /**
+     * Number of outcomes in the window.
+     */
+    private int calls;
+
+    /**
+     * Number of failures in the window.
+     */
+    private int failures;
+
+    /**
+     * Position of the window where the next outcome is recorded.
+     */
+    private int next;
+
+    /**
+     * Time (in milisseconds) at which the circuit last opened.
+     */
+    private long openedAt;
+
+    /**
+     * Number of probes sent since the circuit became half-open.
+     */
+    private int probesSent;
+
+    /**
+     * Number of probes succeeded since the circuit became half-open.
+     */
+    private int probesSucceeded;
+
+    /**
+     * Number of times the circuit opened.
+     */
+    private long openings;
+
+    /**
+     * Number of requests rejected.
+     */
+    private final LongAdder rejectedCalls = new LongAdder();
+
+    // Constructors
+
+    /**
+     * CircuitBreaker main constructor.
+     *
+     * @param windowSize number of latest requests whose outcomes are kept, non-positive to never open the circuit
+     * @param failureRateThreshold rate of failures in the window (from 0 to 1) at which the circuit opens
+     * @param slowCallThreshold time (in milisseconds) after which a request counts as failed, non-positive to ignore the latency
+     * @param openDuration time (in seconds) during which the circuit stays open before probing the external API
+     * @param probes number of probes sent (and succeeded) before closing the circuit
+     */
+    public CircuitBreaker(int windowSize, double failureRateThreshold, long slowCallThreshold, long openDuration, int probes) {
+        this.window = new boolean[Math.max(0, windowSize)];
+        this.failureRateThreshold = failureRateThreshold;
+        this.slowCallThreshold = slowCallThreshold;
+        this.openDuration = Math.max(0, openDuration) * 1000;
+        this.probes = Math.max(1, probes);
+    }
+
+    // Methods
+
+    /**
+     * Asks for permission to send a request to the external API:
+     * always granted while closed, never while open, and to the first probes once the open duration has passed.
+     *
+     * @param now current time in milisseconds
+     * @return generation of the circuit in which the request is sent (to be given to onResult), -1 if it is rejected
+     */
+    public long acquire(long now) {
+        if(!this.isEnabled()) {
+            return 0;
+        }
+        synchronized(this) {
+            if(this.state == State.OPEN && now - this.openedAt >= this.openDuration) {
+                this.transition(State.HALF_OPEN);
+                this.probesSent = 0;
+                this.probesSucceeded = 0;
+            }
+            if(this.state == State.CLOSED || (this.state == State.HALF_OPEN && this.probesSent < this.probes)) {
+                if(this.state == State.HALF_OPEN) { this.probesSent++; }
+                return this.generation;
+            }
+        }
+        this.rejectedCalls.increment();
+        return -1;
+    }
+
+    /**
+     * Records the outcome of a request sent to the external API.
+     * Outcomes of requests sent in an earlier generation of the circuit (before it last changed state) are ignored.
+     *
+     * @param generation generation of the circuit in which the request was sent, as returned by acquire
+     * @param failed True if the request failed (the external API did not reply, or replied with a server error)
+     * @param duration time (in milisseconds) taken by the request
+     * @param now current time in milisseconds
+     */
+    public void onResult(long generation, boolean failed, long duration, long now) {
+        if(!this.isEnabled()) {
+            return;
+        }
+        failed = failed || (this.slowCallThreshold > 0 && duration >= this.slowCallThreshold);
+        synchronized(this) {
+            if(generation != this.generation) {
+                return;
+            }
+            if(this.state == State.HALF_OPEN) {
+                if(failed) {
+                    this.open(now);
+                } else if(++this.probesSucceeded >= this.probes) {
+                    this.transition(State.CLOSED);
+                }
+            } else if(this.state == State.CLOSED) {
+                if(this.calls == this.window.length) {
+                    if(this.window[this.next]) { this.failures--; }
+                } else {
+                    this.calls++;
+                }
+                this.window[this.next] = failed;
+                if(failed) { this.failures++; }
+                this.next = (this.next + 1) % this.window.length;
+                if(this.calls == this.window.length && this.failures >= this.failureRateThreshold * this.window.length) {
+                    this.open(now);
+                }
+            }
+        }
+    }
+
+    /**
+     * Internal method used to open the circuit, clearing the window for when it closes again.
+     *
+     * @param now current time in milisseconds
+     */
+    private void open(long now) {
+        this.transition(State.OPEN);
+        this.openedAt = now;
+        this.openings++;
+        this.calls = 0;
+        this.failures = 0;
+        this.next = 0;
+    }
+
+    /**
+     * Internal method used to change the state of the circuit, starting a new generation.
+     *
+     * @param state new state of the circuit
+     */
+    private void transition(State state) {
+        this.state = state;
+        this.generation++;
+    }
+
+    /**
+     * Calculates the time after which a rejected request may be sent: the time left before the external API is probed
+     * while open, or the time the probes are expected to take (the slow call threshold, or a second) while half-open.
+     *
+     * @param now current time in milisseconds
+     * @return time (in milisseconds) after which a request may be sent, 0 while closed
+     */
+    public synchronized long getRetryAfter(long now) {
+        if(this.state == State.HALF_OPEN) {
+            return this.slowCallThreshold > 0 ? this.slowCallThreshold : PROBE_DURATION;
+        }
+        return this.state == State.OPEN ? Math.max(0, this.openedAt + this.openDuration - now) : 0;
+    }
+
+    /**
+     * Determines if the circuit ever opens.
+     *
+     * @return True if the outcomes of the requests are recorded
+     */
+    public boolean isEnabled() {
+        return this.window.length > 0;
+    }
+
+    /**
+     * Getter method for the state of the circuit.
+     * @return current state of the circuit (an open circuit only becomes half-open when asked for permission)
+     */
+    public synchronized State getState() {
+        return this.state;
+    }
+
+    /**
+     * Getter method for the number of openings.
+     * @return number of times the circuit opened
+     */
+    public synchronized long getOpenings() {
+        return this.openings;
+    }
+
+    /**
+     * Getter method for the number of rejected requests.
+     * @return number of requests rejected while the circuit was open (or half-open, beyond the probes)
+     */
+    public long getRejectedCalls() {
+        return this.rejectedCalls.sum();
+    }
+}
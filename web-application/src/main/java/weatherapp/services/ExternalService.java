@@ -6,23 +6,50 @@
 package weatherapp.services;
 
 import com.google.gson.*;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
 import org.springframework.http.*;
 import org.springframework.web.client.RestTemplate;
+import org.springframework.web.reactive.function.client.WebClient;
+import reactor.core.publisher.Mono;
 
 /**
  * External API Provider: serves internal API to respond to the requests to DarkSky.
  * 
+ * Responses are read as a stream, building only the daily forecasts (and the error, if any)
+ * and skipping every other part of the response.
+ * 
  * @author Filipe Pires
  */
 public class ExternalService {
    
+    /**
+     * Name of the property added to every daily forecast with the time zone of the location (the days of "daily.data"
+     * are days of the location, not of the server).
+     */
+    static final String TIMEZONE = "timezone";
+    
     /**
      * Template used for HTTP requests to the DarkSky API
      */
     @Autowired
     private RestTemplate restTemplate;
     
+    /**
+     * Non-blocking client used for HTTP requests to the DarkSky API
+     */
+    @Autowired(required = false)
+    private WebClient webClient = WebClient.create();
+    
     /**
      * Sends requests to the external API according to the supplied path.
      * 
@@ -34,15 +61,113 @@ public class ExternalService {
         // preparing http request
         HttpEntity<String> entity = new HttpEntity<>(headers);
         // retrieving data from the external api
-        ResponseEntity<String> response = restTemplate.exchange(path, HttpMethod.GET, entity, String.class);
-        String darkSky = response.getBody();
-        JsonObject darkSkyJSON = new JsonParser().parse(darkSky).getAsJsonObject();
+        return restTemplate.execute(path, HttpMethod.GET, restTemplate.httpEntityCallback(entity),
+                response -> readDailyData(new InputStreamReader(response.getBody(), StandardCharsets.UTF_8)));
+    }
+    
+    /**
+     * Sends requests to the external API according to the supplied path, without blocking the calling thread;
+     * the response is handled by the threads of the non-blocking client.
+     * 
+     * @param path String holding the url path for the HTTP request to the external API
+     * @param headers HTTP headers to be used in the request
+     * @return asynchronous HTTP response of the external API containing the weather forecasts for the intended time and location
+     */
+    public Mono<JsonArray> getWeatherForecastReactive(String path, HttpHeaders headers) {
+        return DataBufferUtils.join(this.webClient.get()
+                        .uri(path)
+                        .headers(h -> h.addAll(headers))
+                        .retrieve()
+                        .bodyToFlux(DataBuffer.class))
+                .map(body -> {
+                    try {
+                        return readDailyData(new InputStreamReader(body.asInputStream(true), StandardCharsets.UTF_8));
+                    } catch (IOException ex) {
+                        throw new UncheckedIOException(ex);
+                    }
+                });
+    }
+    
+    /**
+     * Extracts the daily forecasts from the response of the external API, reading it as a stream:
+     * only the records of "daily.data" are built, along with the top-level values (where the error and time zone are),
+     * every other object or array is skipped.
+     * Each daily forecast is given the time zone of the location (see TIMEZONE), if the response has one.
+     * 
+     * @param darkSky body of the HTTP response of the external API (closed once read)
+     * @return array of JSON objects containing the daily forecasts, or the error object (if the request failed)
+     * @throws IOException if the response could not be read
+     */
+    static JsonArray readDailyData(Reader darkSky) throws IOException {
+        JsonObject topLevel = new JsonObject();
         JsonArray requestedData = new JsonArray();
-        if(darkSkyJSON.has("error")) {
-            requestedData.add(darkSkyJSON);
-            return requestedData;
+        try (JsonReader reader = new JsonReader(darkSky)) {
+            reader.beginObject();
+            while(reader.hasNext()) {
+                String name = reader.nextName();
+                if(name.equals("daily") && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                    readData(reader, requestedData);
+                } else if(reader.peek() == JsonToken.BEGIN_OBJECT || reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    reader.skipValue(); // currently, hourly, flags, ...
+                } else {
+                    topLevel.add(name, new JsonParser().parse(reader));
+                }
+            }
+            reader.endObject();
+        }
+        if(topLevel.has("error")) {
+            requestedData = new JsonArray();
+            requestedData.add(topLevel);
+        } else {
+            String zone = zoneOf(topLevel);
+            if(zone != null) {
+                for(JsonElement day: requestedData) {
+                    day.getAsJsonObject().addProperty(TIMEZONE, zone);
+                }
+            }
         }
-        requestedData = darkSkyJSON.getAsJsonObject("daily").getAsJsonArray("data");
         return requestedData;
     }
+    
+    /**
+     * Internal auxiliary method used to read the time zone of the location from the top-level values of the response:
+     * its IANA name ("timezone") or, lacking that, its offset from UTC in hours ("offset").
+     * 
+     * @param topLevel top-level values of the response
+     * @return identifier of the time zone of the location, or null if the response has none
+     */
+    private static String zoneOf(JsonObject topLevel) {
+        JsonElement timezone = topLevel.get("timezone");
+        if(timezone != null && timezone.isJsonPrimitive() && timezone.getAsJsonPrimitive().isString()) {
+            return timezone.getAsString();
+        }
+        JsonElement offset = topLevel.get("offset");
+        if(offset != null && offset.isJsonPrimitive() && offset.getAsJsonPrimitive().isNumber()) {
+            return ZoneOffset.ofTotalSeconds((int) Math.round(offset.getAsDouble() * 3600)).getId();
+        }
+        return null;
+    }
+    
+    /**
+     * Internal auxiliary method used to read the daily forecasts from the "daily" object of the response.
+     * 
+     * @param reader reader positioned at the start of the "daily" object
+     * @param requestedData array where the daily forecasts are added
+     * @throws IOException if the response could not be read
+     */
+    private static void readData(JsonReader reader, JsonArray requestedData) throws IOException {
+        reader.beginObject();
+        while(reader.hasNext()) {
+            if(reader.nextName().equals("data") && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                while(reader.hasNext()) {
+                    requestedData.add(new JsonParser().parse(reader));
+                }
+                reader.endArray();
+            } else {
+                reader.skipValue(); // summary, icon
+            }
+        }
+        reader.endObject();
+    }
 }
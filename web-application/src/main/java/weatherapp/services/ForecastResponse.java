@@ -0,0 +1,163 @@
+package weatherapp.services;
+
+import weatherapp.cache.DailyForecast;
+import com.google.gson.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Response of the weather service to a request: the forecasts of the requested days, or the error of the external API.
+ *
+ * The body is assembled from the JSON of every cached day written straight to bytes, without building the JSON objects,
+ * and is identified by a strong entity tag derived from the hashes of the days (calculated without writing them),
+ * so that equal responses always carry the same tag.
+ *
+ * @author Filipe Pires
+ */
+public final class ForecastResponse {
+
+    // Attributes
+
+    /**
+     * Forecasts of the requested days, in chronological order (empty if the request failed).
+     */
+    private final List<DailyForecast> days;
+
+    /**
+     * Array holding the error object of the external API (null if the request succeeded).
+     */
+    private final JsonArray error;
+
+    // Constructors
+
+    /**
+     * Internal constructor, used by the factory methods.
+     *
+     * @param days forecasts of the requested days
+     * @param error array holding the error object of the external API
+     */
+    private ForecastResponse(List<DailyForecast> days, JsonArray error) {
+        this.days = days;
+        this.error = error;
+    }
+
+    // Methods
+
+    /**
+     * Builds the response holding the forecasts of the requested days.
+     *
+     * @param days forecasts of the requested days, in chronological order
+     * @return successful response
+     */
+    public static ForecastResponse of(List<DailyForecast> days) {
+        return new ForecastResponse(Collections.unmodifiableList(days), null);
+    }
+
+    /**
+     * Builds the response holding the error of the external API.
+     *
+     * @param error array holding the error object of the external API
+     * @return failed response
+     */
+    public static ForecastResponse error(JsonArray error) {
+        return new ForecastResponse(Collections.emptyList(), error);
+    }
+
+    /**
+     * Builds a response from its JSON representation, as returned by the external API.
+     *
+     * @param array array holding the daily forecasts, or the error object
+     * @return response holding the same forecasts (or error)
+     */
+    public static ForecastResponse fromJson(JsonArray array) {
+        if(array.size() == 1 && array.get(0).getAsJsonObject().has("error")) {
+            return error(array);
+        }
+        List<DailyForecast> days = new ArrayList<>();
+        for(JsonElement day: array) {
+            days.add(DailyForecast.fromJson(day.getAsJsonObject()));
+        }
+        return of(days);
+    }
+
+    /**
+     * Determines if the external API replied with an error.
+     *
+     * @return True if the response holds the error object instead of the forecasts
+     */
+    public boolean isError() {
+        return this.error != null;
+    }
+
+    /**
+     * Getter method for the forecasts of the requested days.
+     * @return unmodifiable list of the forecasts, in chronological order (empty if the request failed)
+     */
+    public List<DailyForecast> getDays() {
+        return this.days;
+    }
+
+    /**
+     * Builds the JSON representation of the response.
+     *
+     * @return array of JSON objects containing the daily forecasts, or the error object
+     */
+    public JsonArray toJson() {
+        if(this.isError()) {
+            return this.error;
+        }
+        JsonArray requestedData = new JsonArray();
+        for(DailyForecast day: this.days) {
+            requestedData.add(day.toJson());
+        }
+        return requestedData;
+    }
+
+    /**
+     * Assembles the encoded JSON representation of the response, equal to the UTF-8 bytes of toJson().toString().
+     *
+     * @return UTF-8 bytes of the JSON array
+     */
+    public byte[] toJsonBytes() {
+        if(this.isError()) {
+            return this.error.toString().getBytes(StandardCharsets.UTF_8);
+        }
+        byte[][] encoded = new byte[this.days.size()][];
+        int length = 2 + Math.max(0, this.days.size() - 1);
+        for(int i=0; i<encoded.length; i++) {
+            encoded[i] = this.days.get(i).toJsonBytes();
+            length += encoded[i].length;
+        }
+        byte[] body = new byte[length];
+        int offset = 0;
+        body[offset++] = '[';
+        for(byte[] bytes: encoded) {
+            if(offset > 1) {
+                body[offset++] = ',';
+            }
+            System.arraycopy(bytes, 0, body, offset, bytes.length);
+            offset += bytes.length;
+        }
+        body[offset] = ']';
+        return body;
+    }
+
+    /**
+     * Builds the strong entity tag of the response, from the hashes of its days.
+     *
+     * @return quoted entity tag (e.g. "\"5f2a...\""), null if the request failed
+     */
+    public String getETag() {
+        if(this.isError()) {
+            return null;
+        }
+        long hash = 0xcbf29ce484222325L;
+        for(DailyForecast day: this.days) {
+            hash = (hash ^ day.contentHash()) * 0x100000001b3L;
+        }
+        hash ^= this.days.size();
+        return "\"" + Long.toHexString(hash) + "\"";
+    }
+}
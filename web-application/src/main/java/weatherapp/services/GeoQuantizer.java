@@ -0,0 +1,78 @@
+package weatherapp.services;
+
+import java.math.BigDecimal;
+
+/**
+ * Geographic Quantizer: snaps coordinates to a grid, so that requests for nearby locations
+ * share the same cached forecasts (the forecast of the center of the grid cell).
+ *
+ * The grid is uniform in degrees; a size of 0.01 corresponds to cells of about 1.1 km of latitude
+ * (and less of longitude away from the equator).
+ *
+ * @author Filipe Pires
+ */
+public class GeoQuantizer {
+
+    // Attributes
+
+    /**
+     * Size (in degrees) of the cells of the grid (non-positive if coordinates are not snapped).
+     */
+    private final double gridSize;
+
+    // Constructors
+
+    /**
+     * GeoQuantizer main constructor.
+     *
+     * @param gridSize size (in degrees) of the cells of the grid, non-positive to disable snapping
+     */
+    public GeoQuantizer(double gridSize) {
+        this.gridSize = gridSize;
+    }
+
+    // Methods
+
+    /**
+     * Snaps the coordinates of a location to the center of its grid cell.
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @return String containing the snapped coordinates, separated by ',' (or the original String if they could not be parsed)
+     */
+    public String quantize(String coords) {
+        if(this.gridSize <= 0) {
+            return coords;
+        }
+        int separator = coords.indexOf(',');
+        if(separator < 0) {
+            return coords;
+        }
+        try {
+            double latitude = Double.parseDouble(coords.substring(0, separator));
+            double longitude = Double.parseDouble(coords.substring(separator + 1));
+            return this.snap(latitude) + "," + this.snap(longitude);
+        } catch (NumberFormatException ex) {
+            return coords;
+        }
+    }
+
+    /**
+     * Getter method for the size of the cells of the grid.
+     * @return size (in degrees) of the cells, non-positive if snapping is disabled
+     */
+    public double getGridSize() {
+        return this.gridSize;
+    }
+
+    /**
+     * Internal auxiliary method used to snap a coordinate to the grid,
+     * written without floating point noise (e.g. "40.64" instead of "40.640000000000001").
+     *
+     * @param coordinate latitude or longitude
+     * @return the snapped coordinate as a String
+     */
+    private String snap(double coordinate) {
+        BigDecimal cells = BigDecimal.valueOf(Math.round(coordinate / this.gridSize));
+        return cells.multiply(BigDecimal.valueOf(this.gridSize)).stripTrailingZeros().toPlainString();
+    }
+}
@@ -0,0 +1,209 @@
+package weatherapp.services;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Heavy Hitters: approximate counter of the most requested locations, in bounded memory
+ * (Space-Saving algorithm, by Metwally, Agrawal and El Abbadi).
+ *
+ * At most a fixed number of locations are counted; when a new location arrives and every counter is taken,
+ * it replaces the location with the lowest count, inheriting that count (its maximum overestimation).
+ * Every location requested more often than the total number of requests divided by the capacity is guaranteed to be counted.
+ *
+ * Requests are first counted without locking, in a bounded buffer of striped counters (one per location),
+ * which is merged into the sketch periodically (e.g. by the CacheWarmer) and before the counts are read;
+ * so the search for the lowest count never runs on the threads serving the requests.
+ * Requests for new locations arriving while the buffer is full are not counted (as if sampled out).
+ *
+ * Counts can be halved (decayed), so that the locations popular in the past give way to the ones popular now.
+ *
+ * A sketch with no capacity is disabled: it counts nothing.
+ *
+ * @author Filipe Pires
+ */
+public class HeavyHitters {
+
+    // Attributes
+
+    /**
+     * Minimum number of locations buffered between merges.
+     */
+    private static final int MIN_PENDING = 1024;
+
+    /**
+     * Maximum number of locations counted.
+     */
+    private final int capacity;
+
+    /**
+     * Maximum number of locations buffered between merges.
+     */
+    private final int maxPending;
+
+    /**
+     * Counters of the locations: estimated count and maximum overestimation, by location.
+     */
+    private final Map<String, long[]> counters = new HashMap<>();
+
+    /**
+     * Requests counted since the last merge, by location.
+     */
+    private final ConcurrentMap<String, LongAdder> pending = new ConcurrentHashMap<>();
+
+    /**
+     * Number of requests not counted because the buffer was full.
+     */
+    private final LongAdder dropped = new LongAdder();
+
+    // Constructors
+
+    /**
+     * HeavyHitters main constructor.
+     *
+     * @param capacity maximum number of locations counted, non-positive to disable the sketch
+     */
+    public HeavyHitters(int capacity) {
+        this.capacity = capacity;
+        this.maxPending = Math.max(MIN_PENDING, 4 * Math.max(0, capacity));
+    }
+
+    // Methods
+
+    /**
+     * Counts a request for a location, without locking.
+     *
+     * @param location identifier of the location
+     */
+    public void offer(String location) {
+        if (!this.isEnabled()) {
+            return;
+        }
+        LongAdder counter = this.pending.get(location);
+        if (counter == null) {
+            if (this.pending.size() >= this.maxPending) {
+                this.dropped.increment();
+                return;
+            }
+            counter = this.pending.computeIfAbsent(location, k -> new LongAdder());
+        }
+        counter.increment();
+    }
+
+    /**
+     * Adds the requests counted since the last merge to the sketch.
+     * Locations not requested since the last merge leave the buffer.
+     */
+    public synchronized void merge() {
+        Iterator<Map.Entry<String, LongAdder>> it = this.pending.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, LongAdder> entry = it.next();
+            long requests = entry.getValue().sumThenReset();
+            if (requests == 0) {
+                it.remove();
+            } else {
+                this.add(entry.getKey(), requests);
+            }
+        }
+    }
+
+    /**
+     * Returns the most requested locations.
+     *
+     * @param n maximum number of locations returned
+     * @return list of the locations with the highest counts, from the most requested one
+     */
+    public synchronized List<String> top(int n) {
+        this.merge();
+        List<Map.Entry<String, long[]>> entries = new ArrayList<>(this.counters.entrySet());
+        entries.sort((a, b) -> Long.compare(b.getValue()[0], a.getValue()[0]));
+        List<String> top = new ArrayList<>();
+        for (int i = 0; i < Math.min(n, entries.size()); i++) {
+            top.add(entries.get(i).getKey());
+        }
+        return top;
+    }
+
+    /**
+     * Returns the estimated number of requests for a location (an upper bound of the actual number).
+     *
+     * @param location identifier of the location
+     * @return long value holding the estimated count, 0 if the location is not counted
+     */
+    public synchronized long count(String location) {
+        this.merge();
+        long[] counter = this.counters.get(location);
+        return counter == null ? 0 : counter[0];
+    }
+
+    /**
+     * Halves every count, dropping the locations whose count reaches 0.
+     */
+    public synchronized void decay() {
+        this.merge();
+        Iterator<long[]> it = this.counters.values().iterator();
+        while (it.hasNext()) {
+            long[] counter = it.next();
+            counter[0] /= 2;
+            counter[1] /= 2;
+            if (counter[0] == 0) {
+                it.remove();
+            }
+        }
+    }
+
+    /**
+     * Returns the number of locations counted.
+     *
+     * @return integer value holding the number of counters in use
+     */
+    public synchronized int size() {
+        this.merge();
+        return this.counters.size();
+    }
+
+    /**
+     * Returns the number of requests not counted because too many new locations arrived between merges.
+     *
+     * @return long value holding the number of requests dropped
+     */
+    public long getDropped() {
+        return this.dropped.sum();
+    }
+
+    /**
+     * Determines if the sketch has any capacity.
+     *
+     * @return True if locations are counted, False if the sketch is disabled
+     */
+    public boolean isEnabled() {
+        return this.capacity > 0;
+    }
+
+    /**
+     * Internal method used to add a number of requests for a location to the sketch.
+     *
+     * @param location identifier of the location
+     * @param requests number of requests
+     */
+    private void add(String location, long requests) {
+        long[] counter = this.counters.get(location);
+        if (counter != null) {
+            counter[0] += requests;
+        } else if (this.counters.size() < this.capacity) {
+            this.counters.put(location, new long[]{requests, 0});
+        } else {
+            Map.Entry<String, long[]> min = null;
+            for (Map.Entry<String, long[]> entry: this.counters.entrySet()) {
+                if (min == null || entry.getValue()[0] < min.getValue()[0]) {
+                    min = entry;
+                }
+            }
+            long minCount = min.getValue()[0];
+            this.counters.remove(min.getKey());
+            this.counters.put(location, new long[]{minCount + requests, minCount});
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package weatherapp.services;
+
+/**
+ * Refresh Policy: decides when a cached forecast should be requested again to the external API,
+ * by the time passed since it was retrieved (its soft time-to-live).
+ *
+ * Stale forecasts are still returned to the callers while they are refreshed in the background
+ * (stale-while-revalidate), and forecasts read often, shortly before becoming stale, are refreshed ahead of time,
+ * so that popular locations never wait for the external API
+ * (without requesting again the forecasts of every location read once in the refresh-ahead window).
+ *
+ * @author Filipe Pires
+ */
+public class RefreshPolicy {
+
+    // Attributes
+
+    /**
+     * Time (in milisseconds) after which a forecast is stale (non-positive if forecasts are never refreshed).
+     */
+    private final long refreshAfter;
+
+    /**
+     * Time (in milisseconds) before becoming stale during which a forecast read is refreshed.
+     */
+    private final long refreshAhead;
+
+    /**
+     * Minimum number of reads since it was retrieved for a forecast to be refreshed ahead of time.
+     */
+    private final int minReads;
+
+    // Constructors
+
+    /**
+     * RefreshPolicy main constructor.
+     *
+     * @param refreshAfter time (in seconds) after which a forecast is stale, non-positive to never refresh forecasts
+     * @param refreshAhead time (in seconds) before becoming stale during which a forecast read is refreshed
+     */
+    public RefreshPolicy(long refreshAfter, long refreshAhead) {
+        this(refreshAfter, refreshAhead, 1);
+    }
+
+    /**
+     * RefreshPolicy constructor, refreshing ahead of time only the forecasts read often.
+     *
+     * @param refreshAfter time (in seconds) after which a forecast is stale, non-positive to never refresh forecasts
+     * @param refreshAhead time (in seconds) before becoming stale during which a forecast read is refreshed
+     * @param minReads minimum number of reads since it was retrieved for a forecast to be refreshed ahead of time
+     */
+    public RefreshPolicy(long refreshAfter, long refreshAhead, int minReads) {
+        this.refreshAfter = Math.max(0, refreshAfter) * 1000;
+        this.refreshAhead = Math.max(0, Math.min(refreshAhead * 1000, this.refreshAfter));
+        this.minReads = Math.max(1, minReads);
+    }
+
+    // Methods
+
+    /**
+     * Determines if a forecast is past its soft time-to-live.
+     *
+     * @param fetchedAt time (in milisseconds) at which the forecast was retrieved
+     * @param now current time in milisseconds
+     * @return True if the forecast is stale
+     */
+    public boolean isStale(long fetchedAt, long now) {
+        return this.isEnabled() && now - fetchedAt >= this.refreshAfter;
+    }
+
+    /**
+     * Determines if a forecast being read should be refreshed, either because it is stale
+     * or because it is about to be and it was read often enough since it was retrieved.
+     *
+     * @param fetchedAt time (in milisseconds) at which the forecast was retrieved
+     * @param reads number of times the forecast was read since it was retrieved (including this one)
+     * @param now current time in milisseconds
+     * @return True if the forecast should be requested again
+     */
+    public boolean isDue(long fetchedAt, int reads, long now) {
+        return this.isStale(fetchedAt, now)
+                || (this.isEnabled() && reads >= this.minReads && now - fetchedAt >= this.refreshAfter - this.refreshAhead);
+    }
+
+    /**
+     * Determines if forecasts are ever refreshed.
+     *
+     * @return True if forecasts have a soft time-to-live
+     */
+    public boolean isEnabled() {
+        return this.refreshAfter > 0;
+    }
+
+    /**
+     * Getter method for the soft time-to-live.
+     * @return time (in seconds) after which a forecast is stale
+     */
+    public long getRefreshAfter() {
+        return this.refreshAfter / 1000;
+    }
+
+    /**
+     * Getter method for the refresh-ahead window.
+     * @return time (in seconds) before becoming stale during which a forecast read is refreshed
+     */
+    public long getRefreshAhead() {
+        return this.refreshAhead / 1000;
+    }
+
+    /**
+     * Getter method for the minimum number of reads of the forecasts refreshed ahead of time.
+     * @return number of reads since it was retrieved needed for a forecast to be refreshed ahead of time
+     */
+    public int getMinReads() {
+        return this.minReads;
+    }
+}
@@ -0,0 +1,137 @@
+package weatherapp.services;
+
+import java.time.LocalDate;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Upstream Call Planner: chooses the cheapest set of requests to the external API DarkSky
+ * needed to obtain a set of days missing from cache.
+ *
+ * A forecast request (without time) returns the forecasts of the current day and the following 7 days,
+ * so every missing day in that range is covered by a single forecast request;
+ * only the days outside of it (past days, mostly) require a time-machine request each.
+ *
+ * @author Filipe Pires
+ */
+public class UpstreamPlanner {
+
+    // Attributes
+
+    /**
+     * Number of days (starting today) returned by a forecast request to the external API.
+     */
+    public static final int FORECAST_DAYS = 8;
+
+    /**
+     * Number of requests planned since the application started.
+     */
+    private final AtomicLong plannedCalls = new AtomicLong();
+
+    /**
+     * Number of requests saved since the application started,
+     * compared with requesting the missing days according to the type of the request.
+     */
+    private final AtomicLong savedCalls = new AtomicLong();
+
+    /**
+     * Request to be sent to the external API.
+     */
+    public static class UpstreamCall {
+        /**
+         * Day of the first forecast returned by the request.
+         */
+        private final LocalDate firstDay;
+        /**
+         * True for a forecast request, False for a time-machine request for the first day only.
+         */
+        private final boolean forecast;
+
+        /**
+         * Default constructor.
+         *
+         * @param firstDay day of the first forecast returned by the request
+         * @param forecast True for a forecast request, False for a time-machine request
+         */
+        public UpstreamCall(LocalDate firstDay, boolean forecast) {
+            this.firstDay = firstDay;
+            this.forecast = forecast;
+        }
+
+        /**
+         * Getter method for the day of the first forecast returned by the request.
+         * @return day of the first forecast
+         */
+        public LocalDate getFirstDay() {
+            return firstDay;
+        }
+
+        /**
+         * Getter method for the kind of request.
+         * @return True for a forecast request, False for a time-machine request
+         */
+        public boolean isForecast() {
+            return forecast;
+        }
+    }
+
+    // Methods
+
+    /**
+     * Plans the requests to the external API needed to obtain the missing days.
+     *
+     * @param missing days missing from cache
+     * @param today current day
+     * @param naiveCalls number of requests that would be sent without planning (used for statistics)
+     * @return list of requests covering every missing day, time-machine requests first
+     */
+    public List<UpstreamCall> plan(Collection<LocalDate> missing, LocalDate today, int naiveCalls) {
+        List<UpstreamCall> calls = this.planRefresh(missing, today);
+        this.plannedCalls.addAndGet(calls.size());
+        this.savedCalls.addAndGet(Math.max(0, naiveCalls - calls.size()));
+        return calls;
+    }
+
+    /**
+     * Plans the requests to the external API needed to refresh cached days in the background,
+     * without counting them in the statistics (which measure the requests caused by cache misses).
+     *
+     * @param due days to be refreshed
+     * @param today current day
+     * @return list of requests covering every day, time-machine requests first
+     */
+    public List<UpstreamCall> planRefresh(Collection<LocalDate> due, LocalDate today) {
+        List<UpstreamCall> calls = new ArrayList<>();
+        LocalDate lastForecastDay = today.plusDays(FORECAST_DAYS - 1);
+        boolean forecast = false;
+        for(LocalDate day: new TreeSet<>(due)) {
+            if(day.isBefore(today) || day.isAfter(lastForecastDay)) {
+                calls.add(new UpstreamCall(day, false));
+            } else {
+                forecast = true;
+            }
+        }
+        if(forecast) {
+            calls.add(new UpstreamCall(today, true));
+        }
+        return calls;
+    }
+
+    /**
+     * Returns the number of requests planned since the application started.
+     *
+     * @return long value holding the number of planned requests
+     */
+    public long getPlannedCalls() {
+        return this.plannedCalls.get();
+    }
+
+    /**
+     * Returns the number of requests saved by planning since the application started.
+     *
+     * @return long value holding the number of saved requests
+     */
+    public long getSavedCalls() {
+        return this.savedCalls.get();
+    }
+}
@@ -0,0 +1,193 @@
+package weatherapp.services;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Upstream Pool: threads sending the requests to the external API caused by one type of request,
+ * so that a burst of requests of one type (e.g. the days of many periods) never queues ahead of the others.
+ *
+ * Besides the requests being sent, only a bounded number of them wait in the queue of the pool:
+ * a place in the pool is taken before asking the CircuitBreaker for permission.
+ * The requests are rejected by the Bulkhead of their type, not here: the places are sized to hold every request
+ * sent by the requests the bulkhead admits, and a request finding no place (e.g. one of the many locations of a batch)
+ * waits for one, which is given back as soon as a request being sent completes (within the timeouts of the client).
+ * Only the refreshes, sent in the background, are skipped instead of waiting.
+ *
+ * A pool with no threads is disabled: requests are sent from the calling thread, without bounds.
+ *
+ * @author Filipe Pires
+ */
+public class UpstreamPool {
+
+    // Attributes
+
+    /**
+     * Name of the type of requests served (e.g. 'period').
+     */
+    private final String name;
+
+    /**
+     * Threads sending the requests (null if the pool is disabled).
+     */
+    private final ExecutorService executor;
+
+    /**
+     * Places in the pool: requests being sent or queued (null if the pool is disabled).
+     */
+    private final Semaphore places;
+
+    /**
+     * Number of requests waiting for a place.
+     */
+    private final AtomicInteger waiting = new AtomicInteger();
+
+    /**
+     * Number of requests skipped for lack of a place.
+     */
+    private final LongAdder rejected = new LongAdder();
+
+    // Constructors
+
+    /**
+     * UpstreamPool main constructor.
+     *
+     * @param name name of the type of requests served
+     * @param maxConcurrency maximum number of requests sent at the same time, non-positive to disable the pool
+     * @param maxQueued maximum number of requests waiting for a thread
+     */
+    public UpstreamPool(String name, int maxConcurrency, int maxQueued) {
+        this.name = name;
+        if(maxConcurrency > 0) {
+            AtomicInteger count = new AtomicInteger();
+            this.executor = Executors.newFixedThreadPool(maxConcurrency, r -> {
+                Thread t = new Thread(r, "darksky-" + name + "-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            this.places = new Semaphore(maxConcurrency + Math.max(0, maxQueued));
+        } else {
+            this.executor = null;
+            this.places = null;
+        }
+    }
+
+    // Methods
+
+    /**
+     * Takes a place in the pool for a request, waiting for one if needed.
+     * Every place taken must be used by execute or given back with release.
+     *
+     * @return True if the request may be sent, False if the thread was interrupted while waiting
+     */
+    public boolean acquire() {
+        if(this.places == null || this.places.tryAcquire()) {
+            return true;
+        }
+        this.waiting.incrementAndGet();
+        try {
+            this.places.acquire();
+            return true;
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return false;
+        } finally {
+            this.waiting.decrementAndGet();
+        }
+    }
+
+    /**
+     * Takes a place in the pool for a request, without waiting (e.g. for a refresh).
+     * Every place taken must be used by execute or given back with release.
+     *
+     * @return True if the request may be sent, False if it is skipped
+     */
+    public boolean tryAcquire() {
+        if(this.places == null || this.places.tryAcquire()) {
+            return true;
+        }
+        this.rejected.increment();
+        return false;
+    }
+
+    /**
+     * Gives back a place taken for a request that is not sent.
+     */
+    public void release() {
+        if(this.places != null) {
+            this.places.release();
+        }
+    }
+
+    /**
+     * Sends a request in a place taken with acquire or tryAcquire, giving the place back once it is done.
+     *
+     * @param request task sending the request
+     */
+    public void execute(Runnable request) {
+        if(this.executor == null) {
+            request.run();
+            return;
+        }
+        this.executor.execute(() -> {
+            try {
+                request.run();
+            } finally {
+                this.places.release();
+            }
+        });
+    }
+
+    /**
+     * Stops the threads of the pool.
+     */
+    public void shutdown() {
+        if(this.executor != null) {
+            this.executor.shutdown();
+        }
+    }
+
+    /**
+     * Determines if the requests are bounded.
+     *
+     * @return True if the requests are sent by the threads of the pool
+     */
+    public boolean isEnabled() {
+        return this.executor != null;
+    }
+
+    /**
+     * Getter method for the name of the type of requests served.
+     * @return name of the type of requests
+     */
+    public String getName() {
+        return this.name;
+    }
+
+    /**
+     * Getter method for the number of free places.
+     * @return number of requests that may still be sent or queued (0 if the pool is disabled)
+     */
+    public int getAvailable() {
+        return this.places != null ? this.places.availablePermits() : 0;
+    }
+
+    /**
+     * Getter method for the number of requests waiting.
+     * @return number of requests waiting for a place
+     */
+    public int getWaiting() {
+        return this.waiting.get();
+    }
+
+    /**
+     * Getter method for the number of skipped requests.
+     * @return number of requests skipped for lack of a place since the start
+     */
+    public long getRejected() {
+        return this.rejected.sum();
+    }
+}
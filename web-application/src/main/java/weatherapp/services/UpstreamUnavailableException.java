@@ -0,0 +1,45 @@
+package weatherapp.services;
+
+/**
+ * Exception thrown when the forecasts cannot be retrieved because the external API is not being called
+ * (its circuit is open) and no forecast of the requested days is known.
+ *
+ * @author Filipe Pires
+ */
+public class UpstreamUnavailableException extends RuntimeException {
+
+    // Attributes
+
+    /**
+     * Version of the serialized form of the exception.
+     */
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * Time (in milisseconds) after which the request may succeed.
+     */
+    private final long retryAfter;
+
+    // Constructors
+
+    /**
+     * UpstreamUnavailableException main constructor.
+     *
+     * @param message description of the cause
+     * @param retryAfter time (in milisseconds) after which the request may succeed
+     */
+    public UpstreamUnavailableException(String message, long retryAfter) {
+        super(message);
+        this.retryAfter = retryAfter;
+    }
+
+    // Methods
+
+    /**
+     * Getter method for the time after which the request may succeed.
+     * @return time (in seconds, rounded up) after which the request may succeed
+     */
+    public long getRetryAfterSeconds() {
+        return (this.retryAfter + 999) / 1000;
+    }
+}
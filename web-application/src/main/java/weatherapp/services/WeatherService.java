@@ -1,54 +1,228 @@
 package weatherapp.services;
 
+import weatherapp.cache.DailyForecast;
+import weatherapp.cache.ForecastCodec;
 import weatherapp.cache.LocalCache;
+import weatherapp.cache.OffHeapStore;
 import com.google.gson.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import java.time.*;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BiConsumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.*;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpStatusCodeException;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
 
 /**
  * Weather Forecast Provider: serves controller to respond to the API requests.
- * 
+ *
+ * Forecasts are cached per location and day (key "latitude,longitude,yyyy-MM-dd"),
+ * in their compact representation (converted to JSON only when building the responses),
+ * with an optional second tier outside of the heap for the days evicted or expired from the memory cache
+ * (promoted back to it when requested again),
+ * with the coordinates snapped to a grid by the GeoQuantizer,
+ * so that every type of request is assembled from the same daily entries
+ * and only the days missing from cache are requested to the external API,
+ * with the requests chosen by the UpstreamPlanner.
+ * Cached forecasts of the current and future days are refreshed in the background once the RefreshPolicy
+ * finds them stale (or about to be, if read often), while the cached forecast is still returned to the callers.
+ * The locations of the requests for current and upcoming days are counted by the HeavyHitters,
+ * so that the CacheWarmer keeps the most requested ones in cache.
+ * Batches of locations are served by starting every location before waiting for any of them,
+ * so that their missing days are requested to the external API at the same time.
+ * Requests to the external API are sent by the UpstreamPool of the type of request causing them
+ * (so that a burst of one type never queues ahead of the others; the refreshes are only sent if it has a free place)
+ * and timed by type and outcome in the MeterRegistry.
+ * While the external API is failing, the CircuitBreaker stops the requests to it, and requests whose days are missing
+ * from cache are served the last known forecasts of those days (even if expired), when known.
+ * Days are calendar days in the time zone of the location, learned from the responses of the external API
+ * (the time zone of the server is used until then, and to parse the requested dates of a period).
+ *
  * @author Filipe Pires
  */
 @Service
 public class WeatherService {
-    
+
     // Attributes
-    
+
     /**
      * Used to interact with the memory cache
      */
     @Autowired
-    private LocalCache<String, JsonObject> localCache;
-    
+    private LocalCache<String, DailyForecast> localCache;
+
     /**
      * Used to send requests to the external API DarkSky
      */
     @Autowired
     private ExternalService darkSkyService;
+
+    /**
+     * Second tier of the cache, holding the days evicted or expired from the memory cache (disabled if not configured)
+     */
+    @Autowired(required = false)
+    private OffHeapStore<DailyForecast> offHeapStore = new OffHeapStore<>(new ForecastCodec(), 0, 0, 0);
+
+    /**
+     * Used to send the requests to the external API DarkSky caused by 'now' requests (sent from the caller thread if not configured)
+     */
+    @Autowired(required = false)
+    @Qualifier("nowUpstreamPool")
+    private UpstreamPool nowUpstreamPool = new UpstreamPool("now", 0, 0);
+
+    /**
+     * Used to send the requests to the external API DarkSky caused by 'recent' requests (sent from the caller thread if not configured)
+     */
+    @Autowired(required = false)
+    @Qualifier("recentUpstreamPool")
+    private UpstreamPool recentUpstreamPool = new UpstreamPool("recent", 0, 0);
+
+    /**
+     * Used to send the requests to the external API DarkSky caused by 'period' requests (sent from the caller thread if not configured)
+     */
+    @Autowired(required = false)
+    @Qualifier("periodUpstreamPool")
+    private UpstreamPool periodUpstreamPool = new UpstreamPool("period", 0, 0);
+    
+    /**
+     * Used to choose the requests sent to the external API DarkSky
+     */
+    @Autowired(required = false)
+    private UpstreamPlanner upstreamPlanner = new UpstreamPlanner();
+    
+    /**
+     * Used to snap the requested coordinates, so that nearby locations share the cached forecasts
+     */
+    @Autowired(required = false)
+    private GeoQuantizer geoQuantizer = new GeoQuantizer(0);
+    
+    /**
+     * Used to decide when the cached forecasts are refreshed (never, if not configured)
+     */
+    @Autowired(required = false)
+    private RefreshPolicy refreshPolicy = new RefreshPolicy(0, 0);
+    
+    /**
+     * Used to count the most requested locations (counts nothing if not configured)
+     */
+    @Autowired(required = false)
+    private HeavyHitters popularity = new HeavyHitters(0);
     
+    /**
+     * Used to record the latency and outcome of the requests to the external API (records nothing if not configured)
+     */
+    @Autowired(required = false)
+    private MeterRegistry meterRegistry = new CompositeMeterRegistry();
+    
+    /**
+     * Used to stop the requests to the external API while it is failing (never stops them if not configured)
+     */
+    @Autowired(required = false)
+    private CircuitBreaker circuitBreaker = new CircuitBreaker(0, 0, 0, 0, 0);
+    
+    /**
+     * Last forecast retrieved of every day, kept after it expires from cache to be served when the external API fails
+     * (up to 10000 days, each for a day since last read, if not configured)
+     */
+    @Autowired(required = false)
+    @Qualifier("lastKnownForecasts")
+    private LocalCache<String, DailyForecast> lastKnown = new LocalCache<>(86400, 60, 10000);
+
+    /**
+     * Base URL of the forecasts of the external API DarkSky (e.g. a local stand-in, for load tests)
+     */
+    @Value("${weatherapp.upstream.base-url:https://api.darksky.net/forecast}")
+    private String darkSkyUrl = "https://api.darksky.net/forecast";
+
     /**
      * Internal private key used for the HTTP requests to the external API DarkSky
      */
     private String darkSkyKey = "fcaa01e2ece206bf84f403198e2d85a5";
+
+    /**
+     * Requests to the external API in progress, by path;
+     * concurrent misses for the same days wait for the same request instead of sending their own.
+     */
+    private final ConcurrentMap<String, CompletableFuture<ForecastResponse>> inFlight = new ConcurrentHashMap<>();
+
+    /**
+     * Time zone in which the days of the forecasts are defined
+     */
+    private final ZoneId zone = ZoneId.systemDefault();
+    
+    /**
+     * Time zones of the locations, as given by the external API along with their forecasts (up to 100000 locations)
+     */
+    private final LocalCache<String, ZoneId> zones = new LocalCache<>(86400, 60, 100000);
+    
+    /**
+     * Number of days found in cache for requests whose coordinates were moved by the GeoQuantizer
+     */
+    private final LongAdder snappedHits = new LongAdder();
     
+    /**
+     * Number of days returned from cache after their soft time-to-live, while being refreshed
+     */
+    private final LongAdder staleHits = new LongAdder();
+    
+    /**
+     * Number of days refreshed ahead of their soft time-to-live
+     */
+    private final LongAdder refreshAheads = new LongAdder();
+    
+    /**
+     * Number of days served from the last known forecasts because the external API failed
+     */
+    private final LongAdder fallbackDays = new LongAdder();
+
     // Methods
 
     /**
      * Inserts new entry on the memory cache.
-     * 
+     *
      * @param key identifier of the new entry
      * @param value data to be cached
      */
-    private void store(String key, JsonObject value) {
+    private void store(String key, DailyForecast value) {
         this.localCache.put(key, value);
     }
-    
+
+    /**
+     * Internal method used to find an entry in cache, in the memory cache or else in the second tier,
+     * from where it is promoted back to the memory cache.
+     *
+     * @param key identifier of the entry
+     * @return cached forecast, null if absent from both tiers
+     */
+    private DailyForecast lookup(String key) {
+        DailyForecast cachedObject = this.localCache.get(key);
+        if(cachedObject == null && this.offHeapStore.isEnabled()) {
+            cachedObject = this.offHeapStore.get(key);
+            if(cachedObject != null) {
+                this.offHeapStore.remove(key);
+                this.store(key, cachedObject);
+            }
+        }
+        return cachedObject;
+    }
+
     /**
      * Internal method used to communicate with the external API.
-     * 
+     *
      * @param path String holding the url path for the HTTP request to the external API
      * @param headers HTTP headers to be used in the request
      * @return HTTP response of the external API containing the weather forecasts for the intended time and location
@@ -56,97 +230,653 @@ public class WeatherService {
     private JsonArray httpRequest(String path, HttpHeaders headers) {
         return this.darkSkyService.getWeatherForecast(path, headers);
     }
-    
+
     /**
      * Provides weather predictions for 3 types of requests:
      * - current day's forecast;
      * - next days' forecasts (with a maximum time distance of 7 days);
      * - daily forecasts of a given period of time (including past, present and future).
-     * 
+     *
      * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
      * @param type type of the desired forecast ('now', 'recent' or 'period')
      * @param options parameters used in some types of requests
      * @return array of JSON objects containing the weather forecasts for the intended time and location
      */
     public JsonArray get(String coords, String type, Long[] options) {
+        return this.getEncoded(coords, type, options).toJson();
+    }
+
+    /**
+     * Provides weather predictions for the same types of requests as get, 
+     * in a response assembled from the compact days kept in cache and identified by an entity tag.
+     *
+     * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
+     * @param type type of the desired forecast ('now', 'recent' or 'period')
+     * @param options parameters used in some types of requests
+     * @return response containing the weather forecasts for the intended time and location (or the error)
+     */
+    public ForecastResponse getEncoded(String coords, String type, Long[] options) {
+        return this.await(this.fetch(coords, type, options, false, true));
+    }
+
+    /**
+     * Provides weather predictions for the same types of requests as get, without blocking the calling thread:
+     * cache lookups are done immediately and the missing days are requested with the non-blocking client.
+     *
+     * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
+     * @param type type of the desired forecast ('now', 'recent' or 'period')
+     * @param options parameters used in some types of requests
+     * @return asynchronous array of JSON objects containing the weather forecasts for the intended time and location
+     */
+    public CompletableFuture<JsonArray> getAsync(String coords, String type, Long[] options) {
+        return this.fetch(coords, type, options, true, true).thenApply(ForecastResponse::toJson);
+    }
+
+    /**
+     * Provides weather predictions of the same type for many locations at once:
+     * the cached days of every location are resolved immediately, and the missing ones
+     * are requested to the external API concurrently, before waiting for any of them
+     * (beyond the places of the upstream pool of the type, each location waits for a place before being requested).
+     * A location that could not be retrieved gets an error response, without failing the others.
+     *
+     * @param locations coordinates of the locations of the desired forecasts, each separated by ','
+     * @param type type of the desired forecasts ('now', 'recent' or 'period')
+     * @param options parameters used in some types of requests
+     * @return responses containing the weather forecasts (or the error) by location, in the order given (without repetitions)
+     */
+    public Map<String, ForecastResponse> getBatch(List<String> locations, String type, Long[] options) {
+        Map<String, CompletableFuture<ForecastResponse>> requests = new LinkedHashMap<>();
+        for(String coords: locations) {
+            if(!requests.containsKey(coords)) {
+                requests.put(coords, this.fetch(coords, type, options, false, true));
+            }
+        }
+        Map<String, ForecastResponse> responses = new LinkedHashMap<>();
+        for(Map.Entry<String, CompletableFuture<ForecastResponse>> request: requests.entrySet()) {
+            try {
+                responses.put(request.getKey(), this.await(request.getValue()));
+            } catch (RuntimeException ex) {
+                Logger.getLogger(WeatherService.class.getName()).log(Level.WARNING, "Unable to retrieve the forecasts of " + request.getKey(), ex);
+                JsonObject error = new JsonObject();
+                error.addProperty("error", "-4");
+                error.addProperty("message", "Unable to retrieve forecast");
+                JsonArray array = new JsonArray();
+                array.add(error);
+                responses.put(request.getKey(), ForecastResponse.error(array));
+            }
+        }
+        return responses;
+    }
+
+    /**
+     * Fills (or refreshes) the cache with the upcoming days of a location, as a request for them would,
+     * but without counting it as a request of the location.
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @param days number of upcoming days, starting from today
+     * @return array of JSON objects containing the weather forecasts of the location, or the error message
+     */
+    public JsonArray warm(String coords, long days) {
+        return this.await(this.fetch(coords, "recent", new Long[]{days}, false, false)).toJson();
+    }
+
+    /**
+     * Internal method used to assemble the weather predictions of a request,
+     * from cache and from the external API.
+     *
+     * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
+     * @param type type of the desired forecast ('now', 'recent' or 'period')
+     * @param options parameters used in some types of requests
+     * @param nonBlocking True to request the missing days with the non-blocking client, False to use the upstream pool of the type
+     * @param tracked True to count the request in the popularity of its location
+     * @return asynchronous response containing the weather forecasts for the intended time and location (or the error)
+     */
+    private CompletableFuture<ForecastResponse> fetch(String coords, String type, Long[] options, boolean nonBlocking, boolean tracked) {
+        String location = this.geoQuantizer.quantize(coords);
+        boolean snapped = !location.equals(coords);
+        coords = location;
+        if(tracked && !type.equals("period")) {
+            this.popularity.offer(location);
+        }
         // checking cache
-        JsonArray cache = this.getAll(false); // [{"coords":[{day1},{day2}]},{"coords":[{day1}]},...]
-        JsonObject entryObj;
-        Object cachedObject;
-        String key = coords + "," + type;
+        ZoneId locationZone = this.zones.get(coords); // null until learned from the external api
+        LocalDate today = LocalDate.now(locationZone != null ? locationZone : this.zone);
+        List<LocalDate> days = this.requestedDays(type, options, today);
+        Map<LocalDate, DailyForecast> forecasts = new HashMap<>();
+        List<LocalDate> missing = new ArrayList<>();
+        List<LocalDate> due = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        for(LocalDate day: days) {
+            String key = this.dayKey(coords, day);
+            DailyForecast cachedObject = this.lookup(key);
+            if(cachedObject != null) {
+                forecasts.put(day, cachedObject);
+                if(snapped) { this.snappedHits.increment(); }
+                int reads = tracked ? cachedObject.countRead() : cachedObject.getReads(); // warming does not count
+                if(!day.isBefore(today) && this.refreshPolicy.isDue(cachedObject.getFetchedAt(), reads, now)) { // past days do not change
+                    (this.refreshPolicy.isStale(cachedObject.getFetchedAt(), now) ? this.staleHits : this.refreshAheads).increment();
+                    due.add(day);
+                }
+            } else {
+                missing.add(day);
+            }
+        }
+        if(!due.isEmpty()) {
+            this.refresh(coords, type, due, today, locationZone, nonBlocking);
+        }
+        if(missing.isEmpty()) {
+            return CompletableFuture.completedFuture(this.assemble(days, forecasts));
+        }
+        // requesting the missing days to the external api
+        // time-machine requests are anchored at the requested starting time (or at the start of the day)
+        LocalDate startingDay = days.get(0);
+        long startingTime = type.equals("period") ? options[0] : startingDay.atStartOfDay(this.zone).toEpochSecond();
+        int naiveCalls = type.equals("period") ? missing.size() : 1;
+        Map<LocalDate, CompletableFuture<ForecastResponse>> requests = new LinkedHashMap<>(); // by first day in the response
+        for(UpstreamPlanner.UpstreamCall call: this.upstreamPlanner.plan(missing, today, naiveCalls)) {
+            String callPath = this.callPath(coords, call, startingDay, startingTime, locationZone);
+            requests.put(call.getFirstDay(), this.request(coords, type, callPath, call.getFirstDay(), nonBlocking, false));
+        }
+        String requestedCoords = coords;
+        return CompletableFuture.allOf(requests.values().toArray(new CompletableFuture<?>[0])).handle((done, failure) -> {
+            ZoneId learnedZone = this.zones.get(requestedCoords);
+            for(Map.Entry<LocalDate, CompletableFuture<ForecastResponse>> request: requests.entrySet()) {
+                if(request.getValue().isCompletedExceptionally()) {
+                    continue; // days looked up in the last known forecasts below
+                }
+                ForecastResponse response = request.getValue().join();
+                if(response.isError()) {
+                    return response;
+                }
+                List<DailyForecast> returnedDays = response.getDays();
+                for(int i=0; i<returnedDays.size(); i++) {
+                    forecasts.putIfAbsent(this.returnedDay(learnedZone, request.getKey(), i, returnedDays.get(i)), returnedDays.get(i));
+                }
+            }
+            if(failure != null && !this.fallBack(location, missing, forecasts)) {
+                throw failure instanceof CompletionException ? (CompletionException) failure : new CompletionException(failure);
+            }
+            if(learnedZone != null && !learnedZone.equals(locationZone) && !type.equals("period")) {
+                // the current day of the location was only known once the external api replied
+                return this.assemble(this.requestedDays(type, options, LocalDate.now(learnedZone)), forecasts);
+            }
+            return this.assemble(days, forecasts);
+        });
+    }
+
+    /**
+     * Internal method used to fill the days that could not be retrieved from the external API
+     * with their last known forecasts, only if all of them are known
+     * (so that a response is never cut short by the failure).
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @param missing days missing from cache, in chronological order
+     * @param forecasts forecasts available, by day (where the last known forecasts are added)
+     * @return True if every missing day is now available
+     */
+    private boolean fallBack(String coords, List<LocalDate> missing, Map<LocalDate, DailyForecast> forecasts) {
+        Map<LocalDate, DailyForecast> known = new HashMap<>();
+        for(LocalDate day: missing) {
+            if(!forecasts.containsKey(day)) {
+                DailyForecast lastForecast = this.lastKnown.get(this.dayKey(coords, day));
+                if(lastForecast == null) {
+                    return false;
+                }
+                known.put(day, lastForecast);
+            }
+        }
+        forecasts.putAll(known);
+        this.fallbackDays.add(known.size());
+        return true;
+    }
+
+    /**
+     * Internal method used to refresh cached days in the background:
+     * the requests are sent without waiting for them, and their responses replace the cached forecasts
+     * (a refresh already in progress for the same path is not sent again, nor one finding the upstream pool full).
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @param type type of the request reading the days ('now', 'recent' or 'period')
+     * @param due days to be refreshed, in chronological order
+     * @param today current day of the location
+     * @param locationZone time zone of the location, null if not known
+     * @param nonBlocking True to send the requests with the non-blocking client, False to use the upstream pool of the type
+     */
+    private void refresh(String coords, String type, List<LocalDate> due, LocalDate today, ZoneId locationZone, boolean nonBlocking) {
+        LocalDate startingDay = due.get(0);
+        long startingTime = startingDay.atStartOfDay(this.zone).toEpochSecond();
+        for(UpstreamPlanner.UpstreamCall call: this.upstreamPlanner.planRefresh(due, today)) {
+            this.request(coords, type, this.callPath(coords, call, startingDay, startingTime, locationZone), call.getFirstDay(), nonBlocking, true);
+        }
+    }
+
+    /**
+     * Internal method used to build the path of a request to the external API.
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @param call request planned by the UpstreamPlanner
+     * @param startingDay first requested day
+     * @param startingTime time (in seconds) at which time-machine requests of the first requested day are anchored
+     * @param locationZone time zone of the location, null if not known
+     * @return String holding the url path for the HTTP request to the external API
+     */
+    private String callPath(String coords, UpstreamPlanner.UpstreamCall call, LocalDate startingDay, long startingTime, ZoneId locationZone) {
+        String path = this.darkSkyUrl + "/" + this.darkSkyKey + "/" + coords;
+        if(!call.isForecast() && locationZone != null) { // anchored at noon of the day in the location, clear of its edges
+            path += "," + call.getFirstDay().atTime(LocalTime.NOON).atZone(locationZone).toEpochSecond();
+        } else if(!call.isForecast()) {
+            path += "," + (startingTime + this.secondsBetween(startingDay, call.getFirstDay()));
+        }
+        return path + "?exclude=currently,minutely,hourly,alerts,flags";
+    }
+
+    /**
+     * Internal method used to assemble the response of a request from the forecasts of its days.
+     *
+     * @param days list of the requested days, in chronological order
+     * @param forecasts forecasts available, by day
+     * @return response containing the forecasts of the requested days, up to the first unavailable one
+     */
+    private ForecastResponse assemble(List<LocalDate> days, Map<LocalDate, DailyForecast> forecasts) {
+        List<DailyForecast> requestedData = new ArrayList<>(days.size());
+        for(LocalDate day: days) {
+            DailyForecast forecast = forecasts.get(day);
+            if(forecast == null) { break; } // beyond the days available in the external api
+            requestedData.add(forecast);
+        }
+        return ForecastResponse.of(requestedData);
+    }
+
+    /**
+     * Internal method used to determine the days covered by a request.
+     *
+     * @param type type of the desired forecast ('now', 'recent' or 'period')
+     * @param options parameters used in some types of requests
+     * @param today current day
+     * @return list of the requested days, in chronological order
+     */
+    private List<LocalDate> requestedDays(String type, Long[] options, LocalDate today) {
+        List<LocalDate> days = new ArrayList<>();
         if(type.equals("recent")) {
-            key += "," + options[0];
+            for(int i=0; i<options[0]; i++) {
+                days.add(today.plusDays(i));
+            }
         } else if(type.equals("period")) {
-            key += "," + options[0] + "," + options[1];
+            LocalDate endingDay = this.dayOf(options[1]);
+            for(LocalDate day = this.dayOf(options[0]); !day.isAfter(endingDay); day = day.plusDays(1)) {
+                days.add(day);
+            }
+        } else { // type.equals("now")
+            days.add(today);
         }
-        for (JsonElement entry: cache) {
-            entryObj = entry.getAsJsonObject();
-            cachedObject = entryObj.get(key);
-            if(cachedObject != null) {
-                return (this.localCache.get(key).getAsJsonObject()).get(key).getAsJsonArray();
+        return days;
+    }
+
+    /**
+     * Internal method used to request data to the external API and store the returned days in cache;
+     * only one request per path is sent at a time, concurrent callers share its result or failure
+     * (whichever client was used to send it).
+     * The latency of every request sent is recorded by the type of the request that caused it and by its outcome,
+     * and in the CircuitBreaker, which fails the request without sending it while open.
+     *
+     * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
+     * @param type type of the request causing this one ('now', 'recent' or 'period')
+     * @param path String holding the url path for the HTTP request to the external API
+     * @param firstDay day of the first forecast returned by the external API
+     * @param nonBlocking True to send the request with the non-blocking client, False to use the upstream pool of its type
+     * @param background True for a refresh, sent only if the upstream pool has a free place, False to wait for one
+     * @return asynchronous response of the external API
+     */
+    private CompletableFuture<ForecastResponse> request(String coords, String type, String path, LocalDate firstDay, boolean nonBlocking, boolean background) {
+        CompletableFuture<ForecastResponse> flight = new CompletableFuture<>();
+        CompletableFuture<ForecastResponse> existing = this.inFlight.putIfAbsent(path, flight);
+        if(existing != null) {
+            return existing;
+        }
+        // a place in the pool is taken first, so that a skipped refresh neither uses a probe nor counts as a failure
+        UpstreamPool pool = this.upstreamPoolOf(type);
+        if(!nonBlocking && !(background ? pool.tryAcquire() : pool.acquire())) {
+            this.failRequest(path, flight, new UpstreamUnavailableException("No place for the " + pool.getName() + " request to the external API", 1000));
+            return flight;
+        }
+        long now = System.currentTimeMillis();
+        long generation = this.circuitBreaker.acquire(now);
+        if(generation < 0) {
+            if(!nonBlocking) {
+                pool.release();
             }
+            this.failRequest(path, flight, new UpstreamUnavailableException("External API unavailable", this.circuitBreaker.getRetryAfter(now)));
+            return flight;
         }
+        Timer.Sample sample = Timer.start(this.meterRegistry);
+        flight.whenComplete((response, ex) -> {
+            long duration = sample.stop(this.upstreamTimer(type, nonBlocking, ex != null ? "exception" : response.isError() ? "error" : "success"));
+            this.circuitBreaker.onResult(generation, ex != null && this.isUpstreamFailure(ex), TimeUnit.NANOSECONDS.toMillis(duration), System.currentTimeMillis());
+        });
         // preparing request headers
         HttpHeaders headers = new HttpHeaders();
         headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
         headers.setContentType(MediaType.APPLICATION_JSON);
-        // preparing request 
-        String path = "https://api.darksky.net/forecast/" + this.darkSkyKey + "/" + coords;
-        String pathExclude = "?exclude=currently,minutely,hourly,alerts,flags";
-        JsonArray httpResponse;
-        JsonArray requestedData = new JsonArray();
-        Long currentTime = System.currentTimeMillis() / 1000;
-        // treating the response
-        if(type.equals("recent")) {
-            path = path + pathExclude;
-            httpResponse = this.httpRequest(path, headers);
-            Long days = options[0];
-            for(int i=0; i<days; i++) {
-                if(httpResponse.size()==i){ break; }
-                requestedData.add(httpResponse.get(i));
+        if(nonBlocking) {
+            this.darkSkyService.getWeatherForecastReactive(path, headers).subscribe(
+                    httpResponse -> this.completeRequest(coords, path, firstDay, flight, httpResponse),
+                    ex -> this.failRequest(path, flight, ex),
+                    () -> this.failRequest(path, flight, new IllegalStateException("Empty response from the external API")));
+        } else {
+            pool.execute(() -> {
+                try {
+                    this.completeRequest(coords, path, firstDay, flight, this.httpRequest(path, headers));
+                } catch (RuntimeException ex) {
+                    this.failRequest(path, flight, ex);
+                }
+            });
+        }
+        return flight;
+    }
+
+    /**
+     * Internal method used to complete a request to the external API,
+     * storing the returned days in cache before releasing the callers waiting for it.
+     *
+     * @param coords String containing the coordinates of the location of the desired forecast, separated by ','
+     * @param path String holding the url path of the request
+     * @param firstDay day of the first forecast returned by the external API
+     * @param flight asynchronous response shared by the callers
+     * @param httpResponse response of the external API
+     */
+    private void completeRequest(String coords, String path, LocalDate firstDay, CompletableFuture<ForecastResponse> flight, JsonArray httpResponse) {
+        try {
+            ZoneId locationZone = this.learnZone(coords, httpResponse);
+            ForecastResponse response = ForecastResponse.fromJson(httpResponse);
+            List<DailyForecast> returnedDays = response.getDays(); // storing data in cache (none if the request failed)
+            for(int i=0; i<returnedDays.size(); i++) {
+                String key = this.dayKey(coords, this.returnedDay(locationZone, firstDay, i, returnedDays.get(i)));
+                this.store(key, returnedDays.get(i));
+                this.lastKnown.put(key, returnedDays.get(i));
+            }
+            flight.complete(response);
+        } catch (RuntimeException ex) {
+            flight.completeExceptionally(ex);
+        } finally {
+            this.inFlight.remove(path, flight);
+        }
+    }
+
+    /**
+     * Internal method used to learn the time zone of a location from a response of the external API,
+     * taking it out of the daily forecasts (where the ExternalService puts it).
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @param httpResponse response of the external API
+     * @return time zone of the location, null if neither given nor known before
+     */
+    private ZoneId learnZone(String coords, JsonArray httpResponse) {
+        ZoneId locationZone = null;
+        for(JsonElement record: httpResponse) {
+            JsonElement timezone = record.isJsonObject() ? record.getAsJsonObject().remove(ExternalService.TIMEZONE) : null;
+            if(timezone != null && locationZone == null) {
+                try {
+                    locationZone = ZoneId.of(timezone.getAsString());
+                } catch (DateTimeException ex) {
+                    Logger.getLogger(WeatherService.class.getName()).log(Level.FINE, "Unknown time zone " + timezone + " of " + coords, ex);
+                }
             }
+        }
+        if(locationZone == null) {
+            return this.zones.get(coords);
+        }
+        this.zones.put(coords, locationZone);
+        return locationZone;
+    }
+
+    /**
+     * Internal auxiliary method used to find the day of a forecast returned by the external API:
+     * the day of the location containing its time, if the time zone of the location is known,
+     * or else its position in the response.
+     *
+     * @param locationZone time zone of the location, null if not known
+     * @param firstDay day of the first forecast expected in the response
+     * @param index position of the forecast in the response
+     * @param forecast forecast returned
+     * @return day of the forecast
+     */
+    private LocalDate returnedDay(ZoneId locationZone, LocalDate firstDay, int index, DailyForecast forecast) {
+        if(locationZone == null || forecast.getTime() < 0) {
+            return firstDay.plusDays(index);
+        }
+        return Instant.ofEpochSecond(forecast.getTime()).atZone(locationZone).toLocalDate();
+    }
+
+    /**
+     * Internal method used to complete a request to the external API that failed (or returned nothing).
+     *
+     * @param path String holding the url path of the request
+     * @param flight asynchronous response shared by the callers
+     * @param ex cause of the failure
+     */
+    private void failRequest(String path, CompletableFuture<ForecastResponse> flight, Throwable ex) {
+        flight.completeExceptionally(ex); // no effect if already completed
+        this.inFlight.remove(path, flight);
+    }
+
+    /**
+     * Internal auxiliary method used to tell the failures of the external API from the rejections of bad requests:
+     * client errors (other than too many requests) mean that the external API is replying.
+     *
+     * @param ex cause of the failure of a request
+     * @return True if the failure counts against the external API in the CircuitBreaker
+     */
+    private boolean isUpstreamFailure(Throwable ex) {
+        HttpStatus status = null;
+        if(ex instanceof HttpStatusCodeException) {
+            status = ((HttpStatusCodeException) ex).getStatusCode();
+        } else if(ex instanceof WebClientResponseException) {
+            status = ((WebClientResponseException) ex).getStatusCode();
+        }
+        return status == null || !status.is4xxClientError() || status == HttpStatus.TOO_MANY_REQUESTS;
+    }
+
+    /**
+     * Internal auxiliary method used to find the pool sending the requests to the external API caused by a type of request.
+     *
+     * @param type type of the request causing the ones sent ('now', 'recent' or 'period')
+     * @return upstream pool of the type
+     */
+    private UpstreamPool upstreamPoolOf(String type) {
+        if(type.equals("recent")) {
+            return this.recentUpstreamPool;
         } else if(type.equals("period")) {
-            Long startingTime = options[0];
-            Long endingTime = options[1];
-            String current_path;
-            while(startingTime <= endingTime) {
-                current_path = path + "," + startingTime + pathExclude;
-                httpResponse = this.httpRequest(current_path, headers);
-                requestedData.add(httpResponse.get(0));
-                startingTime = startingTime + 86400;
+            return this.periodUpstreamPool;
+        }
+        return this.nowUpstreamPool;
+    }
+
+    /**
+     * Internal auxiliary method used to find (or register) the timer of the requests to the external API
+     * with the given tags, publishing a histogram of their latency.
+     *
+     * @param type type of the request causing the ones timed ('now', 'recent' or 'period')
+     * @param nonBlocking True for the requests sent with the non-blocking client
+     * @param outcome outcome of the requests ('success', 'error' if the external API replied with an error, or 'exception')
+     * @return timer of the requests
+     */
+    private Timer upstreamTimer(String type, boolean nonBlocking, String outcome) {
+        return Timer.builder("weatherapp.upstream.requests")
+                .description("Requests sent to the external API")
+                .tags("type", type, "client", nonBlocking ? "reactive" : "blocking", "outcome", outcome)
+                .publishPercentileHistogram()
+                .minimumExpectedValue(Duration.ofMillis(1))
+                .maximumExpectedValue(Duration.ofSeconds(10))
+                .register(this.meterRegistry);
+    }
+
+    /**
+     * Internal auxiliary method used to build the cache key of the forecast of a location in a given day.
+     *
+     * @param coords String containing the coordinates of the location, separated by ','
+     * @param day day of the forecast
+     * @return cache key in the format "latitude,longitude,yyyy-MM-dd"
+     */
+    private String dayKey(String coords, LocalDate day) {
+        return coords + "," + day;
+    }
+
+    /**
+     * Internal auxiliary method used to convert a time in seconds into the day it belongs to.
+     *
+     * @param time time in seconds since the epoch
+     * @return day containing the given time
+     */
+    private LocalDate dayOf(long time) {
+        return Instant.ofEpochSecond(time).atZone(this.zone).toLocalDate();
+    }
+
+    /**
+     * Internal auxiliary method used to calculate the seconds between the start of two days
+     * (taking daylight saving changes into account).
+     *
+     * @param from first day
+     * @param to second day
+     * @return number of seconds between the start of both days
+     */
+    private long secondsBetween(LocalDate from, LocalDate to) {
+        return to.atStartOfDay(this.zone).toEpochSecond() - from.atStartOfDay(this.zone).toEpochSecond();
+    }
+
+    /**
+     * Internal auxiliary method used to wait for an asynchronous result,
+     * rethrowing the original exception if it failed.
+     *
+     * @param future asynchronous result
+     * @return the result, once completed
+     */
+    private <T> T await(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException ex) {
+            if(ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) ex.getCause();
             }
-        } else { // type.equals("now")
-            path = path + "," + currentTime + pathExclude;
-            httpResponse = this.httpRequest(path, headers);
-            requestedData.add(httpResponse.get(0));
+            throw ex;
         }
-        // storing data in cache
-        JsonObject cacheObject = new JsonObject();
-        cacheObject.add(key, requestedData);
-        this.store(key, cacheObject);
-        return requestedData;
     }
-    
+
+    /**
+     * Provides statistics about the service:
+     * - size of the memory cache, number of hits and misses (per day) and evictions;
+     * - size of the second tier of the cache, number of days promoted from it, misses and evictions;
+     * - number of days returned stale while refreshed and number of days refreshed ahead of time;
+     * - number of locations counted by popularity, the most requested ones and the requests not counted;
+     * - hits of requests whose coordinates were snapped to the grid
+     *   (an upper bound of the hits gained by snapping, as some of them would have hit anyway);
+     * - number of requests sent to the external API and number of requests saved by planning them;
+     * - state of the circuit of the external API, number of openings and rejected requests,
+     *   and number of days served from the last known forecasts.
+     *
+     * @return JSON object containing the statistics
+     */
+    public JsonObject getStats() {
+        long hits = this.localCache.hitCount();
+        long lookups = hits + this.localCache.missCount();
+        JsonObject cache = new JsonObject();
+        cache.addProperty("size", this.localCache.size());
+        cache.addProperty("weightedSize", this.localCache.weightedSize());
+        cache.addProperty("hits", hits);
+        cache.addProperty("misses", lookups - hits);
+        cache.addProperty("hitRate", lookups == 0 ? 0.0 : (double) hits / lookups);
+        cache.addProperty("evictions", this.localCache.evictionCount());
+        JsonObject refresh = new JsonObject();
+        refresh.addProperty("refreshAfter", this.refreshPolicy.getRefreshAfter());
+        refresh.addProperty("refreshAhead", this.refreshPolicy.getRefreshAhead());
+        refresh.addProperty("refreshAheadMinReads", this.refreshPolicy.getMinReads());
+        refresh.addProperty("staleHits", this.staleHits.sum());
+        refresh.addProperty("refreshAheads", this.refreshAheads.sum());
+        JsonObject locations = new JsonObject();
+        locations.addProperty("gridSize", this.geoQuantizer.getGridSize());
+        locations.addProperty("snappedHits", this.snappedHits.sum());
+        locations.addProperty("snappedHitRate", lookups == 0 ? 0.0 : (double) this.snappedHits.sum() / lookups);
+        JsonObject offHeap = new JsonObject();
+        offHeap.addProperty("size", this.offHeapStore.size());
+        offHeap.addProperty("capacity", this.offHeapStore.capacity());
+        offHeap.addProperty("promotions", this.offHeapStore.hitCount());
+        offHeap.addProperty("misses", this.offHeapStore.missCount());
+        offHeap.addProperty("evictions", this.offHeapStore.evictionCount());
+        JsonObject popular = new JsonObject();
+        popular.addProperty("tracked", this.popularity.size());
+        popular.addProperty("dropped", this.popularity.getDropped());
+        JsonArray top = new JsonArray();
+        for(String location: this.popularity.top(5)) {
+            JsonObject counted = new JsonObject();
+            counted.addProperty(location, this.popularity.count(location));
+            top.add(counted);
+        }
+        popular.add("top", top);
+        JsonObject upstream = new JsonObject();
+        upstream.addProperty("plannedCalls", this.upstreamPlanner.getPlannedCalls());
+        upstream.addProperty("savedCalls", this.upstreamPlanner.getSavedCalls());
+        upstream.addProperty("circuit", this.circuitBreaker.getState().name());
+        upstream.addProperty("circuitOpenings", this.circuitBreaker.getOpenings());
+        upstream.addProperty("rejectedCalls", this.circuitBreaker.getRejectedCalls());
+        JsonObject pools = new JsonObject();
+        for(UpstreamPool pool: new UpstreamPool[]{this.nowUpstreamPool, this.recentUpstreamPool, this.periodUpstreamPool}) {
+            JsonObject places = new JsonObject();
+            places.addProperty("waiting", pool.getWaiting());
+            places.addProperty("skippedRefreshes", pool.getRejected());
+            pools.add(pool.getName(), places);
+        }
+        upstream.add("pools", pools);
+        upstream.addProperty("fallbackDays", this.fallbackDays.sum());
+        JsonObject stats = new JsonObject();
+        stats.add("cache", cache);
+        stats.add("offHeap", offHeap);
+        stats.add("refresh", refresh);
+        stats.add("locations", locations);
+        stats.add("popularity", popular);
+        stats.add("upstream", upstream);
+        return stats;
+    }
+
+    /**
+     * Retrieves a page of the entries from the memory cache, in the order of their keys.
+     *
+     * @param after key of the last entry of the previous page (null for the first page)
+     * @param limit maximum number of entries in the page
+     * @return cached forecasts of the page, by key
+     */
+    public Map<String, DailyForecast> getPage(String after, int limit) {
+        return this.localCache.getPage(after, limit, Comparator.naturalOrder(), false);
+    }
+
+    /**
+     * Visits every entry of the memory cache, without copying them nor updating their last access.
+     *
+     * @param action action performed with the key and the forecast of every entry
+     */
+    public void forEachCached(BiConsumer<String, DailyForecast> action) {
+        this.localCache.forEachEntry((key, value, timeToLive) -> action.accept(key, value));
+    }
+
     /**
      * Retrieved all entries from the memory cache.
-     * 
+     *
      * @param updateLastAccessed tells the method whether it should update the last time the object was accessed or not
      * @return array of JSON objects containing the cached data
      */
     public JsonArray getAll(Boolean updateLastAccessed) {
-        Gson gson = new GsonBuilder().create();
-        Object[] cache = this.localCache.getAll(updateLastAccessed);
+        Map<String, DailyForecast> cache = this.localCache.getAllEntries(updateLastAccessed);
         JsonArray all = new JsonArray();
-        for(Object o: cache) {
-            all.add((JsonObject) gson.toJsonTree(o));
+        for(Map.Entry<String, DailyForecast> entry: cache.entrySet()) {
+            JsonObject cacheObject = new JsonObject(); // {"key":{day}}
+            cacheObject.add(entry.getKey(), entry.getValue().toJson());
+            all.add(cacheObject);
         }
         return all;
     }
-    
+
     /**
      * Internal auxiliary method used to convert dates in String with a given format
      * into dates in milliseconds.
-     * 
+     *
      * @param dateString date string to be converted
      * @param formatString format in which the date string is written
      * @return Long value holding the specified date in milliseconds
@@ -0,0 +1,144 @@
+package weatherapp.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the CacheSnapshot.
+ * 
+ * @author Filipe Pires
+ */
+public class CacheSnapshotTest {
+    
+    /**
+     * Codec of Strings, used to abstract the tests from the values of the weather services.
+     */
+    private static final Codec<String> CODEC = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        @Override
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+    
+    /**
+     * Snapshot file used by the tests.
+     */
+    private Path file;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() throws IOException {
+        file = Files.createTempFile("snapshot", ".bin");
+        Files.delete(file);
+    }
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, after its execution.
+     */
+    @AfterEach
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /**
+     * Test of save and load methods, of class CacheSnapshot.
+     */
+    @Test
+    public void testSaveLoad() {
+        System.out.println("save/load");
+        // arrange
+        LocalCache<String,String> cache = new LocalCache<>(60, 1);
+        OffHeapStore<String> store = new OffHeapStore<>(CODEC, 4096, 1024, 3600);
+        cache.put("k1", "v1");
+        cache.put("k2", "v2", 5000);
+        store.put("k3", "v3");
+        LocalCache<String,String> cache2 = new LocalCache<>(60, 1);
+        OffHeapStore<String> store2 = new OffHeapStore<>(CODEC, 4096, 1024, 3600);
+        // act
+        int saved = new CacheSnapshot<>(cache, store, CODEC, file.toString(), 0).save();
+        int loaded = new CacheSnapshot<>(cache2, store2, CODEC, file.toString(), 0).load();
+        // assert
+        assertThat(saved).isEqualTo(3);
+        assertThat(loaded).isEqualTo(3);
+        assertThat(cache2.get("k1")).isEqualTo("v1");
+        assertThat(cache2.get("k2")).isEqualTo("v2");
+        assertThat(store2.get("k3")).isEqualTo("v3");
+        assertThat(Files.exists(file.resolveSibling(file.getFileName() + ".tmp"))).isFalse();
+    }
+
+    /**
+     * Test of load method with entries expired since the snapshot was written, of class CacheSnapshot.
+     */
+    @Test
+    public void testLoadExpired() throws Exception {
+        System.out.println("load expired");
+        // arrange
+        LocalCache<String,String> cache = new LocalCache<>(60, 1);
+        OffHeapStore<String> store = new OffHeapStore<>(CODEC, 4096, 1024, 3600);
+        cache.put("k1", "v1", 100);
+        store.put("k2", "v2", 100);
+        new CacheSnapshot<>(cache, store, CODEC, file.toString(), 0).save();
+        LocalCache<String,String> cache2 = new LocalCache<>(60, 1);
+        OffHeapStore<String> store2 = new OffHeapStore<>(CODEC, 4096, 1024, 3600);
+        Thread.sleep(200);
+        // act
+        int loaded = new CacheSnapshot<>(cache2, store2, CODEC, file.toString(), 0).load();
+        // assert
+        assertThat(loaded).isEqualTo(1);
+        assertThat(cache2.get("k1")).isNull();
+        assertThat(store2.get("k1")).isEqualTo("v1");
+        assertThat(store2.get("k2")).isNull();
+    }
+
+    /**
+     * Test of load method without a valid snapshot, of class CacheSnapshot.
+     */
+    @Test
+    public void testLoadInvalid() throws IOException {
+        System.out.println("load invalid");
+        // arrange
+        LocalCache<String,String> cache = new LocalCache<>(60, 1);
+        OffHeapStore<String> store = new OffHeapStore<>(CODEC, 4096, 1024, 3600);
+        CacheSnapshot<String> instance = new CacheSnapshot<>(cache, store, CODEC, file.toString(), 0);
+        // act
+        int missing = instance.load();
+        Files.write(file, "not a snapshot".getBytes(StandardCharsets.UTF_8));
+        int unknown = instance.load();
+        // assert
+        assertThat(missing).isEqualTo(0);
+        assertThat(unknown).isEqualTo(0);
+        assertThat(cache.size()).isEqualTo(0);
+    }
+
+    /**
+     * Test of a disabled snapshot, of class CacheSnapshot.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        LocalCache<String,String> cache = new LocalCache<>(60, 1);
+        cache.put("k1", "v1");
+        CacheSnapshot<String> instance = new CacheSnapshot<>(cache, new OffHeapStore<>(CODEC, 0, 0, 0), CODEC, "", 0);
+        // act
+        instance.start();
+        instance.close();
+        // assert
+        assertThat(instance.isEnabled()).isFalse();
+        assertThat(instance.save()).isEqualTo(0);
+    }
+    
+}
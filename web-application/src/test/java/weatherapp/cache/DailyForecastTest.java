@@ -0,0 +1,112 @@
+package weatherapp.cache;
+
+import com.google.gson.*;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the DailyForecast.
+ * 
+ * @author Filipe Pires
+ */
+public class DailyForecastTest {
+    
+    /**
+     * Daily forecast as returned by the DarkSky API.
+     */
+    private JsonObject day;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        day = new JsonParser().parse("{\"time\":1557097200,\"summary\":\"Mostly cloudy throughout the day.\",\"icon\":\"partly-cloudy-day\",\"sunriseTime\":1557120526,\"sunsetTime\":1557171377,\"moonPhase\":0.05,\"precipIntensity\":0.0004,\"precipIntensityMax\":0.0016,\"precipIntensityMaxTime\":1557111600,\"precipProbability\":0.03,\"precipType\":\"rain\",\"temperatureHigh\":65.53,\"temperatureHighTime\":1557154800,\"temperatureLow\":54.93,\"temperatureLowTime\":1557187200,\"apparentTemperatureHigh\":65.53,\"apparentTemperatureHighTime\":1557154800,\"apparentTemperatureLow\":54.93,\"apparentTemperatureLowTime\":1557187200,\"dewPoint\":51.24,\"humidity\":0.74,\"pressure\":1019.26,\"windSpeed\":3.08,\"windGust\":9.34,\"windGustTime\":1557158400,\"windBearing\":240,\"cloudCover\":0.58,\"uvIndex\":6,\"uvIndexTime\":1557147600,\"visibility\":7.98,\"ozone\":352.97,\"temperatureMin\":55.51,\"temperatureMinTime\":1557180000,\"temperatureMax\":65.53,\"temperatureMaxTime\":1557154800,\"apparentTemperatureMin\":55.51,\"apparentTemperatureMinTime\":1557180000,\"apparentTemperatureMax\":65.53,\"apparentTemperatureMaxTime\":1557154800}").getAsJsonObject();
+    }
+
+    /**
+     * Test of fromJson and toJson methods, of class DailyForecast.
+     */
+    @Test
+    public void testRoundTrip() {
+        System.out.println("fromJson/toJson round trip");
+        // act
+        DailyForecast forecast = DailyForecast.fromJson(day);
+        JsonObject result = forecast.toJson();
+        // assert
+        assertThat(result).isEqualTo(day);
+        assertThat(result.keySet()).containsExactlyElementsOf(day.keySet());
+        assertThat(result.toString()).contains("\"time\":1557097200,").contains("\"windBearing\":240,");
+    }
+
+    /**
+     * Test of fromJson method, of class DailyForecast, with absent and unknown fields.
+     */
+    @Test
+    public void testAbsentAndUnknownFields() {
+        System.out.println("absent and unknown fields");
+        // arrange
+        JsonObject partial = new JsonParser().parse("{\"time\":1556406000,\"icon\":\"fog\",\"humidity\":\"n/a\",\"alerts\":[1,2]}").getAsJsonObject();
+        // act
+        DailyForecast forecast = DailyForecast.fromJson(partial);
+        // assert
+        assertThat(forecast.getTime()).isEqualTo(1556406000L);
+        assertThat(forecast.getSummary()).isNull();
+        assertThat(forecast.get("temperatureHigh")).isNaN();
+        assertThat(forecast.get("humidity")).isNaN();
+        assertThat(forecast.toJson()).isEqualTo(partial);
+    }
+
+    /**
+     * Test of the dictionary of Strings, of class DailyForecast.
+     */
+    @Test
+    public void testSharedStrings() {
+        System.out.println("shared strings");
+        // arrange
+        JsonObject other = new JsonParser().parse(day.toString()).getAsJsonObject();
+        // act
+        DailyForecast first = DailyForecast.fromJson(day);
+        DailyForecast second = DailyForecast.fromJson(other);
+        // assert
+        assertThat(second.getSummary()).isSameAs(first.getSummary());
+        assertThat(second.getIcon()).isSameAs(first.getIcon());
+        assertThat(second.getPrecipType()).isSameAs(first.getPrecipType());
+    }
+
+    /**
+     * Test of toJsonBytes and contentHash methods, of class DailyForecast.
+     */
+    @Test
+    public void testToJsonBytes() {
+        System.out.println("toJsonBytes/contentHash");
+        // arrange
+        JsonObject partial = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Rain <5mm> & \\\"wind\\\"\",\"alerts\":[1,{\"a\":null}]}").getAsJsonObject();
+        JsonObject changed = new JsonParser().parse(day.toString()).getAsJsonObject();
+        changed.addProperty("humidity", 0.75);
+        DailyForecast forecast = DailyForecast.fromJson(day);
+        DailyForecast partialForecast = DailyForecast.fromJson(partial);
+        // act
+        byte[] result = forecast.toJsonBytes();
+        byte[] partialResult = partialForecast.toJsonBytes();
+        // assert
+        assertThat(new String(result, java.nio.charset.StandardCharsets.UTF_8)).isEqualTo(forecast.toJson().toString());
+        assertThat(new String(partialResult, java.nio.charset.StandardCharsets.UTF_8)).isEqualTo(partialForecast.toJson().toString());
+        assertThat(DailyForecast.fromJson(day, 0).contentHash()).isEqualTo(DailyForecast.fromJson(day).contentHash());
+        assertThat(DailyForecast.fromJson(changed).contentHash()).isNotEqualTo(DailyForecast.fromJson(day).contentHash());
+    }
+
+    /**
+     * Test of sizeOf method, of class DailyForecast.
+     */
+    @Test
+    public void testSizeOf() {
+        System.out.println("sizeOf");
+        // act
+        long result = DailyForecast.fromJson(day).sizeOf();
+        // assert
+        assertThat(result).isPositive();
+        assertThat(result).isLessThan(JsonWeigher.sizeOf(day) / 5);
+    }
+    
+}
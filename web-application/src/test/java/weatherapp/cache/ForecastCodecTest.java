@@ -0,0 +1,66 @@
+package weatherapp.cache;
+
+import com.google.gson.*;
+import java.nio.ByteBuffer;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the ForecastCodec.
+ * 
+ * @author Filipe Pires
+ */
+public class ForecastCodecTest {
+    
+    /**
+     * Instance of the target class to be tested.
+     */
+    private ForecastCodec instance;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        instance = new ForecastCodec();
+    }
+
+    /**
+     * Test of encode and decode methods, of class ForecastCodec.
+     */
+    @Test
+    public void testRoundTrip() {
+        System.out.println("encode/decode round trip");
+        // arrange
+        JsonObject day = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Chuva à tarde.\",\"icon\":\"rain\",\"moonPhase\":0.8,\"precipProbability\":0.61,\"precipType\":\"rain\",\"windBearing\":355,\"alerts\":[\"fog\"]}").getAsJsonObject();
+        DailyForecast forecast = DailyForecast.fromJson(day);
+        // act
+        byte[] bytes = instance.encode(forecast);
+        DailyForecast result = instance.decode(ByteBuffer.wrap(bytes));
+        // assert
+        assertThat(result.toJson()).isEqualTo(day);
+        assertThat(result.getIcon()).isSameAs(forecast.getIcon());
+        assertThat(result.getFetchedAt()).isEqualTo(forecast.getFetchedAt());
+    }
+
+    /**
+     * Test of encode method, of class ForecastCodec, with absent fields.
+     */
+    @Test
+    public void testAbsentFields() {
+        System.out.println("encode absent fields");
+        // arrange
+        JsonObject day = new JsonParser().parse("{\"time\":1556406000}").getAsJsonObject();
+        DailyForecast forecast = DailyForecast.fromJson(day);
+        forecast.countRead();
+        // act
+        byte[] bytes = instance.encode(forecast);
+        DailyForecast result = instance.decode(ByteBuffer.wrap(bytes));
+        // assert
+        assertThat(bytes.length).isEqualTo(8 + 4 + 8 + 8 + 4 * 4);
+        assertThat(result.getReads()).isEqualTo(1);
+        assertThat(result.toJson()).isEqualTo(day);
+        assertThat(result.getSummary()).isNull();
+    }
+    
+}
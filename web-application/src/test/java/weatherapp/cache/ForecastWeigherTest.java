@@ -0,0 +1,44 @@
+package weatherapp.cache;
+
+import com.google.gson.*;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the ForecastWeigher.
+ * 
+ * @author Filipe Pires
+ */
+public class ForecastWeigherTest {
+    
+    /**
+     * Instance of the target class to be tested.
+     */
+    private ForecastWeigher instance;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        instance = new ForecastWeigher();
+    }
+
+    /**
+     * Test of weigh method, of class ForecastWeigher.
+     */
+    @Test
+    public void testWeighGrowsWithExtras() {
+        System.out.println("weigh grows with extras");
+        // arrange
+        DailyForecast known = DailyForecast.fromJson(new JsonParser().parse("{\"time\":1556406000,\"icon\":\"fog\"}").getAsJsonObject());
+        DailyForecast unknown = DailyForecast.fromJson(new JsonParser().parse("{\"time\":1556406000,\"icon\":\"fog\",\"alerts\":[\"fog\"]}").getAsJsonObject());
+        // act
+        int knownWeight = instance.weigh("40.64,-8.65,2019-04-28", known);
+        int unknownWeight = instance.weigh("40.64,-8.65,2019-04-28", unknown);
+        // assert
+        assertThat(knownWeight).isPositive();
+        assertThat(unknownWeight).isGreaterThan(knownWeight);
+    }
+    
+}
@@ -0,0 +1,61 @@
+package weatherapp.cache;
+
+import com.google.gson.*;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the JsonWeigher.
+ * 
+ * @author Filipe Pires
+ */
+public class JsonWeigherTest {
+    
+    /**
+     * Instance of the target class to be tested.
+     */
+    private JsonWeigher instance;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        instance = new JsonWeigher();
+    }
+
+    /**
+     * Test of weigh method, of class JsonWeigher.
+     */
+    @Test
+    public void testWeighGrowsWithContent() {
+        System.out.println("weigh grows with content");
+        // arrange
+        JsonObject small = new JsonParser().parse("{\"time\":1556406000}").getAsJsonObject();
+        JsonObject large = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\",\"moonPhase\":0.8}").getAsJsonObject();
+        // act
+        int smallWeight = instance.weigh("k1", small);
+        int largeWeight = instance.weigh("k1", large);
+        // assert
+        assertThat(smallWeight).isPositive();
+        assertThat(largeWeight).isGreaterThan(smallWeight);
+    }
+
+    /**
+     * Test of sizeOf method, of class JsonWeigher.
+     */
+    @Test
+    public void testSizeOfNested() {
+        System.out.println("sizeOf nested");
+        // arrange
+        JsonObject day = new JsonParser().parse("{\"time\":1556406000,\"icon\":\"fog\"}").getAsJsonObject();
+        JsonArray days = new JsonArray();
+        days.add(day); days.add(day);
+        // act
+        long result = JsonWeigher.sizeOf(days);
+        // assert
+        assertThat(result).isGreaterThan(2 * JsonWeigher.sizeOf(day));
+        assertThat(JsonWeigher.sizeOf(JsonNull.INSTANCE)).isEqualTo(0);
+    }
+    
+}
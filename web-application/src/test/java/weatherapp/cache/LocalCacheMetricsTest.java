@@ -0,0 +1,41 @@
+package weatherapp.cache;
+
+import java.util.Collections;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the LocalCacheMetrics.
+ * 
+ * @author Filipe Pires
+ */
+public class LocalCacheMetricsTest {
+    
+    /**
+     * Test of bindTo method, of class LocalCacheMetrics.
+     */
+    @Test
+    public void testBindTo() {
+        System.out.println("bindTo");
+        // arrange
+        LocalCache<String,Integer> cache = new LocalCache<>(10, 1, 2, (key, value) -> 1);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        // act
+        new LocalCacheMetrics(cache, "test", Collections.emptyList()).bindTo(registry);
+        cache.put("k1", 1);
+        cache.put("k2", 2);
+        cache.put("k3", 3);
+        cache.get("k3");
+        cache.get("k4");
+        // assert
+        assertThat(registry.get("cache.size").tag("cache", "test").gauge().value()).isEqualTo(2);
+        assertThat(registry.get("cache.gets").tags("cache", "test", "result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "test", "result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.puts").tag("cache", "test").functionCounter().count()).isEqualTo(3);
+        assertThat(registry.get("cache.evictions").tag("cache", "test").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.weight").tag("cache", "test").gauge().value()).isEqualTo(2);
+    }
+    
+}
@@ -1,6 +1,8 @@
 package weatherapp.cache;
 
 import com.google.gson.*;
+import java.util.*;
+import java.util.concurrent.*;
 import org.junit.jupiter.api.*;
 import static org.assertj.core.api.Assertions.*;
 
@@ -100,6 +102,50 @@ public class LocalCacheTest {
         assertThat(result).isEqualTo(expResult);//assertArrayEquals(expResult, result);
     }
 
+    /**
+     * Test of getAllEntries method, of class LocalCache.
+     */
+    @Test
+    public void testGetAllEntries() {
+        System.out.println("getAllEntries");
+        // arrange
+        instance.put("k1", 1);
+        instance.put("k2", 2);
+        // act
+        Map<String,Integer> result = instance.getAllEntries(false);
+        // assert
+        assertThat(result).containsOnlyKeys("k1", "k2");
+        assertThat(result.get("k2")).isEqualTo(2);
+    }
+
+    /**
+     * Test of getPage method, of class LocalCache.
+     */
+    @Test
+    public void testGetPage() {
+        System.out.println("getPage");
+        // arrange
+        for (int i = 9; i >= 0; i--) {
+            instance.put("k" + i, i);
+        }
+        List<String> paged = new ArrayList<>();
+        // act
+        Map<String,Integer> first = instance.getPage(null, 4, Comparator.naturalOrder(), false);
+        instance.remove("k5");
+        instance.put("k0a", 0);
+        Map<String,Integer> second = instance.getPage("k3", 4, Comparator.naturalOrder(), false);
+        Map<String,Integer> last = instance.getPage("k8", 4, Comparator.naturalOrder(), false);
+        paged.addAll(first.keySet());
+        paged.addAll(second.keySet());
+        paged.addAll(last.keySet());
+        // assert
+        assertThat(first.keySet()).containsExactly("k0", "k1", "k2", "k3");
+        assertThat(second.keySet()).containsExactly("k4", "k6", "k7", "k8");
+        assertThat(last.keySet()).containsExactly("k9");
+        assertThat(paged).doesNotHaveDuplicates().doesNotContain("k5");
+        assertThat(instance.getPage(null, 0, Comparator.naturalOrder(), false)).isEmpty();
+    }
+
     /**
      * Test of remove method, of class LocalCache.
      */
@@ -215,5 +261,200 @@ public class LocalCacheTest {
         // assert
         assertThat(result).isEqualTo(expResult);//assertEquals(expResult, result);
     }
-    
+
+    /**
+     * Test of concurrent put and get methods, of class LocalCache.
+     */
+    @Test
+    public void testConcurrentPutGet() throws Exception {
+        System.out.println("concurrent put/get");
+        // arrange
+        int threads = 8;
+        int keysPerThread = 1000;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        List<Future<Integer>> misses = new ArrayList<>();
+        // act
+        for(int t=0; t<threads; t++) {
+            final int offset = t * keysPerThread;
+            misses.add(executor.submit(() -> {
+                int missed = 0;
+                for(int i=offset; i<offset+keysPerThread; i++) {
+                    instance.put("k" + i, i);
+                    if(!Integer.valueOf(i).equals(instance.get("k" + i))) { missed++; }
+                }
+                return missed;
+            }));
+        }
+        int totalMisses = 0;
+        for(Future<Integer> f: misses) {
+            totalMisses += f.get();
+        }
+        executor.shutdown();
+        // assert
+        assertThat(totalMisses).isEqualTo(0);
+        assertThat(instance.size()).isEqualTo(threads * keysPerThread);
+    }
+
+    /**
+     * Test of put method with a maximum size, of class LocalCache.
+     */
+    @Test
+    public void testEvictionBySize() {
+        System.out.println("eviction by size");
+        // arrange
+        LocalCache<String,Integer> instance2 = new LocalCache(10,1,3);
+        instance2.put("k1", 1);
+        instance2.put("k2", 2);
+        instance2.put("k3", 3);
+        instance2.get("k1");
+        // act
+        instance2.put("k4", 4);
+        // assert
+        assertThat(instance2.size()).isEqualTo(3);
+        assertThat(instance2.containsKey("k1")).isTrue();
+        assertThat(instance2.containsKey("k2")).isFalse();
+        assertThat(instance2.containsKey("k4")).isTrue();
+        assertThat(instance2.evictionCount()).isEqualTo(1);
+    }
+
+    /**
+     * Test of put method with a maximum weight, of class LocalCache.
+     */
+    @Test
+    public void testEvictionByWeight() {
+        System.out.println("eviction by weight");
+        // arrange
+        LocalCache<String,Integer> instance2 = new LocalCache<>(10, 1, 10, (k, v) -> v);
+        instance2.put("k1", 4);
+        instance2.put("k2", 4);
+        // act
+        instance2.put("k3", 5);
+        // assert
+        assertThat(instance2.weightedSize()).isLessThanOrEqualTo(10);
+        assertThat(instance2.containsKey("k1")).isFalse();
+        assertThat(instance2.containsKey("k3")).isTrue();
+    }
+
+    /**
+     * Test of setEvictionListener method, of class LocalCache.
+     */
+    @Test
+    public void testEvictionListener() throws Exception {
+        System.out.println("eviction listener");
+        // arrange
+        Map<String,Integer> evicted = new ConcurrentHashMap<>();
+        LocalCache<String,Integer> instance2 = new LocalCache(1,1,2);
+        instance2.setEvictionListener(evicted::put);
+        instance2.put("k1", 1);
+        instance2.put("k2", 2);
+        instance2.remove("k2");
+        // act
+        instance2.put("k3", 3);
+        instance2.put("k4", 4);
+        long deadline = System.currentTimeMillis() + 5000;
+        while(instance2.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        // assert
+        assertThat(evicted).containsOnlyKeys("k1", "k3", "k4");
+        assertThat(evicted.get("k1")).isEqualTo(1);
+    }
+
+    /**
+     * Test of put method replacing an entry, of class LocalCache.
+     */
+    @Test
+    public void testWeightedSizeReplace() {
+        System.out.println("weightedSize replace");
+        // arrange
+        LocalCache<String,Integer> instance2 = new LocalCache<>(10, 1, 100, (k, v) -> v);
+        instance2.put("k1", 4);
+        // act
+        instance2.put("k1", 6);
+        instance2.put("k2", 1);
+        instance2.remove("k2");
+        // assert
+        assertThat(instance2.weightedSize()).isEqualTo(6);
+        assertThat(instance2.evictionCount()).isEqualTo(0);
+    }
+
+    /**
+     * Test of the expiration of entries, of class LocalCache.
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        System.out.println("expiration");
+        // arrange
+        LocalCache<String,Integer> instance2 = new LocalCache(1,1);
+        instance2.put("k1", 1);
+        instance2.put("k2", 2);
+        // act
+        Thread.sleep(600);
+        instance2.get("k2");
+        Thread.sleep(600);
+        // assert
+        assertThat(instance2.get("k1")).isNull();
+        assertThat(instance2.get("k2")).isEqualTo(2);
+        long deadline = System.currentTimeMillis() + 5000;
+        while(instance2.size() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(100);
+        }
+        assertThat(instance2.size()).isEqualTo(0);
+    }
+
+    /**
+     * Test of hitCount and missCount methods, of class LocalCache.
+     */
+    @Test
+    public void testHitAndMissCount() {
+        System.out.println("hitCount and missCount");
+        // arrange
+        instance.put("k1", 1);
+        // act
+        instance.get("k1");
+        instance.get("k1");
+        instance.get("k2");
+        // assert
+        assertThat(instance.hitCount()).isEqualTo(2);
+        assertThat(instance.missCount()).isEqualTo(1);
+    }
+
+    /**
+     * Test of put method with the time left to live, of class LocalCache.
+     */
+    @Test
+    public void testPutWithTimeToLive() throws Exception {
+        System.out.println("put with time to live");
+        // arrange
+        LocalCache<String,Integer> instance2 = new LocalCache(10,1);
+        // act
+        instance2.put("k1", 1, 200);
+        instance2.put("k2", 2, 60000);
+        Thread.sleep(300);
+        // assert
+        assertThat(instance2.get("k1")).isNull();
+        assertThat(instance2.get("k2")).isEqualTo(2);
+    }
+
+    /**
+     * Test of forEachEntry method, of class LocalCache.
+     */
+    @Test
+    public void testForEachEntry() {
+        System.out.println("forEachEntry");
+        // arrange
+        Map<String,Long> timesToLive = new HashMap<>();
+        LocalCache<String,Integer> instance2 = new LocalCache(10,1);
+        instance2.put("k1", 1);
+        instance2.put("k2", 2, 5000);
+        instance.put("k3", 3);
+        // act
+        instance2.forEachEntry((key, value, timeToLive) -> timesToLive.put(key + "=" + value, timeToLive));
+        // assert
+        assertThat(timesToLive).containsOnlyKeys("k1=1", "k2=2");
+        assertThat(timesToLive.get("k1=1")).isBetween(9000L, 10000L);
+        assertThat(timesToLive.get("k2=2")).isBetween(4000L, 5000L);
+        assertThat(instance2.hitCount()).isEqualTo(0);
+    }
+
 }
@@ -0,0 +1,58 @@
+package weatherapp.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the OffHeapStoreMetrics.
+ * 
+ * @author Filipe Pires
+ */
+public class OffHeapStoreMetricsTest {
+    
+    /**
+     * Codec of Strings, used to abstract the tests from the values of the weather services.
+     */
+    private static final Codec<String> CODEC = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        @Override
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+    
+    /**
+     * Test of bindTo method, of class OffHeapStoreMetrics.
+     */
+    @Test
+    public void testBindTo() {
+        System.out.println("bindTo");
+        // arrange
+        OffHeapStore<String> store = new OffHeapStore<>(CODEC, 4096, 1024, 60);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        // act
+        new OffHeapStoreMetrics(store, "test", Collections.emptyList()).bindTo(registry);
+        store.put("k1", "v1");
+        store.put("k1", "v2");
+        store.get("k1");
+        store.get("k2");
+        // assert
+        assertThat(registry.get("cache.size").tag("cache", "test").gauge().value()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "test", "result", "hit").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.gets").tags("cache", "test", "result", "miss").functionCounter().count()).isEqualTo(1);
+        assertThat(registry.get("cache.puts").tag("cache", "test").functionCounter().count()).isEqualTo(2);
+        assertThat(registry.get("cache.evictions").tag("cache", "test").functionCounter().count()).isEqualTo(0);
+        assertThat(registry.get("cache.capacity").tag("cache", "test").gauge().value()).isEqualTo(4096);
+    }
+    
+}
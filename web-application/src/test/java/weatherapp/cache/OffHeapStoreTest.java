@@ -0,0 +1,221 @@
+package weatherapp.cache;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the OffHeapStore.
+ * 
+ * @author Filipe Pires
+ */
+public class OffHeapStoreTest {
+    
+    /**
+     * Codec of Strings, used to abstract the tests from the values of the weather services.
+     */
+    private static final Codec<String> CODEC = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+        @Override
+        public String decode(ByteBuffer buffer) {
+            byte[] bytes = new byte[buffer.remaining()];
+            buffer.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+    
+    /**
+     * Instance of the target class to be tested.
+     */
+    private OffHeapStore<String> instance;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        instance = new OffHeapStore<>(CODEC, 1 << 20, 1 << 16, 0);
+    }
+
+    /**
+     * Test of put and get methods, of class OffHeapStore.
+     */
+    @Test
+    public void testPutGet() {
+        System.out.println("put/get");
+        // act
+        instance.put("k1", "v1");
+        instance.put("k2", "v2");
+        instance.put("k1", "v3");
+        // assert
+        assertThat(instance.get("k1")).isEqualTo("v3");
+        assertThat(instance.get("k2")).isEqualTo("v2");
+        assertThat(instance.get("k3")).isNull();
+        assertThat(instance.size()).isEqualTo(2);
+        assertThat(instance.hitCount()).isEqualTo(2);
+        assertThat(instance.missCount()).isEqualTo(1);
+    }
+
+    /**
+     * Test of remove method, of class OffHeapStore.
+     */
+    @Test
+    public void testRemove() {
+        System.out.println("remove");
+        // arrange
+        for(int i=0; i<100; i++) {
+            instance.put("k" + i, "v" + i);
+        }
+        // act
+        for(int i=0; i<100; i+=2) {
+            instance.remove("k" + i);
+        }
+        // assert
+        assertThat(instance.size()).isEqualTo(50);
+        for(int i=0; i<100; i++) {
+            assertThat(instance.get("k" + i)).isEqualTo(i % 2 == 0 ? null : "v" + i);
+        }
+    }
+
+    /**
+     * Test of put method with more entries than the initial index, of class OffHeapStore.
+     */
+    @Test
+    public void testManyEntries() {
+        System.out.println("many entries");
+        // act
+        for(int i=0; i<10000; i++) {
+            instance.put("40.64,-8.65,day" + i, "forecast" + i);
+        }
+        // assert
+        assertThat(instance.size()).isEqualTo(10000);
+        for(int i=0; i<10000; i++) {
+            assertThat(instance.get("40.64,-8.65,day" + i)).isEqualTo("forecast" + i);
+        }
+    }
+
+    /**
+     * Test of the recycling of segments, of class OffHeapStore.
+     */
+    @Test
+    public void testRecycling() {
+        System.out.println("recycling");
+        // arrange
+        OffHeapStore<String> instance2 = new OffHeapStore<>(CODEC, 1024, 256, 0);
+        // act
+        for(int i=0; i<100; i++) {
+            instance2.put("k" + i, "value" + i);
+        }
+        // assert
+        assertThat(instance2.get("k0")).isNull();
+        assertThat(instance2.get("k99")).isEqualTo("value99");
+        assertThat(instance2.evictionCount()).isPositive();
+        assertThat(instance2.size() + instance2.evictionCount()).isEqualTo(100);
+    }
+
+    /**
+     * Test of the expiration of entries, of class OffHeapStore.
+     */
+    @Test
+    public void testExpiration() throws Exception {
+        System.out.println("expiration");
+        // arrange
+        OffHeapStore<String> instance2 = new OffHeapStore<>(CODEC, 1024, 256, 1);
+        instance2.put("k1", "v1");
+        // act
+        Thread.sleep(1100);
+        // assert
+        assertThat(instance2.get("k1")).isNull();
+        assertThat(instance2.size()).isEqualTo(0);
+    }
+
+    /**
+     * Test of a disabled store, of class OffHeapStore.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        OffHeapStore<String> instance2 = new OffHeapStore<>(CODEC, 0, 0, 0);
+        // act
+        instance2.put("k1", "v1");
+        // assert
+        assertThat(instance2.isEnabled()).isFalse();
+        assertThat(instance2.get("k1")).isNull();
+        assertThat(instance2.capacity()).isEqualTo(0);
+    }
+
+    /**
+     * Test of a store in a memory-mapped file, of class OffHeapStore.
+     */
+    @Test
+    public void testMappedFile() throws Exception {
+        System.out.println("memory-mapped file");
+        // arrange
+        Path file = Files.createTempFile("offheap", ".bin");
+        try (OffHeapStore<String> instance2 = new OffHeapStore<>(CODEC, 4096, 1024, 0, file.toString())) {
+            // act
+            instance2.put("k1", "v1");
+            // assert
+            assertThat(instance2.get("k1")).isEqualTo("v1");
+            assertThat(instance2.capacity()).isEqualTo(4096);
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    /**
+     * Test of forEachEntry method and of put method with the time left to live, of class OffHeapStore.
+     */
+    @Test
+    public void testForEachEntry() {
+        System.out.println("forEachEntry");
+        // arrange
+        List<String> keys = new ArrayList<>();
+        Map<String,Long> timesToLive = new HashMap<>();
+        OffHeapStore<String> instance2 = new OffHeapStore<>(CODEC, 1024, 256, 60);
+        instance2.put("k1", "v1");
+        instance2.put("k2", "v2", 5000);
+        instance2.put("k3", "v3", 0);
+        instance2.put("k1", "v4", 120000);
+        // act
+        instance2.forEachEntry((key, value, timeToLive) -> {
+            keys.add(key + "=" + value);
+            timesToLive.put(key, timeToLive);
+        });
+        // assert
+        assertThat(keys).containsExactly("k2=v2", "k1=v4");
+        assertThat(timesToLive.get("k1")).isBetween(59000L, 60000L);
+        assertThat(timesToLive.get("k2")).isBetween(4000L, 5000L);
+    }
+
+    /**
+     * Test of forEachEntry method, of class OffHeapStore, with the store written during the visit.
+     */
+    @Test
+    public void testForEachEntryOutsideLock() {
+        System.out.println("forEachEntry outside lock");
+        // arrange
+        List<String> keys = new ArrayList<>();
+        instance.put("k1", "v1");
+        instance.put("k2", "v2");
+        // act
+        instance.forEachEntry((key, value, timeToLive) -> {
+            keys.add(key + "=" + value);
+            instance.remove(key); // would wait forever for a visit holding the lock
+            instance.put(key + "'", value);
+        });
+        // assert
+        assertThat(keys).startsWith("k1=v1", "k2=v2");
+        assertThat(instance.get("k1")).isNull();
+        assertThat(instance.get("k2'")).isEqualTo("v2");
+    }
+
+}
@@ -0,0 +1,104 @@
+package weatherapp.controllers;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the Bulkhead.
+ *
+ * @author Filipe Pires
+ */
+public class BulkheadTest {
+
+    /**
+     * Test of tryAcquire and release methods, of class Bulkhead, without waiting.
+     */
+    @Test
+    public void testTryAcquire() {
+        System.out.println("tryAcquire");
+        // arrange
+        Bulkhead instance = new Bulkhead("period", 2, 0, 0);
+        // act
+        boolean first = instance.tryAcquire();
+        boolean second = instance.tryAcquire();
+        boolean third = instance.tryAcquire();
+        instance.release();
+        boolean afterRelease = instance.tryAcquire();
+        // assert
+        assertThat(first).isTrue();
+        assertThat(second).isTrue();
+        assertThat(third).isFalse();
+        assertThat(afterRelease).isTrue();
+        assertThat(instance.getAvailable()).isEqualTo(0);
+        assertThat(instance.getRejected()).isEqualTo(1);
+    }
+
+    /**
+     * Test of tryAcquire method, of class Bulkhead, waiting for a permit.
+     */
+    @Test
+    public void testTryAcquireWaits() throws Exception {
+        System.out.println("tryAcquire waits");
+        // arrange
+        Bulkhead instance = new Bulkhead("recent", 1, 1, 5000);
+        instance.tryAcquire();
+        CountDownLatch started = new CountDownLatch(1);
+        // act
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(() -> {
+            started.countDown();
+            return instance.tryAcquire();
+        });
+        started.await();
+        while(instance.getWaiting() == 0 && !waiting.isDone()) {
+            Thread.sleep(1);
+        }
+        boolean beyondWaiting = instance.tryAcquire(); // the only place in the queue is taken
+        instance.release();
+        // assert
+        assertThat(beyondWaiting).isFalse();
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isTrue();
+        assertThat(instance.getWaiting()).isEqualTo(0);
+        assertThat(instance.getRejected()).isEqualTo(1);
+    }
+
+    /**
+     * Test of tryAcquire method, of class Bulkhead, once the wait is over.
+     */
+    @Test
+    public void testTryAcquireTimesOut() {
+        System.out.println("tryAcquire times out");
+        // arrange
+        Bulkhead instance = new Bulkhead("now", 1, 10, 20);
+        instance.tryAcquire();
+        // act
+        long start = System.nanoTime();
+        boolean result = instance.tryAcquire();
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        // assert
+        assertThat(result).isFalse();
+        assertThat(waited).isGreaterThanOrEqualTo(15);
+        assertThat(instance.getRejected()).isEqualTo(1);
+    }
+
+    /**
+     * Test of a disabled bulkhead, of class Bulkhead.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        Bulkhead instance = new Bulkhead("cached", 0, 0, 0);
+        // act
+        for(int i=0; i<1000; i++) {
+            assertThat(instance.tryAcquire()).isTrue();
+        }
+        instance.release();
+        // assert
+        assertThat(instance.isEnabled()).isFalse();
+        assertThat(instance.getRejected()).isEqualTo(0);
+    }
+
+}
@@ -1,20 +1,44 @@
 package weatherapp.controllers;
 
+import weatherapp.cache.DailyForecast;
+import weatherapp.services.ForecastResponse;
+import weatherapp.services.UpstreamUnavailableException;
 import weatherapp.services.WeatherService;
 import com.google.gson.*;
 import org.junit.jupiter.api.*;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
+import java.io.ByteArrayInputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.zip.GZIPInputStream;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.util.StreamUtils;
+import org.springframework.test.util.ReflectionTestUtils;
 import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
 import org.springframework.beans.factory.annotation.Autowired;
 import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.asyncDispatch;
 import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.request;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.header;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.content;
+import static org.assertj.core.api.Assertions.assertThat;
 import static org.hamcrest.Matchers.hasSize;
 import static org.hamcrest.Matchers.hasKey;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.containsString;
 
 /**
  * Test class used to ensure the correct functioning of the WeatherController.
@@ -28,6 +52,12 @@ public class WeatherControllerTest {
     @Autowired
     private MockMvc mvc;
     
+    /**
+     * Instance of the target class, whose bulkheads are replaced in some tests.
+     */
+    @Autowired
+    private WeatherController controller;
+    
     /**
      * Mock object used to abstract the tests to the WeatherController from the implementation of the WeatherService.
      */
@@ -66,7 +96,7 @@ public class WeatherControllerTest {
         JsonObject expResultObj = new JsonParser().parse(expResultStr).getAsJsonObject();
         JsonArray expResult = new JsonArray();
         expResult.add(expResultObj);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "now", new Long[0])).thenReturn(expResult);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "now", new Long[0])).thenReturn(ForecastResponse.fromJson(expResult));
         // act and assert
         mvc.perform(get("/weather/now/" + latitude + "," + longitude))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -85,7 +115,7 @@ public class WeatherControllerTest {
         JsonObject expResultObj = new JsonParser().parse(expResultStr).getAsJsonObject();
         JsonArray expResult = new JsonArray();
         expResult.add(expResultObj);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(days)})).thenReturn(expResult);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(days)})).thenReturn(ForecastResponse.fromJson(expResult));
         // act and assert
         mvc.perform(get("/weather/recent/" + latitude + "," + longitude + "/" + days))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -104,9 +134,9 @@ public class WeatherControllerTest {
         JsonArray expResult1 = new JsonArray();
         JsonArray expResult7 = new JsonArray();
         expResult1.add(expResultObj);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(1)})).thenReturn(expResult1);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(1)})).thenReturn(ForecastResponse.fromJson(expResult1));
         expResult7.add(expResultObj); expResult7.add(expResultObj); expResult7.add(expResultObj); expResult7.add(expResultObj); expResult7.add(expResultObj); expResult7.add(expResultObj); expResult7.add(expResultObj);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(7)})).thenReturn(expResult7);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "recent", new Long[]{Long.valueOf(7)})).thenReturn(ForecastResponse.fromJson(expResult7));
         // act and assert
         mvc.perform(get("/weather/recent/" + latitude + "," + longitude + "/" + -1))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -129,7 +159,7 @@ public class WeatherControllerTest {
         JsonObject expResultObj = new JsonParser().parse(expResultStr).getAsJsonObject();
         JsonArray expResult = new JsonArray();
         expResult.add(expResultObj);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "period", timemillis)).thenReturn(expResult);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "period", timemillis)).thenReturn(ForecastResponse.fromJson(expResult));
         // act and assert
         mvc.perform(get("/weather/period/" + latitude + "," + longitude + "/" + timedate[0] + "," + timedate[1]))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -149,9 +179,9 @@ public class WeatherControllerTest {
         JsonObject expResultObj = new JsonParser().parse(expResultStr).getAsJsonObject();
         JsonArray expResult = new JsonArray();
         expResult.add(expResultObj);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "period", timemillis)).thenReturn(expResult);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "period", new Long[]{-1L, 1556406000L})).thenReturn(expResult);
-        Mockito.when(weatherService.get(latitude + "," + longitude, "period", new Long[]{1556406000L, -1L})).thenReturn(expResult);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "period", timemillis)).thenReturn(ForecastResponse.fromJson(expResult));
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "period", new Long[]{-1L, 1556406000L})).thenReturn(ForecastResponse.fromJson(expResult));
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "period", new Long[]{1556406000L, -1L})).thenReturn(ForecastResponse.fromJson(expResult));
         // act and assert
         mvc.perform(get("/weather/period/" + latitude + "," + longitude + "/" + timedate[0] + "," + timedate[1]))
                 .andExpect(jsonPath("$", hasSize(1)))
@@ -164,6 +194,169 @@ public class WeatherControllerTest {
                 .andExpect(jsonPath("$[0].error", is("-1")));
     }
 
+    /**
+     * Test of getWeatherPeriod method, of class WeatherController, with a period longer than allowed.
+     */
+    @Test
+    public void testGetWeatherPeriodTooLong() throws Exception {
+        System.out.println("getWeatherPeriod TooLong");
+        // act and assert
+        mvc.perform(get("/weather/period/" + latitude + "," + longitude + "/2019-01-01,2019-02-01"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].error", is("-2")))
+                .andExpect(jsonPath("$[0].message", is("Invalid dates: periods are limited to 31 days")));
+        Mockito.verify(weatherService, Mockito.never()).getEncoded(Mockito.anyString(), Mockito.anyString(), Mockito.any());
+    }
+
+    /**
+     * Test of getWeatherNow method, of class WeatherController, with the entity tag of the response.
+     */
+    @Test
+    public void testGetWeatherNowNotModified() throws Exception {
+        System.out.println("getWeatherNow NotModified");
+        // arrange
+        JsonArray expResult = new JsonParser().parse("[{\"time\":1556838000,\"icon\":\"wind\"}]").getAsJsonArray();
+        ForecastResponse response = ForecastResponse.fromJson(expResult);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "now", new Long[0])).thenReturn(response);
+        // act and assert
+        mvc.perform(get("/weather/now/" + latitude + "," + longitude))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.ETAG, response.getETag()))
+                .andExpect(content().string(expResult.toString()));
+        mvc.perform(get("/weather/now/" + latitude + "," + longitude).header(HttpHeaders.IF_NONE_MATCH, "\"other\", " + response.getETag()))
+                .andExpect(status().isNotModified())
+                .andExpect(content().bytes(new byte[0]));
+        mvc.perform(get("/weather/now/" + latitude + "," + longitude).header(HttpHeaders.IF_NONE_MATCH, "\"other\""))
+                .andExpect(status().isOk());
+    }
+
+    /**
+     * Test of getWeatherNow method, of class WeatherController, while the external API is unavailable.
+     */
+    @Test
+    public void testGetWeatherNowUnavailable() throws Exception {
+        System.out.println("getWeatherNow Unavailable");
+        // arrange
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "now", new Long[0]))
+                .thenThrow(new UpstreamUnavailableException("External API unavailable", 12500));
+        // act and assert
+        mvc.perform(get("/weather/now/" + latitude + "," + longitude))
+                .andExpect(status().isServiceUnavailable())
+                .andExpect(header().string(HttpHeaders.RETRY_AFTER, "13"))
+                .andExpect(jsonPath("$[0].error", is("-6")));
+    }
+
+    /**
+     * Test of getWeatherPeriod method, of class WeatherController, with the bulkhead of period requests full.
+     */
+    @Test
+    public void testGetWeatherPeriodRejected() throws Exception {
+        System.out.println("getWeatherPeriod Rejected");
+        // arrange
+        Bulkhead bulkhead = new Bulkhead("period", 1, 0, 0);
+        Object previous = ReflectionTestUtils.getField(controller, "periodBulkhead");
+        ReflectionTestUtils.setField(controller, "periodBulkhead", bulkhead);
+        JsonArray expResult = new JsonParser().parse("[{\"time\":1556838000,\"icon\":\"wind\"}]").getAsJsonArray();
+        Mockito.when(weatherService.getEncoded(Mockito.anyString(), Mockito.anyString(), Mockito.any())).thenReturn(ForecastResponse.fromJson(expResult));
+        bulkhead.tryAcquire(); // a period request in progress
+        try {
+            // act and assert
+            mvc.perform(get("/weather/period/" + latitude + "," + longitude + "/2019-04-28,2019-04-30"))
+                    .andExpect(status().isServiceUnavailable())
+                    .andExpect(header().string(HttpHeaders.RETRY_AFTER, "1"))
+                    .andExpect(jsonPath("$[0].error", is("-7")));
+            mvc.perform(get("/weather/now/" + latitude + "," + longitude))
+                    .andExpect(status().isOk());
+            bulkhead.release();
+            mvc.perform(get("/weather/period/" + latitude + "," + longitude + "/2019-04-28,2019-04-30"))
+                    .andExpect(status().isOk());
+            assertThat(bulkhead.getAvailable()).isEqualTo(1);
+        } finally {
+            ReflectionTestUtils.setField(controller, "periodBulkhead", previous);
+        }
+    }
+
+    /**
+     * Test of getWeatherBatch method, of class WeatherController.
+     */
+    @Test
+    public void testGetWeatherBatch() throws Exception {
+        System.out.println("getWeatherBatch");
+        // arrange
+        String aveiro = latitude + "," + longitude;
+        String lisbon = "38.7223,-9.1393";
+        JsonArray forecast = new JsonParser().parse("[{\"time\":1556838000,\"icon\":\"wind\"}]").getAsJsonArray();
+        JsonArray error = new JsonParser().parse("[{\"error\":\"-4\",\"message\":\"Unable to retrieve forecast\"}]").getAsJsonArray();
+        Map<String, ForecastResponse> responses = new LinkedHashMap<>();
+        responses.put(aveiro, ForecastResponse.fromJson(forecast));
+        responses.put(lisbon, ForecastResponse.fromJson(error));
+        Mockito.when(weatherService.getBatch(Arrays.asList(aveiro, lisbon), "recent", new Long[]{7L})).thenReturn(responses);
+        String body = "{\"locations\":[\"" + aveiro + "\",\" 38.7223, -9.1393\"],\"type\":\"recent\",\"days\":10}";
+        // act and assert
+        MvcResult result = mvc.perform(post("/weather/batch").contentType(MediaType.APPLICATION_JSON).content(body))
+                .andExpect(status().isOk())
+                .andReturn();
+        JsonObject batch = new JsonParser().parse(result.getResponse().getContentAsString()).getAsJsonObject();
+        assertThat(batch.keySet()).containsExactly(aveiro, lisbon);
+        assertThat(batch.get(aveiro)).isEqualTo(forecast);
+        assertThat(batch.get(lisbon)).isEqualTo(error);
+        mvc.perform(post("/weather/batch").contentType(MediaType.APPLICATION_JSON).content("{\"locations\":[\"north\"]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].error", is("-3")));
+        mvc.perform(post("/weather/batch").contentType(MediaType.APPLICATION_JSON).content("{\"locations\":[]}"))
+                .andExpect(status().isOk())
+                .andExpect(jsonPath("$[0].error", is("-3")));
+    }
+
+    /**
+     * Test of getWeatherBatch method, of class WeatherController, with too many locations.
+     */
+    @Test
+    public void testGetWeatherBatchTooLarge() throws Exception {
+        System.out.println("getWeatherBatch too large");
+        // arrange
+        StringBuilder body = new StringBuilder("{\"locations\":[");
+        for(int i=0; i<101; i++) {
+            body.append(i > 0 ? "," : "").append(i == 100 ? "\"north\"" : "\"40.6405,-8.6538\""); // the invalid one is never read
+        }
+        body.append("]}");
+        // act and assert
+        mvc.perform(post("/weather/batch").contentType(MediaType.APPLICATION_JSON).content(body.toString()))
+                .andExpect(status().isBadRequest())
+                .andExpect(jsonPath("$[0].error", is("-3")))
+                .andExpect(jsonPath("$[0].message", is("Between 1 and 100 locations expected")));
+        Mockito.verify(weatherService, Mockito.never()).getBatch(Mockito.any(), Mockito.any(), Mockito.any());
+    }
+    
+    /**
+     * Test of getWeatherRecent method, of class WeatherController, with a compressed response.
+     */
+    @Test
+    public void testGetWeatherRecentGzip() throws Exception {
+        System.out.println("getWeatherRecent Gzip");
+        // arrange
+        JsonArray expResult = new JsonArray();
+        for(int i=0; i<7; i++) {
+            expResult.add(new JsonParser().parse("{\"time\":" + (1556838000L + i*86400L) + ",\"summary\":\"Breezy starting in the afternoon, continuing until evening.\",\"icon\":\"wind\",\"temperatureHigh\":72.37,\"temperatureLow\":54.23,\"humidity\":0.72,\"pressure\":1011.42,\"windSpeed\":9.6}"));
+        }
+        ForecastResponse response = ForecastResponse.fromJson(expResult);
+        Mockito.when(weatherService.getEncoded(latitude + "," + longitude, "recent", new Long[]{7L})).thenReturn(response);
+        // act
+        MvcResult result = mvc.perform(get("/weather/recent/" + latitude + "," + longitude + "/7").header(HttpHeaders.ACCEPT_ENCODING, "gzip, deflate"))
+                .andExpect(status().isOk())
+                .andExpect(header().string(HttpHeaders.CONTENT_ENCODING, "gzip"))
+                .andReturn();
+        String etag = result.getResponse().getHeader(HttpHeaders.ETAG);
+        // assert
+        try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getResponse().getContentAsByteArray()))) {
+            assertThat(StreamUtils.copyToString(in, StandardCharsets.UTF_8)).isEqualTo(expResult.toString());
+        }
+        assertThat(etag).isNotEqualTo(response.getETag());
+        mvc.perform(get("/weather/recent/" + latitude + "," + longitude + "/7").header(HttpHeaders.ACCEPT_ENCODING, "gzip").header(HttpHeaders.IF_NONE_MATCH, etag))
+                .andExpect(status().isNotModified());
+    }
+
     /**
      * Test of getCache method, of class WeatherController.
      */
@@ -175,13 +368,97 @@ public class WeatherControllerTest {
         String[] timedate = new String[]{"2019-04-28","2019-04-28"};
         String expResultStr = "{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\",\"sunriseTime\":1556429923,\"sunsetTime\":1556479673,\"moonPhase\":0.8,\"precipIntensity\":0,\"precipIntensityMax\":0,\"precipProbability\":0,\"temperatureHigh\":68.85,\"temperatureHighTime\":1556460000,\"temperatureLow\":52.26,\"temperatureLowTime\":1556506800,\"apparentTemperatureHigh\":68.85,\"apparentTemperatureHighTime\":1556460000,\"apparentTemperatureLow\":52.26,\"apparentTemperatureLowTime\":1556506800,\"dewPoint\":52.92,\"humidity\":0.85,\"pressure\":1021.43,\"windSpeed\":5.18,\"windGust\":12.34,\"windGustTime\":1556470800,\"windBearing\":355,\"cloudCover\":0.3,\"uvIndex\":8,\"uvIndexTime\":1556456400,\"visibility\":5.4,\"ozone\":309.01,\"temperatureMin\":46.48,\"temperatureMinTime\":1556427600,\"temperatureMax\":68.85,\"temperatureMaxTime\":1556460000,\"apparentTemperatureMin\":44.92,\"apparentTemperatureMinTime\":1556427600,\"apparentTemperatureMax\":68.85,\"apparentTemperatureMaxTime\":1556460000}";
         JsonObject expResultObj = new JsonParser().parse(expResultStr).getAsJsonObject();
-        JsonArray expResult = new JsonArray();
-        expResult.add(expResultObj);
-        Mockito.when(weatherService.getAll(true)).thenReturn(expResult);
+        String key = latitude + "," + longitude + "," + timedate[0];
+        Mockito.doAnswer(invocation -> {
+            BiConsumer<String, DailyForecast> action = invocation.getArgument(0);
+            action.accept(key, DailyForecast.fromJson(expResultObj));
+            return null;
+        }).when(weatherService).forEachCached(Mockito.any());
         // act and assert
         mvc.perform(get("/weather/cached/"))
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
                 .andExpect(jsonPath("$", hasSize(1)))
-                .andExpect(jsonPath("$[0]", hasKey(expResultObj.keySet().toArray()[0])));
+                .andExpect(jsonPath("$[0]", hasKey(key)))
+                .andExpect(content().string(containsString("\"icon\":\"fog\"")));
+    }
+
+    /**
+     * Test of getCache method, of class WeatherController, retrieving the cache by pages.
+     */
+    @Test
+    public void testGetCachePaged() throws Exception {
+        System.out.println("getCache Paged");
+        // arrange
+        Map<String, DailyForecast> first = new LinkedHashMap<>();
+        Map<String, DailyForecast> second = new LinkedHashMap<>();
+        first.put("a", DailyForecast.fromJson(new JsonParser().parse("{\"time\":1556406000,\"icon\":\"fog\"}").getAsJsonObject()));
+        first.put("b", DailyForecast.fromJson(new JsonParser().parse("{\"time\":1556492400,\"icon\":\"wind\"}").getAsJsonObject()));
+        second.put("c", DailyForecast.fromJson(new JsonParser().parse("{\"time\":1556578800,\"icon\":\"rain\"}").getAsJsonObject()));
+        Mockito.when(weatherService.getPage(null, 2)).thenReturn(first);
+        Mockito.when(weatherService.getPage("b", 2)).thenReturn(second);
+        // act
+        MvcResult result = mvc.perform(get("/weather/cached?limit=2"))
+                .andExpect(jsonPath("$", hasSize(2)))
+                .andExpect(jsonPath("$[1].b.icon", is("wind")))
+                .andReturn();
+        String cursor = result.getResponse().getHeader("X-Next-Cursor");
+        // assert
+        assertThat(cursor).isNotNull();
+        mvc.perform(get("/weather/cached?limit=2&cursor=" + cursor))
+                .andExpect(header().doesNotExist("X-Next-Cursor"))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].c.icon", is("rain")));
+        mvc.perform(get("/weather/cached?cursor=%21%21"))
+                .andExpect(jsonPath("$[0].error", is("-5")));
+        Mockito.verify(weatherService, Mockito.never()).forEachCached(Mockito.any());
+    }
+
+    /**
+     * Test of getStats method, of class WeatherController.
+     */
+    @Test
+    public void testGetStats() throws Exception {
+        System.out.println("getStats");
+        // arrange
+        JsonObject expResult = new JsonParser().parse("{\"upstream\":{\"plannedCalls\":3,\"savedCalls\":4}}").getAsJsonObject();
+        Mockito.when(weatherService.getStats()).thenReturn(expResult);
+        // act and assert
+        mvc.perform(get("/weather/stats"))
+                .andExpect(jsonPath("$.upstream.savedCalls", is(4)));
+    }
+
+    /**
+     * Test of getWeatherNowReactive method, of class WeatherController.
+     */
+    @Test
+    public void testGetWeatherNowReactive() throws Exception {
+        System.out.println("getWeatherNowReactive");
+        // arrange
+        JsonArray expResult = new JsonParser().parse("[{\"time\":1556838000,\"icon\":\"wind\"}]").getAsJsonArray();
+        Mockito.when(weatherService.getAsync(latitude + "," + longitude, "now", new Long[0])).thenReturn(CompletableFuture.completedFuture(expResult));
+        // act
+        MvcResult result = mvc.perform(get("/weather/reactive/now/" + latitude + "," + longitude))
+                .andExpect(request().asyncStarted())
+                .andReturn();
+        // assert
+        mvc.perform(asyncDispatch(result))
+                .andExpect(jsonPath("$", hasSize(1)))
+                .andExpect(jsonPath("$[0].icon", is("wind")));
+    }
+    
+    /**
+     * Test of getWeatherPeriodReactive method, of class WeatherController.
+     */
+    @Test
+    public void testGetWeatherPeriodReactiveBadInput() throws Exception {
+        System.out.println("getWeatherPeriodReactiveBadInput");
+        // act
+        MvcResult result = mvc.perform(get("/weather/reactive/period/" + latitude + "," + longitude + "/2019-04-30,2019-04-28"))
+                .andReturn();
+        // assert
+        mvc.perform(asyncDispatch(result))
+                .andExpect(jsonPath("$[0].error", is("-2")));
+        Mockito.verifyZeroInteractions(weatherService);
     }
     
 }
@@ -0,0 +1,98 @@
+package weatherapp.services;
+
+import org.junit.jupiter.api.*;
+import org.mockito.Mockito;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the CacheWarmer.
+ * 
+ * @author Filipe Pires
+ */
+public class CacheWarmerTest {
+    
+    /**
+     * Mock of the weather service, used to abstract the tests from the cache and the external API.
+     */
+    private WeatherService weatherService;
+    
+    /**
+     * Counters of the locations, shared with the instance being tested.
+     */
+    private HeavyHitters popularity;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        weatherService = Mockito.mock(WeatherService.class);
+        popularity = new HeavyHitters(16);
+    }
+
+    /**
+     * Test of warm method, of class CacheWarmer.
+     */
+    @Test
+    public void testWarm() {
+        System.out.println("warm");
+        // arrange
+        CacheWarmer instance = new CacheWarmer(weatherService, popularity, new GeoQuantizer(0), 2, 0, "");
+        for(int i=0; i<4; i++) { popularity.offer("40.64,-8.65"); }
+        for(int i=0; i<2; i++) { popularity.offer("38.72,-9.14"); }
+        popularity.offer("41.16,-8.63");
+        Mockito.when(weatherService.warm("38.72,-9.14", 7)).thenThrow(new IllegalStateException("unreachable"));
+        // act
+        int result = instance.warm();
+        // assert
+        assertThat(result).isEqualTo(1);
+        Mockito.verify(weatherService).warm("40.64,-8.65", 7);
+        Mockito.verify(weatherService, Mockito.never()).warm(Mockito.eq("41.16,-8.63"), Mockito.anyLong());
+        assertThat(popularity.count("40.64,-8.65")).isEqualTo(2);
+    }
+
+    /**
+     * Test of keepResident method, of class CacheWarmer, reading again the locations warmed in the last round.
+     */
+    @Test
+    public void testKeepResident() {
+        System.out.println("keepResident");
+        // arrange
+        CacheWarmer instance = new CacheWarmer(weatherService, popularity, new GeoQuantizer(0), 2, 0, 5, "");
+        for(int i=0; i<4; i++) { popularity.offer("40.64,-8.65"); }
+        for(int i=0; i<2; i++) { popularity.offer("38.72,-9.14"); }
+        Mockito.when(weatherService.warm("38.72,-9.14", 7)).thenThrow(new IllegalStateException("unreachable"));
+        int before = instance.keepResident(); // nothing warmed yet
+        instance.warm();
+        popularity.offer("41.16,-8.63");
+        // act
+        int result = instance.keepResident();
+        // assert
+        assertThat(before).isEqualTo(0);
+        assertThat(result).isEqualTo(1);
+        Mockito.verify(weatherService, Mockito.times(2)).warm("40.64,-8.65", 7);
+        Mockito.verify(weatherService, Mockito.times(1)).warm("38.72,-9.14", 7);
+        Mockito.verify(weatherService, Mockito.never()).warm(Mockito.eq("41.16,-8.63"), Mockito.anyLong());
+    }
+
+    /**
+     * Test of start method, of class CacheWarmer, warming the seed locations.
+     */
+    @Test
+    public void testStartWarmsSeeds() throws Exception {
+        System.out.println("start warms seeds");
+        // arrange
+        CacheWarmer instance = new CacheWarmer(weatherService, popularity, new GeoQuantizer(0.01), 5, 0, "40.6405,-8.6538; 38.7223,-9.1393");
+        // act
+        instance.start();
+        long deadline = System.currentTimeMillis() + 5000;
+        while(instance.warmedCount() < 2 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(50);
+        }
+        instance.close();
+        // assert
+        Mockito.verify(weatherService).warm("40.64,-8.65", 7);
+        Mockito.verify(weatherService).warm("38.72,-9.14", 7);
+    }
+    
+}
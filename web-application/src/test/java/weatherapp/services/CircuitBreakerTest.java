@@ -0,0 +1,178 @@
+package weatherapp.services;
+
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the CircuitBreaker.
+ *
+ * @author Filipe Pires
+ */
+public class CircuitBreakerTest {
+
+    /**
+     * Test of acquire and onResult methods, of class CircuitBreaker, opening the circuit.
+     */
+    @Test
+    public void testOpens() {
+        System.out.println("opens");
+        // arrange
+        CircuitBreaker instance = new CircuitBreaker(4, 0.5, 0, 30, 1);
+        long now = System.currentTimeMillis();
+        long closed = instance.acquire(now);
+        // act
+        instance.onResult(closed, true, 10, now);
+        instance.onResult(closed, false, 10, now);
+        instance.onResult(closed, true, 10, now);
+        CircuitBreaker.State notFull = instance.getState(); // 2 failures in 3 outcomes
+        instance.onResult(closed, false, 10, now);
+        CircuitBreaker.State full = instance.getState(); // 2 failures in 4 outcomes
+        long rejected = instance.acquire(now + 1000);
+        // assert
+        assertThat(notFull).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(full).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(rejected).isEqualTo(-1);
+        assertThat(instance.getOpenings()).isEqualTo(1);
+        assertThat(instance.getRejectedCalls()).isEqualTo(1);
+        assertThat(instance.getRetryAfter(now + 1000)).isEqualTo(29000);
+    }
+
+    /**
+     * Test of onResult method, of class CircuitBreaker, with the oldest outcomes leaving the window.
+     */
+    @Test
+    public void testSlidingWindow() {
+        System.out.println("sliding window");
+        // arrange
+        CircuitBreaker instance = new CircuitBreaker(3, 1.0, 0, 30, 1);
+        long now = System.currentTimeMillis();
+        long closed = instance.acquire(now);
+        // act
+        instance.onResult(closed, false, 10, now);
+        instance.onResult(closed, true, 10, now);
+        instance.onResult(closed, true, 10, now);
+        CircuitBreaker.State before = instance.getState();
+        instance.onResult(closed, true, 10, now); // the success leaves the window
+        // assert
+        assertThat(before).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(instance.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Test of onResult method, of class CircuitBreaker, with slow requests.
+     */
+    @Test
+    public void testSlowCalls() {
+        System.out.println("slow calls");
+        // arrange
+        CircuitBreaker instance = new CircuitBreaker(2, 1.0, 1000, 30, 1);
+        long now = System.currentTimeMillis();
+        long closed = instance.acquire(now);
+        // act
+        instance.onResult(closed, false, 999, now);
+        instance.onResult(closed, false, 1000, now);
+        CircuitBreaker.State fast = instance.getState();
+        instance.onResult(closed, false, 5000, now);
+        // assert
+        assertThat(fast).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(instance.getState()).isEqualTo(CircuitBreaker.State.OPEN);
+    }
+
+    /**
+     * Test of acquire and onResult methods, of class CircuitBreaker, probing the external API once open.
+     */
+    @Test
+    public void testProbes() {
+        System.out.println("probes");
+        // arrange
+        CircuitBreaker instance = new CircuitBreaker(1, 1.0, 0, 30, 2);
+        long now = System.currentTimeMillis();
+        instance.onResult(instance.acquire(now), true, 10, now);
+        // act
+        long[] firstProbes = {instance.acquire(now + 30000), instance.acquire(now + 30000), instance.acquire(now + 30000)};
+        instance.onResult(firstProbes[0], false, 10, now + 30100);
+        instance.onResult(firstProbes[1], true, 10, now + 30200);
+        CircuitBreaker.State failedProbe = instance.getState();
+        long reopened = instance.acquire(now + 31000);
+        long[] secondProbes = {instance.acquire(now + 60200), instance.acquire(now + 60200)};
+        instance.onResult(secondProbes[0], false, 10, now + 60300);
+        CircuitBreaker.State oneProbe = instance.getState();
+        instance.onResult(secondProbes[1], false, 10, now + 60300);
+        // assert
+        assertThat(firstProbes[0]).isNotNegative().isEqualTo(firstProbes[1]);
+        assertThat(firstProbes[2]).isEqualTo(-1);
+        assertThat(failedProbe).isEqualTo(CircuitBreaker.State.OPEN);
+        assertThat(reopened).isEqualTo(-1);
+        assertThat(secondProbes[0]).isNotNegative().isEqualTo(secondProbes[1]);
+        assertThat(oneProbe).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(instance.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+        assertThat(instance.acquire(now + 60400)).isNotNegative();
+        assertThat(instance.getOpenings()).isEqualTo(2);
+    }
+
+    /**
+     * Test of getRetryAfter method, of class CircuitBreaker, with the probes of the half-open circuit in progress.
+     */
+    @Test
+    public void testRetryAfterHalfOpen() {
+        System.out.println("retry after half open");
+        // arrange
+        CircuitBreaker slow = new CircuitBreaker(1, 1.0, 3000, 30, 1);
+        CircuitBreaker fast = new CircuitBreaker(1, 1.0, 0, 30, 1);
+        long now = System.currentTimeMillis();
+        slow.onResult(slow.acquire(now), true, 10, now);
+        fast.onResult(fast.acquire(now), true, 10, now);
+        // act
+        slow.acquire(now + 30000); // the only probe
+        fast.acquire(now + 30000);
+        long slowRejected = slow.acquire(now + 30100);
+        long fastRejected = fast.acquire(now + 30100);
+        // assert
+        assertThat(slowRejected).isEqualTo(-1);
+        assertThat(fastRejected).isEqualTo(-1);
+        assertThat(slow.getState()).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(slow.getRetryAfter(now + 30100)).isEqualTo(3000);
+        assertThat(fast.getRetryAfter(now + 30100)).isEqualTo(1000);
+    }
+
+    /**
+     * Test of onResult method, of class CircuitBreaker, with requests sent before the circuit changed state.
+     */
+    @Test
+    public void testStaleResults() {
+        System.out.println("stale results");
+        // arrange
+        CircuitBreaker instance = new CircuitBreaker(1, 1.0, 0, 30, 1);
+        long now = System.currentTimeMillis();
+        long slow = instance.acquire(now); // still in progress when the circuit opens
+        instance.onResult(instance.acquire(now), true, 10, now);
+        long probe = instance.acquire(now + 30000);
+        // act
+        instance.onResult(slow, false, 30500, now + 30500);
+        CircuitBreaker.State afterSlow = instance.getState();
+        instance.onResult(probe, false, 10, now + 30600);
+        // assert
+        assertThat(afterSlow).isEqualTo(CircuitBreaker.State.HALF_OPEN);
+        assertThat(instance.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+    /**
+     * Test of a disabled circuit breaker, of class CircuitBreaker.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        CircuitBreaker instance = new CircuitBreaker(0, 0.5, 1000, 30, 1);
+        long now = System.currentTimeMillis();
+        // act
+        for(int i=0; i<10; i++) {
+            instance.onResult(instance.acquire(now), true, 5000, now);
+        }
+        // assert
+        assertThat(instance.isEnabled()).isFalse();
+        assertThat(instance.acquire(now)).isNotNegative();
+        assertThat(instance.getState()).isEqualTo(CircuitBreaker.State.CLOSED);
+    }
+
+}
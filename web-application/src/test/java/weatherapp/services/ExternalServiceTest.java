@@ -1,7 +1,12 @@
 package weatherapp.services;
 
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
 import java.util.Arrays;
 import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
 import com.google.gson.JsonParser;
 import org.junit.jupiter.api.*;
@@ -84,5 +89,74 @@ public class ExternalServiceTest {
         assertThat(result.size()).isEqualTo(expResult.size());
         assertThat(result.get(0).getAsJsonObject().keySet()).isEqualTo(expResult.get(0).getAsJsonObject().keySet());
     }
+
+    /**
+     * Test of readDailyData method, of class ExternalService.
+     */
+    @Test
+    public void testReadDailyData() throws Exception {
+        System.out.println("readDailyData");
+        // arrange
+        String response = "{\"latitude\":40.6405,\"longitude\":-8.6538,\"timezone\":\"Europe/Lisbon\","
+                + "\"currently\":{\"time\":1557097200,\"summary\":\"Clear\"},"
+                + "\"hourly\":{\"summary\":\"Clear\",\"data\":[{\"time\":1557097200},{\"time\":1557100800}]},"
+                + "\"daily\":{\"summary\":\"Light rain tomorrow.\",\"icon\":\"rain\",\"data\":["
+                + "{\"time\":1557097200,\"summary\":\"Mostly cloudy.\",\"temperatureHigh\":65.53,\"precipType\":\"rain\"},"
+                + "{\"time\":1557183600,\"summary\":\"Overcast.\",\"temperatureHigh\":62.71}]},"
+                + "\"flags\":{\"sources\":[\"meteoalarm\"],\"units\":\"us\"},\"offset\":1}";
+        JsonArray expResult = new JsonParser().parse(response).getAsJsonObject().getAsJsonObject("daily").getAsJsonArray("data");
+        for(JsonElement day: expResult) {
+            day.getAsJsonObject().addProperty("timezone", "Europe/Lisbon");
+        }
+        // act
+        JsonArray result = ExternalService.readDailyData(new StringReader(response));
+        // assert
+        assertThat(result).isEqualTo(expResult);
+    }
+    
+    /**
+     * Test of readDailyData method, of class ExternalService, with the recorded responses used by the benchmarks.
+     */
+    @Test
+    public void testReadDailyDataRecorded() throws Exception {
+        System.out.println("readDailyData recorded");
+        // arrange
+        String[] fixtures = new String[]{"/darksky/forecast.json", "/darksky/time-machine.json"};
+        int[] expDays = new int[]{8, 1};
+        for(int i=0; i<fixtures.length; i++) {
+            JsonObject response;
+            try (Reader reader = new InputStreamReader(getClass().getResourceAsStream(fixtures[i]), StandardCharsets.UTF_8)) {
+                response = new JsonParser().parse(reader).getAsJsonObject();
+            }
+            // act
+            JsonArray result;
+            try (Reader reader = new InputStreamReader(getClass().getResourceAsStream(fixtures[i]), StandardCharsets.UTF_8)) {
+                result = ExternalService.readDailyData(reader);
+            }
+            // assert
+            assertThat(result).hasSize(expDays[i]);
+            JsonArray expResult = response.getAsJsonObject("daily").getAsJsonArray("data");
+            for(JsonElement day: expResult) {
+                day.getAsJsonObject().add("timezone", response.get("timezone"));
+            }
+            assertThat(result).isEqualTo(expResult);
+        }
+    }
+    
+    /**
+     * Test of readDailyData method, of class ExternalService.
+     */
+    @Test
+    public void testReadDailyDataError() throws Exception {
+        System.out.println("readDailyData error");
+        // arrange
+        String response = "{\"code\":400,\"error\":\"The given location is invalid.\"}";
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse(response));
+        // act
+        JsonArray result = ExternalService.readDailyData(new StringReader(response));
+        // assert
+        assertThat(result).isEqualTo(expResult);
+    }
     
 }
@@ -0,0 +1,85 @@
+package weatherapp.services;
+
+import com.google.gson.*;
+import java.nio.charset.StandardCharsets;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the ForecastResponse.
+ * 
+ * @author Filipe Pires
+ */
+public class ForecastResponseTest {
+    
+    /**
+     * Daily forecasts used in the tests, as returned by the external API.
+     */
+    private JsonArray days;
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        days = new JsonParser().parse("[{\"time\":1556406000,\"summary\":\"Nevoeiro de manhã.\",\"icon\":\"fog\",\"moonPhase\":0.8,\"windBearing\":355},"
+                + "{\"time\":1556492400,\"summary\":\"Clear throughout the day.\",\"icon\":\"clear-day\",\"precipProbability\":0.1,\"precipType\":\"rain\"}]").getAsJsonArray();
+    }
+
+    /**
+     * Test of toJsonBytes method, of class ForecastResponse.
+     */
+    @Test
+    public void testToJsonBytes() {
+        System.out.println("toJsonBytes");
+        // arrange
+        ForecastResponse instance = ForecastResponse.fromJson(days);
+        // act
+        byte[] result = instance.toJsonBytes();
+        // assert
+        assertThat(new String(result, StandardCharsets.UTF_8)).isEqualTo(instance.toJson().toString());
+        assertThat(instance.toJson()).isEqualTo(days);
+        assertThat(ForecastResponse.fromJson(new JsonArray()).toJsonBytes()).isEqualTo("[]".getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Test of getETag method, of class ForecastResponse.
+     */
+    @Test
+    public void testGetETag() {
+        System.out.println("getETag");
+        // arrange
+        JsonArray changed = days.deepCopy();
+        changed.get(1).getAsJsonObject().addProperty("precipProbability", 0.2);
+        JsonArray shorter = new JsonArray();
+        shorter.add(days.get(0));
+        // act
+        String etag = ForecastResponse.fromJson(days).getETag();
+        String same = ForecastResponse.fromJson(days.deepCopy()).getETag();
+        String other = ForecastResponse.fromJson(changed).getETag();
+        String prefix = ForecastResponse.fromJson(shorter).getETag();
+        // assert
+        assertThat(etag).startsWith("\"").endsWith("\"");
+        assertThat(same).isEqualTo(etag);
+        assertThat(other).isNotEqualTo(etag);
+        assertThat(prefix).isNotEqualTo(etag);
+    }
+
+    /**
+     * Test of a response holding the error of the external API, of class ForecastResponse.
+     */
+    @Test
+    public void testError() {
+        System.out.println("error");
+        // arrange
+        JsonArray error = new JsonParser().parse("[{\"code\":400,\"error\":\"The given location is invalid.\"}]").getAsJsonArray();
+        // act
+        ForecastResponse instance = ForecastResponse.fromJson(error);
+        // assert
+        assertThat(instance.isError()).isTrue();
+        assertThat(instance.getDays()).isEmpty();
+        assertThat(instance.getETag()).isNull();
+        assertThat(instance.toJson()).isEqualTo(error);
+    }
+    
+}
@@ -0,0 +1,58 @@
+package weatherapp.services;
+
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class used to ensure the correct functioning of the GeoQuantizer.
+ * 
+ * @author Filipe Pires
+ */
+public class GeoQuantizerTest {
+
+    /**
+     * Test of quantize method, of class GeoQuantizer.
+     */
+    @Test
+    public void testQuantize() {
+        System.out.println("quantize");
+        // arrange
+        GeoQuantizer instance = new GeoQuantizer(0.01);
+        // act
+        String result = instance.quantize("40.6405,-8.6538");
+        // assert
+        assertThat(result).isEqualTo("40.64,-8.65");
+    }
+
+    /**
+     * Test of quantize method, of class GeoQuantizer, with nearby locations.
+     */
+    @Test
+    public void testQuantizeNearby() {
+        System.out.println("quantize nearby");
+        // arrange
+        GeoQuantizer instance = new GeoQuantizer(0.05);
+        // act
+        String result1 = instance.quantize("38.7223,-9.1393");
+        String result2 = instance.quantize("38.7150,-9.1450");
+        // assert
+        assertThat(result1).isEqualTo(result2);
+        assertThat(result1).isEqualTo("38.7,-9.15");
+    }
+
+    /**
+     * Test of quantize method, of class GeoQuantizer, with snapping disabled or invalid coordinates.
+     */
+    @Test
+    public void testQuantizeUnchanged() {
+        System.out.println("quantize unchanged");
+        // arrange
+        GeoQuantizer disabled = new GeoQuantizer(0);
+        GeoQuantizer instance = new GeoQuantizer(0.01);
+        // act and assert
+        assertThat(disabled.quantize("40.6405,-8.6538")).isEqualTo("40.6405,-8.6538");
+        assertThat(instance.quantize("not,coordinates")).isEqualTo("not,coordinates");
+        assertThat(instance.quantize("40.6405")).isEqualTo("40.6405");
+    }
+    
+}
@@ -0,0 +1,115 @@
+package weatherapp.services;
+
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the HeavyHitters.
+ * 
+ * @author Filipe Pires
+ */
+public class HeavyHittersTest {
+
+    /**
+     * Test of offer and top methods, of class HeavyHitters.
+     */
+    @Test
+    public void testOfferTop() {
+        System.out.println("offer/top");
+        // arrange
+        HeavyHitters instance = new HeavyHitters(8); // guarantees the locations with more than 2500/8 requests
+        // act
+        for(int i=0; i<1000; i++) {
+            instance.offer("aveiro");
+            if(i % 2 == 0) { instance.offer("lisbon"); }
+            instance.offer("rare" + i); // every other location is requested once
+        }
+        // assert
+        assertThat(instance.top(2)).containsExactly("aveiro", "lisbon");
+        assertThat(instance.count("aveiro")).isGreaterThanOrEqualTo(1000);
+        assertThat(instance.size()).isEqualTo(8);
+    }
+
+    /**
+     * Test of decay method, of class HeavyHitters.
+     */
+    @Test
+    public void testDecay() {
+        System.out.println("decay");
+        // arrange
+        HeavyHitters instance = new HeavyHitters(10);
+        instance.offer("porto");
+        instance.offer("porto");
+        instance.offer("aveiro");
+        // act
+        instance.decay();
+        // assert
+        assertThat(instance.count("porto")).isEqualTo(1);
+        assertThat(instance.count("aveiro")).isEqualTo(0);
+        assertThat(instance.top(10)).containsExactly("porto");
+    }
+
+    /**
+     * Test of offer and merge methods, of class HeavyHitters, counting from many threads.
+     */
+    @Test
+    public void testConcurrentOffers() throws Exception {
+        System.out.println("concurrent offers");
+        // arrange
+        HeavyHitters instance = new HeavyHitters(4);
+        Thread[] threads = new Thread[4];
+        for(int t=0; t<threads.length; t++) {
+            threads[t] = new Thread(() -> {
+                for(int i=0; i<10000; i++) {
+                    instance.offer("aveiro");
+                    if(i % 1000 == 0) { instance.merge(); }
+                }
+            });
+        }
+        // act
+        for(Thread thread: threads) { thread.start(); }
+        for(Thread thread: threads) { thread.join(); }
+        // assert
+        assertThat(instance.top(1)).containsExactly("aveiro");
+        assertThat(instance.count("aveiro")).isEqualTo(40000);
+        assertThat(instance.getDropped()).isEqualTo(0);
+    }
+
+    /**
+     * Test of offer method, of class HeavyHitters, with more new locations than buffered between merges.
+     */
+    @Test
+    public void testOfferBufferFull() {
+        System.out.println("offer buffer full");
+        // arrange
+        HeavyHitters instance = new HeavyHitters(8);
+        instance.offer("aveiro");
+        // act
+        for(int i=0; i<2000; i++) {
+            instance.offer("rare" + i);
+        }
+        for(int i=0; i<1000; i++) {
+            instance.offer("aveiro"); // already buffered
+        }
+        // assert
+        assertThat(instance.getDropped()).isEqualTo(2000 - 1023);
+        assertThat(instance.top(1)).containsExactly("aveiro");
+        assertThat(instance.count("aveiro")).isGreaterThanOrEqualTo(1001);
+    }
+
+    /**
+     * Test of a disabled sketch, of class HeavyHitters.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        HeavyHitters instance = new HeavyHitters(0);
+        // act
+        instance.offer("porto");
+        // assert
+        assertThat(instance.isEnabled()).isFalse();
+        assertThat(instance.top(1)).isEmpty();
+    }
+    
+}
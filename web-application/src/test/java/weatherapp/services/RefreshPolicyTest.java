@@ -0,0 +1,69 @@
+package weatherapp.services;
+
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the RefreshPolicy.
+ * 
+ * @author Filipe Pires
+ */
+public class RefreshPolicyTest {
+
+    /**
+     * Test of isStale and isDue methods, of class RefreshPolicy.
+     */
+    @Test
+    public void testIsStaleAndDue() {
+        System.out.println("isStale/isDue");
+        // arrange
+        RefreshPolicy instance = new RefreshPolicy(60, 10);
+        long now = System.currentTimeMillis();
+        // act
+        boolean freshDue = instance.isDue(now - 30000, 1, now);
+        boolean aheadDue = instance.isDue(now - 55000, 1, now);
+        boolean aheadStale = instance.isStale(now - 55000, now);
+        boolean staleStale = instance.isStale(now - 65000, now);
+        // assert
+        assertThat(freshDue).isFalse();
+        assertThat(aheadDue).isTrue();
+        assertThat(aheadStale).isFalse();
+        assertThat(staleStale).isTrue();
+    }
+
+    /**
+     * Test of isDue method, of class RefreshPolicy, refreshing ahead of time only the forecasts read often.
+     */
+    @Test
+    public void testIsDueReadOften() {
+        System.out.println("isDue read often");
+        // arrange
+        RefreshPolicy instance = new RefreshPolicy(60, 10, 3);
+        long now = System.currentTimeMillis();
+        // act
+        boolean aheadRarelyRead = instance.isDue(now - 55000, 2, now);
+        boolean aheadOftenRead = instance.isDue(now - 55000, 3, now);
+        boolean staleRarelyRead = instance.isDue(now - 65000, 1, now);
+        // assert
+        assertThat(aheadRarelyRead).isFalse();
+        assertThat(aheadOftenRead).isTrue();
+        assertThat(staleRarelyRead).isTrue();
+    }
+
+    /**
+     * Test of a disabled policy, of class RefreshPolicy.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        RefreshPolicy instance = new RefreshPolicy(0, 10);
+        // act
+        boolean due = instance.isDue(0, 1, System.currentTimeMillis());
+        // assert
+        assertThat(instance.isEnabled()).isFalse();
+        assertThat(due).isFalse();
+        assertThat(instance.getRefreshAhead()).isEqualTo(0);
+    }
+    
+}
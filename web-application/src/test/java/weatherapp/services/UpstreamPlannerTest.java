@@ -0,0 +1,103 @@
+package weatherapp.services;
+
+import java.time.LocalDate;
+import java.util.*;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Test class used to ensure the correct functioning of the UpstreamPlanner.
+ * 
+ * @author Filipe Pires
+ */
+public class UpstreamPlannerTest {
+    
+    /**
+     * Instance of the target class to be tested.
+     */
+    private UpstreamPlanner instance;
+    
+    /**
+     * Day considered as the current day in the tests.
+     */
+    private final LocalDate today = LocalDate.of(2019, 4, 28);
+    
+    /**
+     * Method called every time a method annotated with @Test is executed, before its execution.
+     */
+    @BeforeEach
+    public void setUp() {
+        instance = new UpstreamPlanner();
+    }
+
+    /**
+     * Test of plan method, of class UpstreamPlanner, with future days only.
+     */
+    @Test
+    public void testPlanFutureDays() {
+        System.out.println("plan future days");
+        // arrange
+        List<LocalDate> missing = Arrays.asList(today, today.plusDays(2), today.plusDays(7));
+        // act
+        List<UpstreamPlanner.UpstreamCall> result = instance.plan(missing, today, missing.size());
+        // assert
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).isForecast()).isTrue();
+        assertThat(result.get(0).getFirstDay()).isEqualTo(today);
+        assertThat(instance.getSavedCalls()).isEqualTo(2);
+    }
+
+    /**
+     * Test of plan method, of class UpstreamPlanner, with past and future days.
+     */
+    @Test
+    public void testPlanPastAndFutureDays() {
+        System.out.println("plan past and future days");
+        // arrange
+        List<LocalDate> missing = Arrays.asList(today.minusDays(2), today.minusDays(1), today, today.plusDays(1));
+        // act
+        List<UpstreamPlanner.UpstreamCall> result = instance.plan(missing, today, missing.size());
+        // assert
+        assertThat(result).hasSize(3);
+        assertThat(result.get(0).isForecast()).isFalse();
+        assertThat(result.get(0).getFirstDay()).isEqualTo(today.minusDays(2));
+        assertThat(result.get(1).getFirstDay()).isEqualTo(today.minusDays(1));
+        assertThat(result.get(2).isForecast()).isTrue();
+        assertThat(instance.getPlannedCalls()).isEqualTo(3);
+        assertThat(instance.getSavedCalls()).isEqualTo(1);
+    }
+
+    /**
+     * Test of plan method, of class UpstreamPlanner, with days beyond the forecast range.
+     */
+    @Test
+    public void testPlanBeyondForecast() {
+        System.out.println("plan beyond forecast");
+        // arrange
+        List<LocalDate> missing = Arrays.asList(today.plusDays(UpstreamPlanner.FORECAST_DAYS));
+        // act
+        List<UpstreamPlanner.UpstreamCall> result = instance.plan(missing, today, 1);
+        // assert
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).isForecast()).isFalse();
+        assertThat(instance.getSavedCalls()).isEqualTo(0);
+    }
+
+    /**
+     * Test of planRefresh method, of class UpstreamPlanner, left out of the statistics.
+     */
+    @Test
+    public void testPlanRefresh() {
+        System.out.println("planRefresh");
+        // arrange
+        List<LocalDate> due = Arrays.asList(today, today.plusDays(1));
+        // act
+        List<UpstreamPlanner.UpstreamCall> result = instance.planRefresh(due, today);
+        // assert
+        assertThat(result).hasSize(1);
+        assertThat(result.get(0).isForecast()).isTrue();
+        assertThat(instance.getPlannedCalls()).isEqualTo(0);
+        assertThat(instance.getSavedCalls()).isEqualTo(0);
+    }
+
+}
@@ -0,0 +1,133 @@
+package weatherapp.services;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.jupiter.api.*;
+import static org.assertj.core.api.Assertions.*;
+
+/**
+ * Test class used to ensure the correct functioning of the UpstreamPool.
+ *
+ * @author Filipe Pires
+ */
+public class UpstreamPoolTest {
+
+    /**
+     * Test of tryAcquire and execute methods, of class UpstreamPool, skipping a request with the queue full.
+     */
+    @Test
+    public void testTryAcquire() throws Exception {
+        System.out.println("tryAcquire");
+        // arrange
+        UpstreamPool instance = new UpstreamPool("period", 1, 1);
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(2);
+        // act
+        boolean running = instance.tryAcquire();
+        instance.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        });
+        boolean queued = instance.tryAcquire();
+        instance.execute(done::countDown);
+        long start = System.nanoTime();
+        boolean beyondQueue = instance.tryAcquire(); // rejected without waiting for the running request
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        blocked.countDown();
+        boolean finished = done.await(5, TimeUnit.SECONDS);
+        instance.shutdown();
+        // assert
+        assertThat(running).isTrue();
+        assertThat(queued).isTrue();
+        assertThat(beyondQueue).isFalse();
+        assertThat(waited).isLessThan(100);
+        assertThat(finished).isTrue();
+        assertThat(instance.getRejected()).isEqualTo(1);
+    }
+
+    /**
+     * Test of acquire method, of class UpstreamPool, waiting for a place with the queue full.
+     */
+    @Test
+    public void testAcquireWaits() throws Exception {
+        System.out.println("acquire waits");
+        // arrange
+        UpstreamPool instance = new UpstreamPool("recent", 1, 0);
+        CountDownLatch blocked = new CountDownLatch(1);
+        instance.acquire();
+        instance.execute(() -> {
+            try {
+                blocked.await();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        // act
+        CompletableFuture<Boolean> waiting = CompletableFuture.supplyAsync(instance::acquire);
+        long deadline = System.currentTimeMillis() + 5000;
+        while(instance.getWaiting() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        boolean waited = !waiting.isDone();
+        blocked.countDown(); // the request being sent completes
+        boolean acquired = waiting.get(5, TimeUnit.SECONDS);
+        instance.release();
+        instance.shutdown();
+        // assert
+        assertThat(waited).isTrue();
+        assertThat(acquired).isTrue();
+        assertThat(instance.getWaiting()).isEqualTo(0);
+        assertThat(instance.getRejected()).isEqualTo(0);
+    }
+
+    /**
+     * Test of execute method, of class UpstreamPool, giving back the place of a failed request.
+     */
+    @Test
+    public void testExecuteFails() throws Exception {
+        System.out.println("execute fails");
+        // arrange
+        UpstreamPool instance = new UpstreamPool("now", 1, 0);
+        // act
+        instance.tryAcquire();
+        instance.execute(() -> {
+            throw new IllegalStateException("Failed request");
+        });
+        long deadline = System.currentTimeMillis() + 5000;
+        while(instance.getAvailable() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        boolean afterFailure = instance.tryAcquire();
+        instance.release();
+        instance.shutdown();
+        // assert
+        assertThat(afterFailure).isTrue();
+        assertThat(instance.getAvailable()).isEqualTo(1);
+    }
+
+    /**
+     * Test of a disabled pool, of class UpstreamPool.
+     */
+    @Test
+    public void testDisabled() {
+        System.out.println("disabled");
+        // arrange
+        UpstreamPool instance = new UpstreamPool("recent", 0, 0);
+        Thread[] sender = new Thread[1];
+        // act
+        for(int i=0; i<1000; i++) {
+            assertThat(instance.tryAcquire()).isTrue();
+        }
+        instance.execute(() -> sender[0] = Thread.currentThread());
+        // assert
+        assertThat(instance.isEnabled()).isFalse();
+        assertThat(sender[0]).isSameAs(Thread.currentThread());
+        assertThat(instance.getRejected()).isEqualTo(0);
+    }
+
+}
@@ -1,8 +1,17 @@
 package weatherapp.services;
 
+import weatherapp.cache.DailyForecast;
+import weatherapp.cache.ForecastCodec;
 import weatherapp.cache.LocalCache;
-import java.util.Arrays;
+import weatherapp.cache.OffHeapStore;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import com.google.gson.*;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
@@ -12,7 +21,11 @@ import org.springframework.http.*;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.context.annotation.Bean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.ResourceAccessException;
+import reactor.core.publisher.Mono;
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
 /**
  * Test class used to ensure the correct functioning of the WeatherService.
@@ -86,8 +99,7 @@ public class WeatherServiceTest {
         headers.setContentType(MediaType.APPLICATION_JSON);
         String type = "now";
         Long[] options = new Long[0];
-        Long currentTime = System.currentTimeMillis() / 1000;
-        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "," + currentTime + "?exclude=currently,minutely,hourly,alerts,flags";
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
         
         String expResultStr = "{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\",\"sunriseTime\":1556429923,\"sunsetTime\":1556479673,\"moonPhase\":0.8,\"precipIntensity\":0,\"precipIntensityMax\":0,\"precipProbability\":0,\"temperatureHigh\":68.85,\"temperatureHighTime\":1556460000,\"temperatureLow\":52.26,\"temperatureLowTime\":1556506800,\"apparentTemperatureHigh\":68.85,\"apparentTemperatureHighTime\":1556460000,\"apparentTemperatureLow\":52.26,\"apparentTemperatureLowTime\":1556506800,\"dewPoint\":52.92,\"humidity\":0.85,\"pressure\":1021.43,\"windSpeed\":5.18,\"windGust\":12.34,\"windGustTime\":1556470800,\"windBearing\":355,\"cloudCover\":0.3,\"uvIndex\":8,\"uvIndexTime\":1556456400,\"visibility\":5.4,\"ozone\":309.01,\"temperatureMin\":46.48,\"temperatureMinTime\":1556427600,\"temperatureMax\":68.85,\"temperatureMaxTime\":1556460000,\"apparentTemperatureMin\":44.92,\"apparentTemperatureMinTime\":1556427600,\"apparentTemperatureMax\":68.85,\"apparentTemperatureMaxTime\":1556460000}";
         JsonObject expResultObj = new JsonParser().parse(expResultStr).getAsJsonObject();
@@ -158,6 +170,476 @@ public class WeatherServiceTest {
         assertThat(result.get(0).getAsJsonObject().keySet()).isEqualTo(expResult.get(0).getAsJsonObject().keySet());
     }
     
+    /**
+     * Test of get method, of class WeatherService, with the days of a period requested concurrently.
+     */
+    @Test
+    public void testGetPeriodConcurrent() throws Exception {
+        System.out.println("get period concurrent");
+        // arrange
+        String type = "period";
+        int days = 4;
+        long delay = 300;
+        Long[] options = new Long[]{1556406000L, 1556406000L + (days-1)*86400L};
+        for(int i=0; i<days; i++) {
+            long time = options[0] + i*86400L;
+            String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "," + time + "?exclude=currently,minutely,hourly,alerts,flags";
+            JsonArray day = new JsonArray();
+            day.add(new JsonParser().parse("{\"time\":" + time + "}"));
+            Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenAnswer(invocation -> {
+                Thread.sleep(delay);
+                return day;
+            });
+        }
+        UpstreamPool pool = new UpstreamPool(type, days, 0);
+        ReflectionTestUtils.setField(weatherService, "periodUpstreamPool", pool);
+        // act
+        long start = System.currentTimeMillis();
+        JsonArray result = weatherService.get(coords, type, options);
+        long elapsed = System.currentTimeMillis() - start;
+        pool.shutdown();
+        //assert
+        assertThat(result.size()).isEqualTo(days);
+        for(int i=0; i<days; i++) {
+            assertThat(result.get(i).getAsJsonObject().get("time").getAsLong()).isEqualTo(options[0] + i*86400L);
+        }
+        assertThat(elapsed).isLessThan(days * delay);
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, when the forecast is already cached.
+     */
+    @Test
+    public void testGetCached() {
+        System.out.println("get cached");
+        // arrange
+        String type = "recent";
+        Long[] options = new Long[]{Long.valueOf(1)};
+        String key = coords + "," + java.time.LocalDate.now();
+        JsonObject expResultObj = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}").getAsJsonObject();
+        JsonArray expResult = new JsonArray();
+        expResult.add(expResultObj);
+        Mockito.when(localCache.get(key)).thenReturn(DailyForecast.fromJson(expResultObj));
+        // act
+        JsonArray result = weatherService.get(coords, type, options);
+        // assert
+        assertThat(result).isEqualTo(expResult);
+        Mockito.verify(externalService, Mockito.never()).getWeatherForecast(Mockito.anyString(), Mockito.any());
+        Mockito.verify(localCache, Mockito.never()).getAll(Mockito.anyBoolean());
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, when the forecast is in the second tier of the cache.
+     */
+    @Test
+    public void testGetPromotesFromOffHeap() {
+        System.out.println("get promotes from off-heap");
+        // arrange
+        OffHeapStore<DailyForecast> offHeapStore = new OffHeapStore<>(new ForecastCodec(), 1 << 16, 1 << 12, 0);
+        ReflectionTestUtils.setField(weatherService, "offHeapStore", offHeapStore);
+        String key = coords + "," + java.time.LocalDate.now();
+        JsonObject expResultObj = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}").getAsJsonObject();
+        offHeapStore.put(key, DailyForecast.fromJson(expResultObj));
+        // act
+        JsonArray result = weatherService.get(coords, "now", new Long[0]);
+        // assert
+        assertThat(result.get(0)).isEqualTo(expResultObj);
+        assertThat(offHeapStore.size()).isEqualTo(0);
+        Mockito.verify(localCache).put(Mockito.eq(key), Mockito.any(DailyForecast.class));
+        Mockito.verify(externalService, Mockito.never()).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, when the cached forecasts are past their soft time-to-live.
+     */
+    @Test
+    public void testGetRefreshesStaleDays() {
+        System.out.println("get refreshes stale days");
+        // arrange
+        LocalCache<String, DailyForecast> cache = new LocalCache<>();
+        ReflectionTestUtils.setField(weatherService, "localCache", cache);
+        ReflectionTestUtils.setField(weatherService, "refreshPolicy", new RefreshPolicy(60, 10));
+        java.time.LocalDate today = java.time.LocalDate.now();
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
+        JsonObject staleObj = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\"}").getAsJsonObject();
+        JsonObject pastObj = new JsonParser().parse("{\"time\":1556319600}").getAsJsonObject();
+        JsonArray freshResult = new JsonArray();
+        freshResult.add(new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Clear throughout the day.\"}"));
+        cache.put(coords + "," + today, DailyForecast.fromJson(staleObj, System.currentTimeMillis() - 120000));
+        cache.put(coords + "," + today.minusDays(1), DailyForecast.fromJson(pastObj, System.currentTimeMillis() - 120000));
+        Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenReturn(freshResult);
+        // act
+        JsonArray stale = weatherService.get(coords, "now", new Long[0]);
+        JsonArray fresh = weatherService.get(coords, "now", new Long[0]);
+        weatherService.get(coords, "period", new Long[]{today.minusDays(1).atStartOfDay(java.time.ZoneId.systemDefault()).toEpochSecond(), today.minusDays(1).atStartOfDay(java.time.ZoneId.systemDefault()).toEpochSecond()});
+        // assert
+        assertThat(stale.get(0)).isEqualTo(staleObj);
+        assertThat(fresh.get(0)).isEqualTo(freshResult.get(0));
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+        assertThat(weatherService.getStats().getAsJsonObject("refresh").get("staleHits").getAsLong()).isEqualTo(1);
+    }
+    
+    /**
+     * Test of warm method, of class WeatherService, and of the counting of requested locations.
+     */
+    @Test
+    public void testWarm() {
+        System.out.println("warm");
+        // arrange
+        HeavyHitters popularity = new HeavyHitters(16);
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        ReflectionTestUtils.setField(weatherService, "popularity", popularity);
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
+        JsonArray expResult = new JsonArray();
+        for(int i=0; i<8; i++) {
+            expResult.add(new JsonParser().parse("{\"time\":" + (1556406000L + i*86400L) + "}"));
+        }
+        Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenReturn(expResult);
+        // act
+        JsonArray warmed = weatherService.warm(coords, 7);
+        JsonArray now = weatherService.get(coords, "now", new Long[0]);
+        // assert
+        assertThat(warmed.size()).isEqualTo(7);
+        assertThat(now.get(0)).isEqualTo(expResult.get(0));
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+        assertThat(popularity.count(coords)).isEqualTo(1);
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, with the days of a location in another time zone than the server.
+     */
+    @Test
+    public void testGetKeysDaysInLocationZone() {
+        System.out.println("get keys days in location zone");
+        // arrange
+        LocalCache<String, DailyForecast> cache = new LocalCache<>();
+        ReflectionTestUtils.setField(weatherService, "localCache", cache);
+        java.time.ZoneId zone = java.time.ZoneId.of("Pacific/Kiritimati"); // 14 hours ahead of UTC
+        java.time.LocalDate today = java.time.LocalDate.now(zone);
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
+        JsonArray expResult = new JsonArray();
+        for(int i=0; i<8; i++) {
+            expResult.add(new JsonParser().parse("{\"time\":" + today.plusDays(i).atStartOfDay(zone).toEpochSecond() + "}"));
+        }
+        JsonArray httpResponse = new JsonArray();
+        for(JsonElement day: expResult) {
+            JsonObject record = day.getAsJsonObject().deepCopy();
+            record.addProperty("timezone", zone.getId());
+            httpResponse.add(record);
+        }
+        Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenReturn(httpResponse);
+        // act
+        JsonArray recent = weatherService.get(coords, "recent", new Long[]{Long.valueOf(2)});
+        JsonArray now = weatherService.get(coords, "now", new Long[0]);
+        // assert
+        assertThat(recent).containsExactly(expResult.get(0), expResult.get(1));
+        assertThat(now).containsExactly(expResult.get(0));
+        assertThat(cache.get(coords + "," + today).getTime()).isEqualTo(expResult.get(0).getAsJsonObject().get("time").getAsLong());
+        assertThat(cache.get(coords + "," + today.plusDays(7))).isNotNull();
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, with requests of different types sharing the cached days.
+     */
+    @Test
+    public void testGetReusesCachedDays() {
+        System.out.println("get reuses cached days");
+        // arrange
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
+        JsonArray expResult = new JsonArray();
+        for(int i=0; i<8; i++) {
+            expResult.add(new JsonParser().parse("{\"time\":" + (1556406000L + i*86400L) + "}"));
+        }
+        Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenReturn(expResult);
+        // act
+        JsonArray recent = weatherService.get(coords, "recent", new Long[]{Long.valueOf(3)});
+        JsonArray longer = weatherService.get(coords, "recent", new Long[]{Long.valueOf(5)});
+        JsonArray now = weatherService.get(coords, "now", new Long[0]);
+        //assert
+        assertThat(recent.size()).isEqualTo(3);
+        assertThat(longer.size()).isEqualTo(5);
+        assertThat(now.get(0)).isEqualTo(expResult.get(0));
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, with nearby locations sharing the cached days.
+     */
+    @Test
+    public void testGetNearbyLocations() {
+        System.out.println("get nearby locations");
+        // arrange
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        ReflectionTestUtils.setField(weatherService, "geoQuantizer", new GeoQuantizer(0.01));
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/40.64,-8.65?exclude=currently,minutely,hourly,alerts,flags";
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000}"));
+        Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenReturn(expResult);
+        // act
+        JsonArray result1 = weatherService.get("40.6405,-8.6538", "now", new Long[0]);
+        JsonArray result2 = weatherService.get("40.6412,-8.6541", "now", new Long[0]);
+        //assert
+        assertThat(result1).isEqualTo(result2);
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+        assertThat(weatherService.getStats().getAsJsonObject("locations").get("snappedHits").getAsLong()).isEqualTo(1);
+    }
+    
+    /**
+     * Test of get method, of class WeatherService, with concurrent requests for the same forecast.
+     */
+    @Test
+    public void testGetConcurrentMisses() throws Exception {
+        System.out.println("get concurrent misses");
+        // arrange
+        String type = "recent";
+        Long[] options = new Long[]{Long.valueOf(1)};
+        JsonObject expResultObj = new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}").getAsJsonObject();
+        JsonArray expResult = new JsonArray();
+        expResult.add(expResultObj);
+        Mockito.when(externalService.getWeatherForecast(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            Thread.sleep(500);
+            return expResult;
+        });
+        int threads = 8;
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<JsonArray>> results = new ArrayList<>();
+        // act
+        for(int i=0; i<threads; i++) {
+            results.add(executor.submit(() -> {
+                start.await();
+                return weatherService.get(coords, type, options);
+            }));
+        }
+        start.countDown();
+        for(Future<JsonArray> result: results) {
+            //assert
+            assertThat(result.get().size()).isEqualTo(expResult.size());
+        }
+        executor.shutdown();
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+    
+    /**
+     * Test of getBatch method, of class WeatherService.
+     */
+    @Test
+    public void testGetBatch() throws Exception {
+        System.out.println("getBatch");
+        // arrange
+        UpstreamPool pool = new UpstreamPool("recent", 4, 0);
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        ReflectionTestUtils.setField(weatherService, "recentUpstreamPool", pool);
+        String lisbon = "38.7223,-9.1393";
+        String porto = "41.1579,-8.6291";
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}"));
+        CountDownLatch concurrent = new CountDownLatch(3);
+        Mockito.when(externalService.getWeatherForecast(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            concurrent.countDown();
+            if(!concurrent.await(5, TimeUnit.SECONDS)) { // released only once every location is being requested
+                throw new IllegalStateException("Requests sent one at a time");
+            }
+            if(invocation.getArgument(0).toString().contains(porto)) {
+                throw new IllegalStateException("Unavailable");
+            }
+            return expResult;
+        });
+        // act
+        Map<String, ForecastResponse> responses = weatherService.getBatch(Arrays.asList(coords, lisbon, coords, porto), "recent", new Long[]{Long.valueOf(1)});
+        pool.shutdown();
+        // assert
+        assertThat(responses.keySet()).containsExactly(coords, lisbon, porto);
+        assertThat(responses.get(coords).toJson()).isEqualTo(expResult);
+        assertThat(responses.get(lisbon).toJson()).isEqualTo(expResult);
+        assertThat(responses.get(porto).isError()).isTrue();
+        Mockito.verify(externalService, Mockito.times(3)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+
+    /**
+     * Test of getBatch method, of class WeatherService, with more locations than places in the upstream pool.
+     */
+    @Test
+    public void testGetBatchLargerThanPool() {
+        System.out.println("getBatch larger than pool");
+        // arrange
+        UpstreamPool pool = new UpstreamPool("recent", 2, 1);
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        ReflectionTestUtils.setField(weatherService, "recentUpstreamPool", pool);
+        List<String> locations = new ArrayList<>();
+        for(int i=0; i<25; i++) {
+            locations.add("40." + (10 + i) + ",-8.65");
+        }
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}"));
+        AtomicInteger sending = new AtomicInteger();
+        AtomicInteger maxSending = new AtomicInteger();
+        Mockito.when(externalService.getWeatherForecast(Mockito.anyString(), Mockito.any())).thenAnswer(invocation -> {
+            maxSending.accumulateAndGet(sending.incrementAndGet(), Math::max);
+            Thread.sleep(5);
+            sending.decrementAndGet();
+            return expResult;
+        });
+        // act
+        Map<String, ForecastResponse> responses = weatherService.getBatch(locations, "recent", new Long[]{Long.valueOf(1)});
+        pool.shutdown();
+        // assert
+        assertThat(responses.keySet()).containsExactlyElementsOf(locations);
+        for(ForecastResponse response: responses.values()) {
+            assertThat(response.isError()).isFalse();
+            assertThat(response.toJson()).isEqualTo(expResult);
+        }
+        assertThat(maxSending.get()).isLessThanOrEqualTo(2);
+        assertThat(pool.getRejected()).isEqualTo(0);
+        Mockito.verify(externalService, Mockito.times(25)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+
+    /**
+     * Test of get method, of class WeatherService, recording the requests sent to the external API.
+     */
+    @Test
+    public void testGetRecordsUpstreamRequests() {
+        System.out.println("get records upstream requests");
+        // arrange
+        MeterRegistry registry = new SimpleMeterRegistry();
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        ReflectionTestUtils.setField(weatherService, "meterRegistry", registry);
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000,\"icon\":\"fog\"}"));
+        JsonArray error = new JsonParser().parse("[{\"code\":400,\"error\":\"The given location is invalid.\"}]").getAsJsonArray();
+        Mockito.when(externalService.getWeatherForecast(Mockito.contains(coords), Mockito.any())).thenReturn(expResult);
+        Mockito.when(externalService.getWeatherForecast(Mockito.contains("91.0,0.0"), Mockito.any())).thenReturn(error);
+        // act
+        weatherService.get(coords, "now", new Long[0]);
+        weatherService.get(coords, "now", new Long[0]);
+        weatherService.get("91.0,0.0", "recent", new Long[]{Long.valueOf(2)});
+        // assert
+        Timer success = registry.get("weatherapp.upstream.requests").tags("type", "now", "outcome", "success").timer();
+        Timer failed = registry.get("weatherapp.upstream.requests").tags("type", "recent", "outcome", "error").timer();
+        assertThat(success.count()).isEqualTo(1);
+        assertThat(failed.count()).isEqualTo(1);
+        assertThat(registry.find("weatherapp.upstream.requests").timers()).hasSize(2);
+    }
+
+    /**
+     * Test of get method, of class WeatherService, serving the last known forecasts while the external API fails.
+     */
+    @Test
+    public void testGetFallsBackToLastKnown() {
+        System.out.println("get falls back to last known");
+        // arrange
+        ReflectionTestUtils.setField(weatherService, "circuitBreaker", new CircuitBreaker(2, 0.5, 0, 60, 1));
+        String lisbon = "38.7223,-9.1393";
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}"));
+        Mockito.when(externalService.getWeatherForecast(Mockito.contains(coords), Mockito.any()))
+                .thenReturn(expResult)
+                .thenThrow(new ResourceAccessException("Read timed out"));
+        // act
+        JsonArray fresh = weatherService.get(coords, "now", new Long[0]);
+        JsonArray failed = weatherService.get(coords, "now", new Long[0]); // opens the circuit
+        JsonArray rejected = weatherService.get(coords, "now", new Long[0]);
+        // assert
+        assertThat(fresh).isEqualTo(expResult);
+        assertThat(failed).isEqualTo(expResult);
+        assertThat(rejected).isEqualTo(expResult);
+        assertThatThrownBy(() -> weatherService.get(lisbon, "now", new Long[0])).isInstanceOf(UpstreamUnavailableException.class);
+        Mockito.verify(externalService, Mockito.times(2)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+        JsonObject upstream = weatherService.getStats().getAsJsonObject("upstream");
+        assertThat(upstream.get("circuit").getAsString()).isEqualTo("OPEN");
+        assertThat(upstream.get("rejectedCalls").getAsLong()).isEqualTo(2);
+        assertThat(upstream.get("fallbackDays").getAsLong()).isEqualTo(2);
+    }
+
+    /**
+     * Test of get method, of class WeatherService, with the upstream pool of another type full.
+     */
+    @Test
+    public void testGetIsolatesUpstreamPools() throws Exception {
+        System.out.println("get isolates upstream pools");
+        // arrange
+        ReflectionTestUtils.setField(weatherService, "circuitBreaker", new CircuitBreaker(1, 0.5, 0, 60, 1));
+        UpstreamPool periodPool = new UpstreamPool("period", 1, 0);
+        ReflectionTestUtils.setField(weatherService, "periodUpstreamPool", periodPool);
+        periodPool.tryAcquire(); // a period request still in progress
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\"}"));
+        Mockito.when(externalService.getWeatherForecast(Mockito.anyString(), Mockito.any())).thenReturn(expResult);
+        // act
+        CompletableFuture<JsonArray> period = CompletableFuture.supplyAsync(() -> weatherService.get(coords, "period", new Long[]{1556406000L, 1556406000L}));
+        long deadline = System.currentTimeMillis() + 5000;
+        while(periodPool.getWaiting() == 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1);
+        }
+        JsonArray now = weatherService.get(coords, "now", new Long[0]);
+        boolean periodWaited = !period.isDone();
+        periodPool.release(); // the period request in progress completes
+        JsonArray periodResult = period.get(5, TimeUnit.SECONDS);
+        periodPool.shutdown();
+        // assert
+        assertThat(now).isEqualTo(expResult);
+        assertThat(periodWaited).isTrue();
+        assertThat(periodResult).isEqualTo(expResult);
+        Mockito.verify(externalService, Mockito.times(2)).getWeatherForecast(Mockito.anyString(), Mockito.any());
+        JsonObject upstream = weatherService.getStats().getAsJsonObject("upstream");
+        assertThat(upstream.get("circuit").getAsString()).isEqualTo("CLOSED");
+        assertThat(upstream.getAsJsonObject("pools").getAsJsonObject("period").get("waiting").getAsInt()).isEqualTo(0);
+        assertThat(upstream.getAsJsonObject("pools").getAsJsonObject("period").get("skippedRefreshes").getAsLong()).isEqualTo(0);
+    }
+
+    /**
+     * Test of getAsync method, of class WeatherService.
+     */
+    @Test
+    public void testGetAsync() throws Exception {
+        System.out.println("getAsync");
+        // arrange
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
+        JsonArray expResult = new JsonArray();
+        for(int i=0; i<8; i++) {
+            expResult.add(new JsonParser().parse("{\"time\":" + (1556406000L + i*86400L) + "}"));
+        }
+        Mockito.when(externalService.getWeatherForecastReactive(Mockito.eq(path), Mockito.any()))
+                .thenReturn(Mono.just(expResult).delayElement(Duration.ofMillis(200)));
+        // act
+        CompletableFuture<JsonArray> first = weatherService.getAsync(coords, "recent", new Long[]{Long.valueOf(3)});
+        CompletableFuture<JsonArray> second = weatherService.getAsync(coords, "now", new Long[0]);
+        boolean pending = !first.isDone() && !second.isDone();
+        JsonArray recent = first.get(5, TimeUnit.SECONDS);
+        JsonArray now = second.get(5, TimeUnit.SECONDS);
+        JsonArray cached = weatherService.get(coords, "recent", new Long[]{Long.valueOf(7)});
+        //assert
+        assertThat(pending).isTrue();
+        assertThat(recent.size()).isEqualTo(3);
+        assertThat(now.get(0)).isEqualTo(expResult.get(0));
+        assertThat(cached.size()).isEqualTo(7);
+        Mockito.verify(externalService, Mockito.times(1)).getWeatherForecastReactive(Mockito.anyString(), Mockito.any());
+        Mockito.verify(externalService, Mockito.never()).getWeatherForecast(Mockito.anyString(), Mockito.any());
+    }
+    
+    /**
+     * Test of getAll method, of class WeatherService, with the days cached by a request.
+     */
+    @Test
+    public void testGetAllCachedDays() {
+        System.out.println("getAll cached days");
+        // arrange
+        ReflectionTestUtils.setField(weatherService, "localCache", new LocalCache<String, DailyForecast>());
+        String path = "https://api.darksky.net/forecast/" + darkSkyKey + "/" + coords + "?exclude=currently,minutely,hourly,alerts,flags";
+        JsonArray expResult = new JsonArray();
+        expResult.add(new JsonParser().parse("{\"time\":1556406000,\"summary\":\"Foggy in the morning.\",\"icon\":\"fog\",\"humidity\":0.85}"));
+        Mockito.when(externalService.getWeatherForecast(Mockito.eq(path), Mockito.any())).thenReturn(expResult);
+        weatherService.get(coords, "now", new Long[0]);
+        // act
+        JsonArray all = weatherService.getAll(false);
+        // assert
+        assertThat(all.size()).isEqualTo(1);
+        assertThat(all.get(0).getAsJsonObject().get(coords + "," + java.time.LocalDate.now())).isEqualTo(expResult.get(0));
+    }
+    
     /**
      * Test of getAll method, of class WeatherService.
      */